@@ -0,0 +1,134 @@
+package br.com.alura.estoque.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.model.Produto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compara a busca por prefixo no {@link IndiceDeBusca} com {@code LIKE '%x%'} num catálogo
+ * de 100 mil produtos, para termos comuns, raros e inexistentes, e confere que o índice
+ * acompanha inserções, edições e remoções feitas depois de criado.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BuscaDeProdutosBenchmark {
+
+    private static final String TAG = "BuscaDeProdutosBenchmark";
+    private static final int QUANTIDADE = 100_000;
+    private static final int LIMITE = 50;
+    private static final int REPETICOES = 20;
+    private static final String[] PALAVRAS = {"cadeira", "mesa", "armario", "estante", "sofa",
+            "azul", "branco", "preto", "madeira", "metal", "grande", "pequeno", "luxo"};
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    private EstoqueDatabase banco;
+    private ProdutoDAO dao;
+
+    @Before
+    public void criaBanco() {
+        banco = Room.inMemoryDatabaseBuilder(context, EstoqueDatabase.class).build();
+        // O banco em memória não passa pelo callback do EstoqueDatabase
+        SupportSQLiteDatabase db = banco.getOpenHelper().getWritableDatabase();
+        IndiceDeBusca.cria(db);
+        Cursor pragma = db.query("PRAGMA recursive_triggers = ON");
+        pragma.moveToFirst();
+        pragma.close();
+        dao = banco.getProdutoDAO();
+    }
+
+    @After
+    public void fechaBanco() {
+        banco.close();
+    }
+
+    @Test
+    public void comparaComLike() {
+        dao.salva(produtos());
+        // Termo comum, prefixo comum, combinação de palavras, termo raro e termo ausente
+        for (String texto : new String[]{"cadeira", "cad", "mesa preto", "serie 9999", "inexistente"}) {
+            List<List<Produto>> encontrados = new ArrayList<>();
+            long fts = mede(() -> encontrados.add(0, busca(texto)));
+            long like = mede(() -> dao.buscaPorConsulta(like(texto)));
+            for (Produto produto : encontrados.get(0)) {
+                for (String palavra : texto.split(" ")) {
+                    assertTrue(produto.getNome().toLowerCase(Locale.ROOT).contains(palavra));
+                }
+            }
+            Log.i(TAG, "'" + texto + "' (" + encontrados.get(0).size() + " resultados, média em µs)"
+                    + " | FTS: " + fts + " LIKE: " + like);
+        }
+    }
+
+    @Test
+    public void indiceAcompanhaAsEscritas() {
+        dao.salva(produtos());
+        long id = dao.salva(new Produto(0, "Poltrona reclinavel", BigDecimal.TEN, 1, 0));
+        assertEquals(1, busca("poltr").size());
+
+        Produto renomeado = new Produto(id, "Banqueta alta", BigDecimal.TEN, 1, 1);
+        dao.atualiza(renomeado);
+        assertTrue(busca("poltr").isEmpty());
+        assertEquals(1, busca("banq").size());
+
+        // REPLACE substitui a linha; sem recursive_triggers a entrada antiga ficaria no índice
+        List<Produto> substituicao = new ArrayList<>();
+        substituicao.add(new Produto(id, "Puff redondo", BigDecimal.TEN, 1, 2));
+        dao.salva(substituicao);
+        assertTrue(busca("banq").isEmpty());
+        assertEquals(1, busca("puff").size());
+
+        dao.remove(dao.buscaProduto(id));
+        assertTrue(busca("puff").isEmpty());
+    }
+
+    private List<Produto> busca(String texto) {
+        return dao.buscaPorConsulta(IndiceDeBusca.buscaPorPrefixo(texto, LIMITE));
+    }
+
+    private static SupportSQLiteQuery like(String texto) {
+        return new SimpleSQLiteQuery("SELECT * FROM Produto WHERE nome LIKE ? LIMIT ?",
+                new Object[]{"%" + texto.replace(' ', '%') + "%", LIMITE});
+    }
+
+    // Média de REPETICOES execuções, em microssegundos, depois de uma execução de aquecimento
+    private static long mede(Runnable busca) {
+        busca.run();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < REPETICOES; i++) {
+            busca.run();
+        }
+        return (System.nanoTime() - inicio) / REPETICOES / 1_000;
+    }
+
+    private static List<Produto> produtos() {
+        List<Produto> produtos = new ArrayList<>(QUANTIDADE);
+        for (long id = 1; id <= QUANTIDADE; id++) {
+            String nome = PALAVRAS[(int) (id % 5)] + " "
+                    + PALAVRAS[5 + (int) (id % 3)] + " "
+                    + PALAVRAS[8 + (int) (id / 7 % 5)] + " serie " + id;
+            produtos.add(new Produto(id, nome, new BigDecimal((id % 1000) + ".90"), (int) (id % 50), id));
+        }
+        return produtos;
+    }
+}
@@ -0,0 +1,77 @@
+package br.com.alura.estoque.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+
+/**
+ * Compara o custo de abrir um banco novo a cada uso (comportamento anterior)
+ * com o da instância única de {@link EstoqueDatabase}.
+ *
+ * Os bancos abertos e fechados a cada uso usam um arquivo descartável, com as mesmas
+ * migrações e PRAGMAs do app, para não disputar o estoque.db com a instância única.
+ * O resultado só é registrado no log: o tempo depende do aparelho.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EstoqueDatabaseBenchmark {
+
+    private static final String TAG = "EstoqueDatabaseBenchmark";
+    private static final String BANCO_DESCARTAVEL = "estoque-benchmark.db";
+    private static final int REPETICOES = 50;
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+    @After
+    public void fechaBanco() {
+        EstoqueDatabase.fecha();
+        context.deleteDatabase(BANCO_DESCARTAVEL);
+    }
+
+    @Test
+    public void comparaAberturaPorUsoComInstanciaUnica() {
+        long inicio = System.nanoTime();
+        for (int i = 0; i < REPETICOES; i++) {
+            EstoqueDatabase banco = EstoqueDatabase.criaBanco(context, BANCO_DESCARTAVEL);
+            banco.getProdutoDAO().buscaTodos();
+            banco.close();
+        }
+        long porUso = (System.nanoTime() - inicio) / REPETICOES;
+
+        EstoqueDatabase.fecha();
+        long inicioAFrio = System.nanoTime();
+        EstoqueDatabase.getInstance(context).getProdutoDAO().buscaTodos();
+        long aberturaAFrio = System.nanoTime() - inicioAFrio;
+
+        inicio = System.nanoTime();
+        for (int i = 0; i < REPETICOES; i++) {
+            EstoqueDatabase.getInstance(context).getProdutoDAO().buscaTodos();
+        }
+        long instanciaUnica = (System.nanoTime() - inicio) / REPETICOES;
+
+        Log.i(TAG, "abertura por uso: " + porUso + " ns | abertura a frio: " + aberturaAFrio
+                + " ns | instância única: " + instanciaUnica + " ns | "
+                + String.format("%.1f", (double) porUso / Math.max(1, instanciaUnica))
+                + "x mais rápida");
+    }
+
+    @Test
+    public void medeCustoPorConsulta() {
+        ProdutoDAO dao = EstoqueDatabase.getInstance(context).getProdutoDAO();
+        dao.buscaProduto(1);
+
+        long inicio = System.nanoTime();
+        for (int i = 0; i < REPETICOES; i++) {
+            dao.buscaProduto(i);
+        }
+        long porConsulta = (System.nanoTime() - inicio) / REPETICOES;
+
+        Log.i(TAG, "custo por consulta com a instância única: " + porConsulta + " ns");
+    }
+}
@@ -0,0 +1,104 @@
+package br.com.alura.estoque.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.model.Produto;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compara {@link ProdutoDAO#salva(List)} (REPLACE numa única transação) com o
+ * {@link UpsertDeProdutos} ao gravar 10 mil e 100 mil produtos: primeiro com a tabela
+ * vazia, depois repetindo a mesma lista e por fim com 1% dos produtos alterados.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UpsertDeProdutosBenchmark {
+
+    private static final String TAG = "UpsertDeProdutosBenchmark";
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    private EstoqueDatabase banco;
+
+    @Before
+    public void criaBanco() {
+        banco = Room.inMemoryDatabaseBuilder(context, EstoqueDatabase.class).build();
+    }
+
+    @After
+    public void fechaBanco() {
+        banco.close();
+    }
+
+    @Test
+    public void grava10Mil() {
+        compara(10_000);
+    }
+
+    @Test
+    public void grava100Mil() {
+        compara(100_000);
+    }
+
+    private void compara(int quantidade) {
+        List<Produto> produtos = produtos(quantidade, 0);
+        List<Produto> comAlteracoes = produtos(quantidade, 100);
+        ProdutoDAO dao = banco.getProdutoDAO();
+
+        long replaceVazio = mede(() -> dao.salva(produtos));
+        long replaceIgual = mede(() -> dao.salva(produtos));
+        long replaceAlterado = mede(() -> dao.salva(comAlteracoes));
+
+        banco.clearAllTables();
+        UpsertDeProdutos upsert = new UpsertDeProdutos(banco);
+        UpsertDeProdutos.Resultado[] resultado = new UpsertDeProdutos.Resultado[1];
+
+        long upsertVazio = mede(() -> resultado[0] = upsert.grava(produtos));
+        assertEquals(quantidade, resultado[0].getInseridos().size());
+
+        long upsertIgual = mede(() -> resultado[0] = upsert.grava(produtos));
+        assertEquals(quantidade, resultado[0].getInalterados());
+
+        long upsertAlterado = mede(() -> resultado[0] = upsert.grava(comAlteracoes));
+        assertEquals(quantidade / 100, resultado[0].getAtualizados().size());
+        assertEquals(quantidade, dao.buscaPagina(0, quantidade).size());
+
+        Log.i(TAG, quantidade + " produtos (ms) | REPLACE vazio: " + replaceVazio
+                + " igual: " + replaceIgual + " 1% alterado: " + replaceAlterado
+                + " | upsert vazio: " + upsertVazio
+                + " igual: " + upsertIgual + " 1% alterado: " + upsertAlterado);
+    }
+
+    private static long mede(Runnable gravacao) {
+        long inicio = System.nanoTime();
+        gravacao.run();
+        return (System.nanoTime() - inicio) / 1_000_000;
+    }
+
+    // A cada 'intervalo' produtos, um tem a quantidade alterada (0 = nenhum)
+    private static List<Produto> produtos(int quantidade, int intervalo) {
+        List<Produto> produtos = new ArrayList<>(quantidade);
+        for (long id = 1; id <= quantidade; id++) {
+            int estoque = (int) (id % 50);
+            if (intervalo > 0 && id % intervalo == 0) {
+                estoque++;
+            }
+            produtos.add(new Produto(id, "Produto " + id,
+                    new BigDecimal((id % 1000) + ".90"), estoque, id));
+        }
+        return produtos;
+    }
+}
@@ -0,0 +1,296 @@
+package br.com.alura.estoque.repository;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.database.EstoqueDatabase;
+import br.com.alura.estoque.database.UpsertDeProdutos;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.model.MudancasAplicadas;
+import br.com.alura.estoque.model.Pendencia;
+import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.Sincronizacao;
+import br.com.alura.estoque.retrofit.service.ProdutoService;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Roda a {@link SincronizacaoPaginada} de verdade contra o MockWebServer e um banco
+ * em memória: o cursor avança pelo último id de cada página, a carga termina na
+ * página menor que o limite (ou vazia), a página seguinte é buscada enquanto a
+ * anterior ainda está sendo gravada, os produtos locais que a API não tem mais são
+ * removidos e a marca d'água é a versão do catálogo do início da carga, nunca a maior
+ * versão entre os produtos.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SincronizacaoPaginadaTest {
+
+    private static final int TAMANHO_PAGINA = 3;
+    private static final long ESPERA_EM_SEGUNDOS = 10;
+    private static final long VERSAO_NO_INICIO = 5;
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    private MockWebServer servidor;
+    private ProdutoService service;
+    private EstoqueDatabase banco;
+
+    @Before
+    public void configura() throws IOException {
+        servidor = new MockWebServer();
+        servidor.start();
+        service = new Retrofit.Builder()
+                .baseUrl(servidor.url("/"))
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(ProdutoService.class);
+        banco = Room.inMemoryDatabaseBuilder(context, EstoqueDatabase.class).build();
+    }
+
+    @After
+    public void encerra() throws IOException {
+        banco.close();
+        servidor.shutdown();
+    }
+
+    @Test
+    public void avancaOCursorPeloUltimoIdETerminaNaPaginaMenor() throws Exception {
+        servidor.enqueue(pagina(1, 3, VERSAO_NO_INICIO));
+        servidor.enqueue(pagina(4, 3, VERSAO_NO_INICIO + 1));
+        servidor.enqueue(pagina(7, 1, VERSAO_NO_INICIO + 2));
+
+        Resultado resultado = sincroniza(new UpsertDeProdutos(banco));
+
+        assertNull(resultado.erro);
+        assertEquals(3, servidor.getRequestCount());
+        assertEquals("/produto?aPartirDe=0&limite=3", servidor.takeRequest().getPath());
+        assertEquals("/produto?aPartirDe=3&limite=3", servidor.takeRequest().getPath());
+        assertEquals("/produto?aPartirDe=6&limite=3", servidor.takeRequest().getPath());
+        assertEquals(7, resultado.produtosEntregues.get());
+        assertEquals(7, banco.getProdutoDAO().buscaTodos().size());
+        // Os produtos chegam com versões até 7, mas a marca é a do catálogo quando a carga começou
+        assertEquals(VERSAO_NO_INICIO, banco.getSincronizacaoDAO().busca(Sincronizacao.PRODUTO).getVersao());
+        assertNull(banco.getSincronizacaoDAO().busca(Sincronizacao.PRODUTO_CARGA_COMPLETA));
+        assertNull(banco.getSincronizacaoDAO().busca(Sincronizacao.PRODUTO_VERSAO_DA_CARGA));
+    }
+
+    @Test
+    public void removeOsProdutosLocaisQueAApiNaoTemMais() throws Exception {
+        ProdutoDAO dao = banco.getProdutoDAO();
+        dao.salva(Arrays.asList(produto(-1), produto(1), produto(2), produto(5), produto(9)));
+        // Alterado no app e ainda não enviado: fica até a API receber a alteração
+        banco.getPendenciaDAO().insere(new Pendencia(5, Pendencia.Operacao.EDITA, 0));
+        servidor.enqueue(paginaComIds(VERSAO_NO_INICIO, 1, 3, 4));
+        servidor.enqueue(paginaComIds(VERSAO_NO_INICIO));
+
+        Resultado resultado = sincroniza(new UpsertDeProdutos(banco));
+
+        assertNull(resultado.erro);
+        List<Long> ids = new ArrayList<>();
+        for (Produto produto : dao.buscaTodos()) {
+            ids.add(produto.getId());
+        }
+        Collections.sort(ids);
+        assertEquals(Arrays.asList(-1L, 1L, 3L, 4L, 5L), ids);
+        List<Long> removidos = new ArrayList<>(resultado.removidos);
+        Collections.sort(removidos);
+        assertEquals(Arrays.asList(2L, 9L), removidos);
+    }
+
+    @Test
+    public void interrompidaGuardaOCursorEAVersaoDoInicio() throws Exception {
+        servidor.enqueue(pagina(1, 3, VERSAO_NO_INICIO));
+        servidor.enqueue(new MockResponse().setResponseCode(404));
+
+        Resultado resultado = sincroniza(new UpsertDeProdutos(banco));
+        esperaAsGravacoes();
+
+        assertTrue(resultado.erro != null);
+        assertNull(banco.getSincronizacaoDAO().busca(Sincronizacao.PRODUTO));
+        assertEquals(3, banco.getSincronizacaoDAO()
+                .busca(Sincronizacao.PRODUTO_CARGA_COMPLETA).getVersao());
+        assertEquals(VERSAO_NO_INICIO, banco.getSincronizacaoDAO()
+                .busca(Sincronizacao.PRODUTO_VERSAO_DA_CARGA).getVersao());
+    }
+
+    @Test
+    public void continuacaoGuardaAVersaoDoInicioDaCargaInterrompida() throws Exception {
+        servidor.enqueue(pagina(4, 3, 50));
+        servidor.enqueue(pagina(7, 1, 51));
+
+        Resultado resultado = sincroniza(new UpsertDeProdutos(banco), 3, VERSAO_NO_INICIO);
+
+        assertNull(resultado.erro);
+        assertEquals("/produto?aPartirDe=3&limite=3", servidor.takeRequest().getPath());
+        assertEquals(VERSAO_NO_INICIO, banco.getSincronizacaoDAO().busca(Sincronizacao.PRODUTO).getVersao());
+    }
+
+    @Test
+    public void paginaVaziaDepoisDePaginasCheiasEncerraACarga() throws Exception {
+        servidor.enqueue(pagina(1, 3, VERSAO_NO_INICIO));
+        servidor.enqueue(pagina(4, 3, VERSAO_NO_INICIO));
+        servidor.enqueue(pagina(7, 0, VERSAO_NO_INICIO));
+
+        Resultado resultado = sincroniza(new UpsertDeProdutos(banco));
+
+        assertNull(resultado.erro);
+        assertEquals(3, servidor.getRequestCount());
+        assertEquals(6, banco.getProdutoDAO().buscaTodos().size());
+        assertEquals(VERSAO_NO_INICIO, banco.getSincronizacaoDAO().busca(Sincronizacao.PRODUTO).getVersao());
+    }
+
+    /*
+    A gravação da primeira página só termina depois que o servidor recebe o pedido da
+    segunda. Numa carga que esperasse cada gravação para pedir a próxima página, a
+    espera abaixo se esgotaria.
+     */
+    @Test
+    public void buscaAProximaPaginaEnquantoGravaAAnterior() throws Exception {
+        CountDownLatch segundaPaginaPedida = new CountDownLatch(1);
+        AtomicInteger produtosGravadosQuandoATerceiraFoiPedida = new AtomicInteger(-1);
+        servidor.setDispatcher(new Dispatcher() {
+            @NonNull
+            @Override
+            public MockResponse dispatch(@NonNull RecordedRequest requisicao) {
+                String caminho = requisicao.getPath();
+                if (caminho.contains("aPartirDe=0&")) {
+                    return pagina(1, 3, VERSAO_NO_INICIO);
+                }
+                if (caminho.contains("aPartirDe=3&")) {
+                    segundaPaginaPedida.countDown();
+                    return pagina(4, 3, VERSAO_NO_INICIO);
+                }
+                produtosGravadosQuandoATerceiraFoiPedida.set(
+                        banco.getProdutoDAO().buscaTodos().size());
+                return pagina(7, 1, VERSAO_NO_INICIO);
+            }
+        });
+        boolean[] sobreposta = {false};
+        UpsertDeProdutos upsert = new UpsertDeProdutos(banco) {
+            @Override
+            public Resultado grava(List<Produto> produtos) {
+                if (!produtos.isEmpty() && produtos.get(0).getId() == 1) {
+                    try {
+                        sobreposta[0] = segundaPaginaPedida.await(ESPERA_EM_SEGUNDOS, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.grava(produtos);
+            }
+        };
+
+        Resultado resultado = sincroniza(upsert);
+
+        assertNull(resultado.erro);
+        assertTrue(sobreposta[0]);
+        // Com no máximo uma página aguardando gravação, a terceira espera a primeira ser gravada
+        assertTrue(produtosGravadosQuandoATerceiraFoiPedida.get() >= 3);
+        assertEquals(7, banco.getProdutoDAO().buscaTodos().size());
+    }
+
+    private Resultado sincroniza(UpsertDeProdutos upsert) throws InterruptedException {
+        return sincroniza(upsert, SincronizacaoPaginada.INICIO_DO_CATALOGO, null);
+    }
+
+    private Resultado sincroniza(UpsertDeProdutos upsert, long aPartirDe, Long versaoDaCarga)
+            throws InterruptedException {
+        Resultado resultado = new Resultado();
+        CountDownLatch terminou = new CountDownLatch(1);
+        Carga carga = new Carga(new ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas>() {
+            @Override
+            public void quandoSucesso(MudancasAplicadas mudancas) {
+                resultado.produtosEntregues.addAndGet(mudancas.getAlterados().size());
+                resultado.removidos.addAll(mudancas.getRemovidos());
+            }
+
+            @Override
+            public void quandoFalha(String erro) {
+                resultado.erro = erro;
+            }
+        }, terminou::countDown);
+        SincronizacaoPaginada sincronizacao = new SincronizacaoPaginada(banco, service, upsert,
+                banco.getSincronizacaoDAO(), CacheDeProdutos.porQuantidade(100), TAMANHO_PAGINA,
+                carga, aPartirDe, versaoDaCarga);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(sincronizacao::inicia);
+
+        assertTrue("a carga não terminou", terminou.await(ESPERA_EM_SEGUNDOS, TimeUnit.SECONDS));
+        return resultado;
+    }
+
+    // Cada produto tem a versão igual ao id; a versão do catálogo vem à parte
+    /*
+    A falha é entregue sem esperar a gravação da página anterior, que já estava no pool
+    de ESCRITA. Como ele é serial, uma tarefa enviada agora só termina depois dela.
+     */
+    private void esperaAsGravacoes() throws InterruptedException {
+        CountDownLatch gravou = new CountDownLatch(1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                new BaseAsyncTask<>(() -> null, nada -> gravou.countDown()).execute());
+        assertTrue(gravou.await(ESPERA_EM_SEGUNDOS, TimeUnit.SECONDS));
+    }
+
+    private static Produto produto(long id) {
+        return new Produto(id, "Local " + id, new BigDecimal("1.00"), 1, 0);
+    }
+
+    private static MockResponse pagina(long primeiroId, int quantidade, long versaoDoCatalogo) {
+        long[] ids = new long[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            ids[i] = primeiroId + i;
+        }
+        return paginaComIds(versaoDoCatalogo, ids);
+    }
+
+    private static MockResponse paginaComIds(long versaoDoCatalogo, long... ids) {
+        StringBuilder json = new StringBuilder("{\"produtos\":[");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            long id = ids[i];
+            json.append("{\"id\":").append(id)
+                    .append(",\"nome\":\"Produto ").append(id)
+                    .append("\",\"preco\":10.50,\"quantidade\":").append(id)
+                    .append(",\"versao\":").append(id)
+                    .append('}');
+        }
+        json.append("],\"versao\":").append(versaoDoCatalogo).append('}');
+        return new MockResponse().setBody(json.toString());
+    }
+
+    private static class Resultado {
+
+        private final AtomicInteger produtosEntregues = new AtomicInteger();
+        private final List<Long> removidos = new CopyOnWriteArrayList<>();
+        private volatile String erro;
+    }
+}
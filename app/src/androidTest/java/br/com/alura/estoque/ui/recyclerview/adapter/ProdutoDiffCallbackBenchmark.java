@@ -0,0 +1,129 @@
+package br.com.alura.estoque.ui.recyclerview.adapter;
+
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import br.com.alura.estoque.model.Produto;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Mede o custo do DiffUtil com {@link ProdutoDiffCallback} em listas de 1 mil, 10 mil
+ * e 100 mil produtos, com 1% dos itens alterados, removidos e inseridos, e confere
+ * que apenas essas mudanças são notificadas.
+ *
+ * Roda no aparelho, onde o tempo medido é o que a tela paga; o resultado vai para o log.
+ * O comportamento do callback é verificado por ProdutoDiffCallbackTest.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProdutoDiffCallbackBenchmark {
+
+    private static final String TAG = "ProdutoDiffCallbackBenchmark";
+
+    private static final int AQUECIMENTO = 3;
+    private static final int REPETICOES = 5;
+
+    @Test
+    public void diffDeMilProdutos() {
+        mede(1_000);
+    }
+
+    @Test
+    public void diffDeDezMilProdutos() {
+        mede(10_000);
+    }
+
+    @Test
+    public void diffDeCemMilProdutos() {
+        mede(100_000);
+    }
+
+    private void mede(int quantidade) {
+        List<Produto> antigos = criaProdutos(quantidade);
+        List<Produto> novos = alteraUmPorCento(antigos);
+
+        for (int i = 0; i < AQUECIMENTO; i++) {
+            DiffUtil.calculateDiff(new ProdutoDiffCallback(antigos, novos));
+        }
+        long inicio = System.nanoTime();
+        DiffUtil.DiffResult diferenca = null;
+        for (int i = 0; i < REPETICOES; i++) {
+            diferenca = DiffUtil.calculateDiff(new ProdutoDiffCallback(antigos, novos));
+        }
+        long mediaEmMicros = (System.nanoTime() - inicio) / REPETICOES / 1_000;
+
+        ContadorDeMudancas contador = new ContadorDeMudancas();
+        diferenca.dispatchUpdatesTo(contador);
+        Log.i(TAG, "DiffUtil com " + quantidade + " produtos: " + mediaEmMicros + " µs");
+
+        int umPorCento = quantidade / 100;
+        assertEquals(umPorCento, contador.alterados);
+        assertEquals(umPorCento, contador.removidos);
+        assertEquals(umPorCento, contador.inseridos);
+    }
+
+    private List<Produto> criaProdutos(int quantidade) {
+        List<Produto> produtos = new ArrayList<>(quantidade);
+        for (long id = 1; id <= quantidade; id++) {
+            produtos.add(new Produto(id, "Produto " + id, new BigDecimal("10.50"), 5, 1));
+        }
+        return produtos;
+    }
+
+    /*
+    A cada 100 produtos: um tem a quantidade alterada, outro é removido
+    e um novo é inserido no fim da lista.
+     */
+    private List<Produto> alteraUmPorCento(List<Produto> antigos) {
+        List<Produto> novos = new ArrayList<>(antigos.size());
+        for (int i = 0; i < antigos.size(); i++) {
+            Produto produto = antigos.get(i);
+            if (i % 100 == 10) {
+                novos.add(new Produto(produto.getId(), produto.getNome(), produto.getPreco(),
+                        produto.getQuantidade() + 1, produto.getVersao() + 1));
+            } else if (i % 100 != 50) {
+                novos.add(produto);
+            }
+        }
+        long proximoId = antigos.size() + 1;
+        for (int i = 0; i < antigos.size() / 100; i++) {
+            novos.add(new Produto(proximoId + i, "Novo " + i, BigDecimal.ONE, 1, 1));
+        }
+        return novos;
+    }
+
+    private static class ContadorDeMudancas implements ListUpdateCallback {
+
+        private int inseridos;
+        private int removidos;
+        private int alterados;
+
+        @Override
+        public void onInserted(int position, int count) {
+            inseridos += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            removidos += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            alterados += count;
+        }
+    }
+}
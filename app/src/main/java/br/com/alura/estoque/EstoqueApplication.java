@@ -0,0 +1,51 @@
+package br.com.alura.estoque;
+
+import android.app.Application;
+
+import java.io.File;
+
+import br.com.alura.estoque.database.EstoqueDatabase;
+import br.com.alura.estoque.metrica.Rastreamento;
+import br.com.alura.estoque.repository.CacheDeProdutos;
+import br.com.alura.estoque.repository.CaixaDeSaida;
+import br.com.alura.estoque.retrofit.ConfiguracaoHttp;
+import br.com.alura.estoque.retrofit.EstoqueRetrofit;
+
+/*
+Application criada para preparar, logo na inicialização do processo, os recursos
+compartilhados por todas as telas, como a instância única do banco de dados.
+ */
+public class EstoqueApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Antes de qualquer Repository pegar os DAOs; em release fica desligado
+        Rastreamento.ativa(BuildConfig.DEBUG);
+        EstoqueDatabase.abreEmBackground(this);
+        EstoqueRetrofit.configura(ConfiguracaoHttp.padrao(new File(getCacheDir(), "http")));
+        EstoqueRetrofit.getInstance().preAquece();
+        // Envia o que ficou na caixa de saída da última vez que o app foi usado
+        CaixaDeSaida.getInstance(this).envia();
+    }
+
+    /*
+    O cache de produtos pode ser refeito a partir do banco, então é o primeiro a ser
+    liberado quando o sistema pede memória.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            CacheDeProdutos.getInstance().reduz(true);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            CacheDeProdutos.getInstance().reduz(false);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        CacheDeProdutos.getInstance().reduz(true);
+    }
+}
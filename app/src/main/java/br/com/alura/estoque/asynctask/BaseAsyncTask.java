@@ -1,11 +1,28 @@
 package br.com.alura.estoque.asynctask;
 
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 
-public class BaseAsyncTask<T> extends AsyncTask<Void, Void, T> {
+import java.util.concurrent.ExecutionException;
+
+import br.com.alura.estoque.metrica.EstatisticasDaOperacao;
+import br.com.alura.estoque.metrica.Rastreamento;
+
+/*
+Mantém o mesmo contrato de antes (ExecutaListener em background e FinalizadaListener na
+UI Thread), mas não depende mais da fila serial do AsyncTask: o trabalho é enviado
+para um dos Pools, com prioridade, e pode ser cancelado pela Tarefa devolvida.
+
+Com um nome (rastreada()) e o Rastreamento ligado, a espera na fila, a execução e a
+entrega na UI Thread são medidas e somadas às estatísticas da operação.
+ */
+public class BaseAsyncTask<T> {
+
+    private static final Handler MAIN_THREAD = new Handler(Looper.getMainLooper());
 
     private final ExecutaListener<T> executaListener;
     private final FinalizadaListener<T> finalizadaListener;
+    private String operacao;
 
     public BaseAsyncTask(ExecutaListener<T> executaListener,
                          FinalizadaListener<T> finalizadaListener) {
@@ -13,15 +30,75 @@ public class BaseAsyncTask<T> extends AsyncTask<Void, Void, T> {
         this.finalizadaListener = finalizadaListener;
     }
 
-    @Override
-    protected T doInBackground(Void... voids) {
-        return executaListener.quandoExecuta();
+    public BaseAsyncTask<T> rastreada(String operacao) {
+        this.operacao = operacao;
+        return this;
+    }
+
+    /*
+    Sem indicar o pool, a tarefa vai para o de ESCRITA, que é serial como a fila do
+    AsyncTask. Assim, quem ainda chama execute() mantém a mesma ordem de execução.
+     */
+    public Tarefa execute() {
+        return executa(Pool.ESCRITA);
+    }
+
+    public Tarefa executa(Pool pool) {
+        return executa(pool, Prioridade.NORMAL);
+    }
+
+    public Tarefa executa(Pool pool, Prioridade prioridade) {
+        if (operacao != null && Rastreamento.isAtivo()) {
+            return executaRastreada(pool, prioridade, Rastreamento.estatisticasDe(operacao));
+        }
+        return pool.submete(executaListener::quandoExecuta, prioridade, this::entregaNaMainThread);
+    }
+
+    private Tarefa executaRastreada(Pool pool, Prioridade prioridade,
+                                    EstatisticasDaOperacao estatisticas) {
+        long enviadaEm = System.nanoTime();
+        // Escrito na Thread do Pool e lido na UI Thread depois do post(), que garante a visibilidade
+        long[] fimDaExecucao = new long[1];
+        return pool.submete(() -> {
+            long inicio = System.nanoTime();
+            estatisticas.registraEspera(inicio - enviadaEm);
+            T resultado = executaListener.quandoExecuta();
+            fimDaExecucao[0] = System.nanoTime();
+            estatisticas.registraExecucao(fimDaExecucao[0] - inicio, Rastreamento.linhasDe(resultado));
+            return resultado;
+        }, prioridade, tarefa -> MAIN_THREAD.post(() -> {
+            if (entrega(tarefa)) {
+                estatisticas.registraEntrega(System.nanoTime() - fimDaExecucao[0]);
+            }
+        }));
+    }
+
+    private void entregaNaMainThread(TarefaAgendada<T> tarefa) {
+        MAIN_THREAD.post(() -> entrega(tarefa));
+    }
+
+    private boolean entrega(TarefaAgendada<T> tarefa) {
+        if (tarefa.isCancelada()) {
+            return false;
+        }
+        tarefa.marcaEntregue();
+        finalizadaListener.quandoFinalizada(resultadoDe(tarefa));
+        return true;
     }
 
-    @Override
-    protected void onPostExecute(T resultado) {
-        super.onPostExecute(resultado);
-        finalizadaListener.quandoFinalizada(resultado);
+    /*
+    Assim como no AsyncTask, uma exceção no ExecutaListener não é engolida:
+    ela é relançada na UI Thread.
+     */
+    private T resultadoDe(TarefaAgendada<T> tarefa) {
+        try {
+            return tarefa.get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
     }
 
     public interface ExecutaListener<T> {
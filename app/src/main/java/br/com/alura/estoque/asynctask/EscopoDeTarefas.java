@@ -0,0 +1,50 @@
+package br.com.alura.estoque.asynctask;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+Reúne as tarefas iniciadas em nome de uma tela, para cancelar todas de uma vez quando
+ela for destruída. Assim o trabalho que ninguém mais vai ver deixa de ser feito (ou,
+se já estiver executando, de ser entregue), e os callbacks, que apontam para a Activity,
+deixam de ser mantidos pelas filas dos Pools e pelas requisições.
+
+Depois de encerrado, qualquer tarefa acompanhada é cancelada na hora.
+ */
+public class EscopoDeTarefas {
+
+    private final List<Tarefa> tarefas = new ArrayList<>();
+    private boolean encerrado = false;
+
+    public synchronized <T extends Tarefa> T acompanha(T tarefa) {
+        if (encerrado) {
+            tarefa.cancela();
+            return tarefa;
+        }
+        removeEncerradas();
+        tarefas.add(tarefa);
+        return tarefa;
+    }
+
+    public synchronized void encerra() {
+        encerrado = true;
+        for (Tarefa tarefa : tarefas) {
+            tarefa.cancela();
+        }
+        tarefas.clear();
+    }
+
+    public synchronized boolean isEncerrado() {
+        return encerrado;
+    }
+
+    private void removeEncerradas() {
+        Iterator<Tarefa> iterador = tarefas.iterator();
+        while (iterador.hasNext()) {
+            if (iterador.next().isEncerrada()) {
+                iterador.remove();
+            }
+        }
+    }
+}
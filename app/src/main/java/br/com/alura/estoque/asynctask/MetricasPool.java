@@ -0,0 +1,41 @@
+package br.com.alura.estoque.asynctask;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Quanto tempo as tarefas de um Pool ficam esperando na fila antes de começar a executar.
+A profundidade da fila é consultada direto no executor, em Pool.getProfundidadeFila().
+ */
+public class MetricasPool {
+
+    private final AtomicLong tarefasExecutadas = new AtomicLong();
+    private final AtomicLong esperaTotalNanos = new AtomicLong();
+    private final AtomicLong esperaMaximaNanos = new AtomicLong();
+
+    void registraEspera(long esperaNanos) {
+        tarefasExecutadas.incrementAndGet();
+        esperaTotalNanos.addAndGet(esperaNanos);
+        long maximaAtual;
+        do {
+            maximaAtual = esperaMaximaNanos.get();
+        } while (esperaNanos > maximaAtual
+                && !esperaMaximaNanos.compareAndSet(maximaAtual, esperaNanos));
+    }
+
+    public long getTarefasExecutadas() {
+        return tarefasExecutadas.get();
+    }
+
+    public long getEsperaMediaEmMillis() {
+        long executadas = tarefasExecutadas.get();
+        if (executadas == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(esperaTotalNanos.get() / executadas);
+    }
+
+    public long getEsperaMaximaEmMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(esperaMaximaNanos.get());
+    }
+}
@@ -0,0 +1,88 @@
+package br.com.alura.estoque.asynctask;
+
+import android.os.Process;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Antes, toda AsyncTask entrava na mesma fila serial do AsyncTask, então uma gravação
+grande de produtos bloqueava as leituras e edições que viessem depois dela.
+
+Agora cada tipo de trabalho tem o seu próprio pool, com um número limitado de Threads:
+- LEITURA: consultas ao banco, que podem rodar em paralelo graças ao WAL;
+- ESCRITA: uma única Thread, já que o SQLite só permite um escritor por vez;
+- PROCESSAMENTO: trabalho de CPU que não toca no banco nem na rede;
+- REDE: leituras longas de respostas da rede (o catálogo em fluxo), que levariam minutos
+  ocupando uma Thread de LEITURA enquanto as consultas da tela esperam na fila.
+ */
+public enum Pool {
+
+    LEITURA("estoque-leitura", 2),
+    ESCRITA("estoque-escrita", 1),
+    PROCESSAMENTO("estoque-processamento",
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1)),
+    REDE("estoque-rede", 2);
+
+    private static final long SEGUNDOS_THREAD_OCIOSA = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final MetricasPool metricas = new MetricasPool();
+    private final AtomicLong sequencia = new AtomicLong();
+
+    Pool(String nome, int quantidadeDeThreads) {
+        executor = new ThreadPoolExecutor(
+                quantidadeDeThreads,
+                quantidadeDeThreads,
+                SEGUNDOS_THREAD_OCIOSA,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new FabricaDeThreads(nome));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    <T> TarefaAgendada<T> submete(Callable<T> trabalho,
+                                  Prioridade prioridade,
+                                  TarefaAgendada.ConclusaoListener<T> conclusaoListener) {
+        TarefaAgendada<T> tarefa = new TarefaAgendada<>(this, prioridade,
+                sequencia.incrementAndGet(), trabalho, conclusaoListener);
+        executor.execute(tarefa);
+        return tarefa;
+    }
+
+    void remove(Runnable tarefa) {
+        executor.remove(tarefa);
+    }
+
+    public int getProfundidadeFila() {
+        return executor.getQueue().size();
+    }
+
+    public MetricasPool getMetricas() {
+        return metricas;
+    }
+
+    private static class FabricaDeThreads implements ThreadFactory {
+
+        private final String nome;
+        private final AtomicInteger contador = new AtomicInteger();
+
+        FabricaDeThreads(String nome) {
+            this.nome = nome;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(() -> {
+                // Mesma prioridade usada pelas Threads do AsyncTask, para não competir com a UI
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, nome + "-" + contador.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package br.com.alura.estoque.asynctask;
+
+/*
+Dentro de um mesmo pool, tarefas de prioridade mais alta saem da fila primeiro.
+Tarefas de mesma prioridade são executadas na ordem em que foram enviadas.
+ */
+public enum Prioridade {
+    ALTA,
+    NORMAL,
+    BAIXA
+}
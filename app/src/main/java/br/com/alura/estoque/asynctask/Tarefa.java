@@ -0,0 +1,40 @@
+package br.com.alura.estoque.asynctask;
+
+/*
+Referência para uma tarefa enviada a um Pool.
+
+Cancelar uma tarefa que ainda está na fila faz com que ela nem chegue a executar.
+Se ela já estiver executando, o trabalho termina, mas o resultado não é entregue
+ao FinalizadaListener.
+ */
+public interface Tarefa {
+
+    // Para operações que terminam na hora, sem nada a cancelar (um acerto de cache, por exemplo)
+    Tarefa CONCLUIDA = new Tarefa() {
+        @Override
+        public void cancela() {
+        }
+
+        @Override
+        public boolean isCancelada() {
+            return false;
+        }
+
+        @Override
+        public boolean isEncerrada() {
+            return true;
+        }
+    };
+
+    void cancela();
+
+    boolean isCancelada();
+
+    /*
+    Encerrada é a tarefa que não tem mais o que cancelar: foi cancelada ou já entregou
+    o resultado. O EscopoDeTarefas usa isso para não guardar tarefas terminadas.
+     */
+    default boolean isEncerrada() {
+        return isCancelada();
+    }
+}
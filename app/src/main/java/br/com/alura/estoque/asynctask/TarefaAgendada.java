@@ -0,0 +1,88 @@
+package br.com.alura.estoque.asynctask;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/*
+FutureTask que sabe a sua prioridade e o momento em que entrou na fila.
+
+A PriorityBlockingQueue dos pools exige elementos comparáveis; por isso o envio é feito com
+execute() e nunca com submit(), que embrulharia a tarefa em uma FutureTask comum.
+ */
+class TarefaAgendada<T> extends FutureTask<T> implements Tarefa, Comparable<TarefaAgendada<?>> {
+
+    private final Pool pool;
+    private final Prioridade prioridade;
+    private final long sequencia;
+    private final long enfileiradaEm = System.nanoTime();
+    private final ConclusaoListener<T> conclusaoListener;
+
+    /*
+    O FutureTask ignora cancel() depois que o trabalho terminou, mas o resultado ainda
+    vai ser entregue na UI Thread. Este sinal permite cancelar também essa entrega.
+     */
+    private volatile boolean cancelada = false;
+    private volatile boolean entregue = false;
+
+    TarefaAgendada(Pool pool,
+                   Prioridade prioridade,
+                   long sequencia,
+                   Callable<T> trabalho,
+                   ConclusaoListener<T> conclusaoListener) {
+        super(trabalho);
+        this.pool = pool;
+        this.prioridade = prioridade;
+        this.sequencia = sequencia;
+        this.conclusaoListener = conclusaoListener;
+    }
+
+    @Override
+    public void run() {
+        if (!isCancelled()) {
+            pool.getMetricas().registraEspera(System.nanoTime() - enfileiradaEm);
+        }
+        super.run();
+    }
+
+    @Override
+    protected void done() {
+        if (!isCancelled()) {
+            conclusaoListener.quandoConcluida(this);
+        }
+    }
+
+    @Override
+    public void cancela() {
+        cancelada = true;
+        cancel(false);
+        // Retira da fila para que a profundidade medida reflita só o trabalho que ainda será feito
+        pool.remove(this);
+    }
+
+    @Override
+    public boolean isCancelada() {
+        return cancelada || isCancelled();
+    }
+
+    @Override
+    public boolean isEncerrada() {
+        return entregue || isCancelada();
+    }
+
+    void marcaEntregue() {
+        entregue = true;
+    }
+
+    @Override
+    public int compareTo(TarefaAgendada<?> outra) {
+        int comparacao = prioridade.compareTo(outra.prioridade);
+        if (comparacao != 0) {
+            return comparacao;
+        }
+        return Long.compare(sequencia, outra.sequencia);
+    }
+
+    interface ConclusaoListener<T> {
+        void quandoConcluida(TarefaAgendada<T> tarefa);
+    }
+}
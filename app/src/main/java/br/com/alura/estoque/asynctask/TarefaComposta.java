@@ -0,0 +1,53 @@
+package br.com.alura.estoque.asynctask;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Uma operação feita em etapas (ler do banco, depois pedir à API...) como uma única Tarefa.
+Cada etapa é acompanhada quando começa; cancelar a composta cancela todas, e uma etapa
+que comece depois do cancelamento já nasce cancelada.
+
+A composta não sabe sozinha quantas etapas ainda virão. A última é indicada com
+acompanhaUltima(), e quando ela se encerra a composta também está encerrada, para que o
+EscopoDeTarefas deixe de guardá-la.
+ */
+public class TarefaComposta implements Tarefa {
+
+    private final List<Tarefa> etapas = new ArrayList<>();
+    private boolean cancelada = false;
+    private Tarefa ultimaEtapa;
+
+    public synchronized <T extends Tarefa> T acompanha(T etapa) {
+        if (cancelada) {
+            etapa.cancela();
+        } else {
+            etapas.add(etapa);
+        }
+        return etapa;
+    }
+
+    public synchronized <T extends Tarefa> T acompanhaUltima(T etapa) {
+        ultimaEtapa = etapa;
+        return acompanha(etapa);
+    }
+
+    @Override
+    public synchronized void cancela() {
+        cancelada = true;
+        for (Tarefa etapa : etapas) {
+            etapa.cancela();
+        }
+        etapas.clear();
+    }
+
+    @Override
+    public synchronized boolean isCancelada() {
+        return cancelada;
+    }
+
+    @Override
+    public synchronized boolean isEncerrada() {
+        return cancelada || (ultimaEtapa != null && ultimaEtapa.isEncerrada());
+    }
+}
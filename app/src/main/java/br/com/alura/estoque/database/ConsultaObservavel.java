@@ -0,0 +1,161 @@
+package br.com.alura.estoque.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.asynctask.Pool;
+import br.com.alura.estoque.asynctask.Tarefa;
+
+/*
+Uma consulta que é executada de novo sempre que as tabelas das quais ela depende mudam,
+usando o InvalidationTracker do Room (o mesmo mecanismo por trás do LiveData dos DAOs).
+
+O InvalidationTracker avisa a cada transação concluída. Durante uma sincronização grande,
+isso seriam dezenas de avisos seguidos, então eles são agrupados: a consulta só roda
+depois de um intervalo sem novos avisos (atraso), ou quando a espera total chega
+ao limite (esperaMaxima), para que a tela não fique parada durante uma carga longa.
+
+Os parâmetros são pedidos na UI Thread logo antes de cada execução, então podem
+depender do que está na tela naquele momento. A consulta roda no Pool de LEITURA e
+o resultado é entregue na UI Thread, junto com os parâmetros usados.
+
+A primeira entrega só acontece depois de uma alteração (ou de Inscricao.atualiza()):
+a carga inicial continua sendo feita por quem observa.
+ */
+public class ConsultaObservavel<P, T> {
+
+    private static final Handler MAIN_THREAD = new Handler(Looper.getMainLooper());
+
+    private final EstoqueDatabase db;
+    private final String[] tabelas;
+    private final long atrasoMillis;
+    private final long esperaMaximaMillis;
+    private final Consulta<P, T> consulta;
+
+    public ConsultaObservavel(EstoqueDatabase db,
+                              String[] tabelas,
+                              long atrasoMillis,
+                              long esperaMaximaMillis,
+                              Consulta<P, T> consulta) {
+        this.db = db;
+        this.tabelas = tabelas;
+        this.atrasoMillis = atrasoMillis;
+        this.esperaMaximaMillis = esperaMaximaMillis;
+        this.consulta = consulta;
+    }
+
+    // Deve ser chamado na UI Thread
+    public Inscricao observa(Parametros<P> parametros, Observador<P, T> observador) {
+        InscricaoAtiva inscricao = new InscricaoAtiva(parametros, observador);
+        inscricao.inicia();
+        return inscricao;
+    }
+
+    public interface Parametros<P> {
+        P atuais();
+    }
+
+    public interface Consulta<P, T> {
+        T executa(P parametros);
+    }
+
+    public interface Observador<P, T> {
+        void quandoAlterada(P parametros, T resultado);
+    }
+
+    /*
+    O estado abaixo só é acessado na UI Thread; onInvalidated(), que chega numa Thread
+    do Room, apenas repassa o aviso para ela.
+     */
+    private class InscricaoAtiva extends InvalidationTracker.Observer implements Inscricao {
+
+        private final Parametros<P> parametros;
+        private final Observador<P, T> observador;
+        private final Runnable execucao = this::executa;
+        private boolean cancelada = false;
+        private long primeiroAvisoPendente = 0;
+        private int geracao = 0;
+        private Tarefa emAndamento;
+
+        InscricaoAtiva(Parametros<P> parametros, Observador<P, T> observador) {
+            super(tabelas);
+            this.parametros = parametros;
+            this.observador = observador;
+        }
+
+        // Registrar o observer acessa o banco (cria os triggers), então sai da UI Thread
+        void inicia() {
+            new BaseAsyncTask<>(() -> {
+                db.getInvalidationTracker().addObserver(this);
+                return null;
+            }, registrado -> {
+            }).executa(Pool.LEITURA);
+        }
+
+        @Override
+        public void onInvalidated(@NonNull Set<String> tabelasAlteradas) {
+            MAIN_THREAD.post(this::agenda);
+        }
+
+        private void agenda() {
+            if (cancelada) {
+                return;
+            }
+            long agora = SystemClock.uptimeMillis();
+            if (primeiroAvisoPendente == 0) {
+                primeiroAvisoPendente = agora;
+            }
+            long limite = primeiroAvisoPendente + esperaMaximaMillis;
+            MAIN_THREAD.removeCallbacks(execucao);
+            MAIN_THREAD.postAtTime(execucao, Math.min(agora + atrasoMillis, limite));
+        }
+
+        private void executa() {
+            primeiroAvisoPendente = 0;
+            if (cancelada) {
+                return;
+            }
+            P atuais = parametros.atuais();
+            // Se uma execução anterior ainda não terminou, só a mais nova é entregue
+            int esta = ++geracao;
+            emAndamento = new BaseAsyncTask<>(() -> consulta.executa(atuais),
+                    resultado -> {
+                        if (!cancelada && esta == geracao) {
+                            observador.quandoAlterada(atuais, resultado);
+                        }
+                    }).rastreada("ConsultaObservavel.consulta").executa(Pool.LEITURA);
+        }
+
+        @Override
+        public void atualiza() {
+            MAIN_THREAD.removeCallbacks(execucao);
+            executa();
+        }
+
+        @Override
+        public void cancela() {
+            cancelada = true;
+            MAIN_THREAD.removeCallbacks(execucao);
+            if (emAndamento != null) {
+                emAndamento.cancela();
+            }
+            InvalidationTracker.Observer observer = this;
+            new BaseAsyncTask<>(() -> {
+                db.getInvalidationTracker().removeObserver(observer);
+                return null;
+            }, removido -> {
+            }).executa(Pool.LEITURA);
+        }
+
+        @Override
+        public boolean isCancelada() {
+            return cancelada;
+        }
+    }
+}
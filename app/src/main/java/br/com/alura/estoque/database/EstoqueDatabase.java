@@ -1,28 +1,172 @@
 package br.com.alura.estoque.database;
 
 import android.content.Context;
+import android.database.Cursor;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
 import br.com.alura.estoque.database.converter.BigDecimalConverter;
+import br.com.alura.estoque.database.converter.OperacaoConverter;
+import br.com.alura.estoque.database.dao.PendenciaDAO;
+import br.com.alura.estoque.database.dao.ProdutoConfirmadoDAO;
 import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.database.dao.SincronizacaoDAO;
+import br.com.alura.estoque.model.Pendencia;
 import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.ProdutoConfirmado;
+import br.com.alura.estoque.model.ResumoDoEstoque;
+import br.com.alura.estoque.model.Sincronizacao;
 
-@Database(entities = {Produto.class}, version = 1, exportSchema = false)
-@TypeConverters(value = {BigDecimalConverter.class})
+@Database(entities = {Produto.class, Sincronizacao.class, Pendencia.class, ResumoDoEstoque.class,
+        ProdutoConfirmado.class}, version = 8, exportSchema = false)
+@TypeConverters(value = {BigDecimalConverter.class, OperacaoConverter.class})
 public abstract class EstoqueDatabase extends RoomDatabase {
 
     private static final String NOME_BANCO_DE_DADOS = "estoque.db";
 
+    /*
+    Valores aplicados via PRAGMA sempre que o banco é aberto (ver onOpen()).
+
+    cache_size negativo é interpretado pelo SQLite em KiB (e não em páginas), portanto
+    -8192 equivale a 8 MiB de cache de páginas.
+    mmap_size permite que as leituras sejam feitas direto da memória mapeada, evitando
+    a cópia de cada página lida para o cache do SQLite.
+     */
+    private static final int TAMANHO_CACHE_EM_KIB = 8 * 1024;
+    private static final long TAMANHO_MMAP_EM_BYTES = 32L * 1024 * 1024;
+
+    /*
+    Antes, cada chamada de getInstance() criava um novo banco (e um novo pool de conexões,
+    cache de páginas e InvalidationTracker) para o mesmo arquivo estoque.db.
+    Agora mantemos uma única instância por processo, criada de forma preguiçosa.
+
+    volatile garante que a instância criada dentro do bloco synchronized fique visível
+    para as outras Threads sem que elas precisem entrar no bloco.
+     */
+    private static volatile EstoqueDatabase instancia;
+
     public abstract ProdutoDAO getProdutoDAO();
 
+    public abstract SincronizacaoDAO getSincronizacaoDAO();
+
+    public abstract PendenciaDAO getPendenciaDAO();
+
+    public abstract ProdutoConfirmadoDAO getProdutoConfirmadoDAO();
+
     public static EstoqueDatabase getInstance(Context context) {
+        EstoqueDatabase banco = instancia;
+        if (banco == null) {
+            synchronized (EstoqueDatabase.class) {
+                banco = instancia;
+                if (banco == null) {
+                    // O contexto da aplicação evita que a instância única mantenha uma Activity viva
+                    banco = criaBanco(context.getApplicationContext(), NOME_BANCO_DE_DADOS);
+                    instancia = banco;
+                }
+            }
+        }
+        return banco;
+    }
+
+    /*
+    Visível no pacote para que os benchmarks abram um banco com a mesma configuração,
+    mas em outro arquivo, sem mexer no estoque.db do app.
+     */
+    static EstoqueDatabase criaBanco(Context context, String nome) {
         return Room.databaseBuilder(
                 context,
                 EstoqueDatabase.class,
-                NOME_BANCO_DE_DADOS)
+                nome)
+                /*
+                Com write-ahead logging as leituras não ficam bloqueadas enquanto
+                uma escrita (como a sincronização com a API) está em andamento.
+                 */
+                .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                .addMigrations(EstoqueMigracoes.TODAS)
+                .addCallback(new ConfiguracaoDeConexao())
                 .build();
     }
+
+    /*
+    O Room só abre o arquivo de fato na primeira consulta. Este método força a abertura
+    em background, para que a primeira tela não pague o custo de abrir o banco
+    (criar o arquivo, ler o esquema, aplicar os PRAGMAs) na Thread que fizer a primeira busca.
+     */
+    public static void abreEmBackground(Context context) {
+        EstoqueDatabase banco = getInstance(context);
+        new BaseAsyncTask<>(() -> banco.getOpenHelper().getWritableDatabase(),
+                aberto -> {
+                }).execute();
+    }
+
+    /*
+    Fecha a instância única. A próxima chamada de getInstance() reabre o banco,
+    o que permite, por exemplo, restaurar um backup do arquivo ou medir a abertura a frio.
+     */
+    public static void fecha() {
+        synchronized (EstoqueDatabase.class) {
+            if (instancia != null) {
+                instancia.close();
+                instancia = null;
+            }
+        }
+    }
+
+    private static class ConfiguracaoDeConexao extends RoomDatabase.Callback {
+
+        /*
+        O Room só cria as tabelas das entidades; o índice de busca e os triggers do resumo,
+        numa instalação nova, são criados aqui. Quem já tinha o banco os recebe pelas
+        migrações 4 → 5 e 5 → 6.
+         */
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            super.onCreate(db);
+            IndiceDeBusca.cria(db);
+            TriggersDoResumo.cria(db);
+        }
+
+        /*
+        O onOpen() recebe só a conexão principal. Em WAL o Android ainda abre conexões
+        de leitura no pool, e os PRAGMAs abaixo valem por conexão; elas ficam com os
+        valores padrão. Para synchronous e recursive_triggers isso não importa, já que
+        toda escrita passa pela conexão principal. Já cache_size, mmap_size e temp_store
+        só valem para as consultas que caem na conexão principal; o Room não oferece um
+        ponto para configurar cada conexão do pool.
+         */
+        @Override
+        public void onOpen(@NonNull SupportSQLiteDatabase db) {
+            super.onOpen(db);
+            /*
+            Em WAL, synchronous = NORMAL só sincroniza o disco nos checkpoints,
+            sem perder a consistência do banco em caso de queda do app.
+             */
+            executaPragma(db, "synchronous = NORMAL");
+            executaPragma(db, "temp_store = MEMORY");
+            executaPragma(db, "cache_size = -" + TAMANHO_CACHE_EM_KIB);
+            executaPragma(db, "mmap_size = " + TAMANHO_MMAP_EM_BYTES);
+            // Necessário para que os triggers vejam as linhas substituídas por um REPLACE
+            executaPragma(db, "recursive_triggers = ON");
+            IndiceDeBusca.verificaTokenizador(db);
+        }
+
+        /*
+        Alguns PRAGMAs devolvem uma linha, o que faz o execSQL() lançar exceção em certas
+        versões do Android. Por isso executamos via query() e movemos o cursor,
+        já que o cursor só executa a instrução quando é percorrido.
+         */
+        private void executaPragma(SupportSQLiteDatabase db, String pragma) {
+            Cursor cursor = db.query("PRAGMA " + pragma);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,129 @@
+package br.com.alura.estoque.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/*
+Migrações do esquema do banco. Cada uma leva de uma versão para a seguinte,
+sem perder os produtos já salvos.
+ */
+class EstoqueMigracoes {
+
+    /*
+    Adiciona a versão de cada produto e a tabela que guarda até qual versão
+    os dados locais já foram sincronizados com a API.
+    Os produtos existentes ficam com versão 0, e como não há marca d'água salva,
+    a primeira sincronização depois da migração busca o catálogo inteiro.
+     */
+    private static final Migration MIGRACAO_1_PARA_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE Produto ADD COLUMN versao INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `Sincronizacao` (" +
+                    "`recurso` TEXT NOT NULL, " +
+                    "`versao` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`recurso`))");
+        }
+    };
+
+    /*
+    O preço deixa de ser REAL e passa a ser um INTEGER com os centavos.
+    O SQLite não altera o tipo de uma coluna, então a tabela é recriada e os preços
+    existentes são convertidos, arredondando para o centavo mais próximo.
+     */
+    private static final Migration MIGRACAO_2_PARA_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `Produto_novo` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`nome` TEXT, " +
+                    "`preco` INTEGER NOT NULL, " +
+                    "`quantidade` INTEGER NOT NULL, " +
+                    "`versao` INTEGER NOT NULL)");
+            database.execSQL("INSERT INTO Produto_novo (id, nome, preco, quantidade, versao) " +
+                    "SELECT id, nome, CAST(ROUND(COALESCE(preco, 0) * 100) AS INTEGER), quantidade, versao " +
+                    "FROM Produto");
+            database.execSQL("DROP TABLE Produto");
+            database.execSQL("ALTER TABLE Produto_novo RENAME TO Produto");
+        }
+    };
+
+    /*
+    Cria a caixa de saída: as alterações feitas localmente que ainda não foram
+    enviadas para a API, no máximo uma por produto.
+     */
+    private static final Migration MIGRACAO_3_PARA_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `Pendencia` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`produtoId` INTEGER NOT NULL, " +
+                    "`operacao` TEXT NOT NULL, " +
+                    "`revisao` INTEGER NOT NULL, " +
+                    "`criadaEm` INTEGER NOT NULL)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_Pendencia_produtoId` " +
+                    "ON `Pendencia` (`produtoId`)");
+        }
+    };
+
+    /*
+    Cria o índice de texto completo sobre o nome dos produtos (ver IndiceDeBusca)
+    e indexa o catálogo que já está salvo.
+     */
+    private static final Migration MIGRACAO_4_PARA_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            IndiceDeBusca.cria(database);
+        }
+    };
+
+    /*
+    Cria a linha de totais do estoque e os triggers que a mantêm (ver TriggersDoResumo),
+    já com os totais do catálogo salvo.
+     */
+    private static final Migration MIGRACAO_5_PARA_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `ResumoDoEstoque` (" +
+                    "`id` INTEGER NOT NULL, " +
+                    "`produtos` INTEGER NOT NULL, " +
+                    "`unidades` INTEGER NOT NULL, " +
+                    "`valorTotal` INTEGER NOT NULL, " +
+                    "`produtosComEstoqueBaixo` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`id`))");
+            TriggersDoResumo.cria(database);
+        }
+    };
+
+    /*
+    Cria a tabela com a última versão confirmada dos produtos alterados localmente,
+    usada para desfazer alterações recusadas pela API. Pendências criadas antes desta
+    versão não têm essa cópia e, se forem recusadas, apenas saem da fila como antes.
+     */
+    private static final Migration MIGRACAO_6_PARA_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `ProdutoConfirmado` (" +
+                    "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "`nome` TEXT, " +
+                    "`preco` INTEGER NOT NULL, " +
+                    "`quantidade` INTEGER NOT NULL, " +
+                    "`versao` INTEGER NOT NULL)");
+        }
+    };
+
+    /*
+    Recria o índice de busca com o tokenizador unicode61, que ignora acentos e entende
+    maiúsculas fora do ASCII (ver IndiceDeBusca). Os nomes são indexados de novo.
+     */
+    private static final Migration MIGRACAO_7_PARA_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            IndiceDeBusca.recria(database);
+        }
+    };
+
+    static final Migration[] TODAS = {MIGRACAO_1_PARA_2, MIGRACAO_2_PARA_3, MIGRACAO_3_PARA_4,
+            MIGRACAO_4_PARA_5, MIGRACAO_5_PARA_6, MIGRACAO_6_PARA_7, MIGRACAO_7_PARA_8};
+}
@@ -0,0 +1,166 @@
+package br.com.alura.estoque.database;
+
+import android.database.Cursor;
+import android.database.SQLException;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+/*
+Índice de texto completo (FTS4) sobre o nome dos produtos.
+
+Buscar com LIKE '%x%' obriga o SQLite a ler todas as linhas da tabela e comparar o nome
+de cada uma. A tabela virtual ProdutoFts guarda, para cada palavra, os ids dos produtos
+que a contêm, então uma busca por prefixo ("cad*") só lê as entradas dessas palavras.
+
+O Room 2.0 não conhece tabelas FTS, por isso ela é criada aqui (na criação do banco e na
+migração 4 → 5) e consultada por ProdutoDAO.buscaPorConsulta(). A tabela é de conteúdo
+externo: não duplica os nomes, apenas indexa os da tabela Produto, e os triggers abaixo
+a mantêm em dia a cada inserção, alteração ou remoção de produto.
+
+Um INSERT OR REPLACE que substitui um produto existente apaga a linha antiga sem disparar
+o trigger de DELETE, a não ser que recursive_triggers esteja ligado. Por isso o PRAGMA
+é aplicado em EstoqueDatabase a cada abertura do banco.
+
+O tokenizador unicode61 separa as palavras e compara maiúsculas e minúsculas de qualquer
+alfabeto, e ignora os acentos: "cafe" encontra "Café". O tokenizador padrão (simple) só
+entende ASCII. O unicode61 não existe no SQLite de alguns aparelhos antigos; neles o
+índice é criado com o padrão e a busca deixa de ignorar os acentos (ver cria()).
+ */
+public class IndiceDeBusca {
+
+    private static final String TOKENIZADOR = "unicode61";
+    private static final String CRIACAO_DA_TABELA =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS `ProdutoFts` USING fts4(content=`Produto`, `nome`%s)";
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+
+    private static final String[] TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS `ProdutoFts_antes_de_alterar` BEFORE UPDATE ON `Produto` BEGIN " +
+                    "DELETE FROM `ProdutoFts` WHERE docid = old.`id`; END",
+            "CREATE TRIGGER IF NOT EXISTS `ProdutoFts_antes_de_remover` BEFORE DELETE ON `Produto` BEGIN " +
+                    "DELETE FROM `ProdutoFts` WHERE docid = old.`id`; END",
+            "CREATE TRIGGER IF NOT EXISTS `ProdutoFts_depois_de_alterar` AFTER UPDATE ON `Produto` BEGIN " +
+                    "INSERT INTO `ProdutoFts` (docid, `nome`) VALUES (new.`id`, new.`nome`); END",
+            "CREATE TRIGGER IF NOT EXISTS `ProdutoFts_depois_de_inserir` AFTER INSERT ON `Produto` BEGIN " +
+                    "INSERT INTO `ProdutoFts` (docid, `nome`) VALUES (new.`id`, new.`nome`); END"
+    };
+
+    /*
+    Os resultados vêm na ordem da lista (por id). Ordenar pelo docid da tabela FTS, e não
+    pelo id do Produto, deixa a ordenação com o próprio FTS, que já percorre o índice
+    nessa ordem; com o LIMIT, a busca para nos primeiros resultados.
+     */
+    private static final String BUSCA_POR_PREFIXO =
+            "SELECT Produto.* FROM ProdutoFts JOIN Produto ON Produto.id = ProdutoFts.docid " +
+                    "WHERE ProdutoFts MATCH ? ORDER BY ProdutoFts.docid LIMIT ?";
+
+    /*
+    Se o índice deste banco ignora acentos, a busca também precisa ignorar: com o
+    unicode61, "café*" só encontra palavras que, sem acento, comecem com "café".
+    Atualizado a cada abertura do banco (ver verificaTokenizador()).
+     */
+    private static volatile boolean ignoraAcentos = true;
+
+    private IndiceDeBusca() {
+    }
+
+    // Cria a tabela e os triggers e indexa os produtos que já existem
+    public static void cria(SupportSQLiteDatabase database) {
+        try {
+            database.execSQL(String.format(CRIACAO_DA_TABELA, ", tokenize=" + TOKENIZADOR));
+            ignoraAcentos = true;
+        } catch (SQLException semUnicode61) {
+            database.execSQL(String.format(CRIACAO_DA_TABELA, ""));
+            ignoraAcentos = false;
+        }
+        for (String instrucao : TRIGGERS) {
+            database.execSQL(instrucao);
+        }
+        database.execSQL("INSERT INTO `ProdutoFts` (`ProdutoFts`) VALUES ('rebuild')");
+    }
+
+    /*
+    Recria o índice, por exemplo para trocar o tokenizador. Os triggers também são
+    recriados, já que a tabela que eles alimentam é apagada.
+     */
+    static void recria(SupportSQLiteDatabase database) {
+        database.execSQL("DROP TRIGGER IF EXISTS `ProdutoFts_antes_de_alterar`");
+        database.execSQL("DROP TRIGGER IF EXISTS `ProdutoFts_antes_de_remover`");
+        database.execSQL("DROP TRIGGER IF EXISTS `ProdutoFts_depois_de_alterar`");
+        database.execSQL("DROP TRIGGER IF EXISTS `ProdutoFts_depois_de_inserir`");
+        database.execSQL("DROP TABLE IF EXISTS `ProdutoFts`");
+        cria(database);
+    }
+
+    // Descobre com qual tokenizador o índice deste banco foi criado
+    static void verificaTokenizador(SupportSQLiteDatabase database) {
+        Cursor cursor = database.query("SELECT sql FROM sqlite_master WHERE name = 'ProdutoFts'");
+        try {
+            if (cursor.moveToFirst()) {
+                String criacao = cursor.getString(0);
+                ignoraAcentos = criacao != null && criacao.contains(TOKENIZADOR);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+    Cada palavra digitada vira um prefixo, e todas precisam aparecer no nome:
+    "cad az" encontra "Cadeira azul". Devolve null se não sobrar nenhuma palavra.
+     */
+    public static SupportSQLiteQuery buscaPorPrefixo(String texto, int limite) {
+        String expressao = expressaoDeBusca(texto);
+        if (expressao == null) {
+            return null;
+        }
+        return new SimpleSQLiteQuery(BUSCA_POR_PREFIXO, new Object[]{expressao, limite});
+    }
+
+    static String expressaoDeBusca(String texto) {
+        return expressaoDeBusca(texto, ignoraAcentos);
+    }
+
+    /*
+    Aspas, hífens e asteriscos têm significado na sintaxe do MATCH, então só letras e
+    números são aproveitados. Cada palavra vai entre aspas, para que "and" ou "or"
+    digitados sejam buscados como texto e não interpretados como operadores.
+
+    Os acentos são tirados do texto da mesma forma que o unicode61 tira dos nomes
+    indexados: decompondo cada letra (NFD) e descartando as marcas.
+     */
+    static String expressaoDeBusca(String texto, boolean semAcentos) {
+        if (texto == null) {
+            return null;
+        }
+        String normalizado = texto.toLowerCase(Locale.ROOT);
+        if (semAcentos) {
+            normalizado = ACENTOS.matcher(Normalizer.normalize(normalizado, Normalizer.Form.NFD))
+                    .replaceAll("");
+        }
+        List<String> termos = new ArrayList<>();
+        for (String palavra : normalizado.split("[^\\p{L}\\p{N}]+")) {
+            if (!palavra.isEmpty()) {
+                termos.add("\"" + palavra + "*\"");
+            }
+        }
+        if (termos.isEmpty()) {
+            return null;
+        }
+        StringBuilder expressao = new StringBuilder();
+        for (String termo : termos) {
+            if (expressao.length() > 0) {
+                expressao.append(' ');
+            }
+            expressao.append(termo);
+        }
+        return expressao.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package br.com.alura.estoque.database;
+
+import br.com.alura.estoque.asynctask.Tarefa;
+
+/*
+Referência para uma consulta observada (ver ConsultaObservavel).
+
+Como Tarefa, pode ser acompanhada por um EscopoDeTarefas: cancelar a inscrição
+para de observar as tabelas e nenhum resultado é entregue depois disso.
+ */
+public interface Inscricao extends Tarefa {
+
+    // Executa a consulta de novo agora, sem esperar uma alteração nas tabelas
+    void atualiza();
+}
@@ -0,0 +1,33 @@
+package br.com.alura.estoque.database;
+
+import java.util.List;
+
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.metrica.Rastreamento;
+import br.com.alura.estoque.model.IntervaloDeProdutos;
+import br.com.alura.estoque.model.Produto;
+
+/*
+Variantes observáveis das consultas do ProdutoDAO. Ficam fora do DAO porque a interface
+do Room 2.0 não aceita código próprio, e o LiveData gerado por ele refaz a consulta
+a cada transação, sem o agrupamento de avisos da ConsultaObservavel.
+ */
+public class ProdutosObservaveis {
+
+    private static final String[] TABELAS = {"Produto"};
+    private static final long ATRASO_MILLIS = 300;
+    private static final long ESPERA_MAXIMA_MILLIS = 2000;
+
+    private final ConsultaObservavel<IntervaloDeProdutos, List<Produto>> intervalo;
+
+    public ProdutosObservaveis(EstoqueDatabase db) {
+        ProdutoDAO dao = Rastreamento.envolve(ProdutoDAO.class, db.getProdutoDAO());
+        intervalo = new ConsultaObservavel<>(db, TABELAS, ATRASO_MILLIS, ESPERA_MAXIMA_MILLIS,
+                faixa -> dao.buscaIntervalo(faixa.getPrimeiroId(), faixa.getUltimoId(), faixa.getLimite()));
+    }
+
+    public Inscricao observaIntervalo(ConsultaObservavel.Parametros<IntervaloDeProdutos> faixa,
+                                      ConsultaObservavel.Observador<IntervaloDeProdutos, List<Produto>> observador) {
+        return intervalo.observa(faixa, observador);
+    }
+}
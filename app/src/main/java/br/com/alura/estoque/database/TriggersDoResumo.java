@@ -0,0 +1,57 @@
+package br.com.alura.estoque.database;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import br.com.alura.estoque.model.ResumoDoEstoque;
+
+/*
+Mantém a linha de ResumoDoEstoque em dia: cada inserção, alteração ou remoção na tabela
+Produto soma ou subtrai a sua parte dos totais, dentro da mesma transação da escrita.
+
+O preço é gravado em centavos (ver BigDecimalConverter), então preco * quantidade já é
+o valor em centavos, no mesmo formato da coluna valorTotal, e a soma é exata.
+Assim como no IndiceDeBusca, um REPLACE só desconta a linha substituída porque
+recursive_triggers é ligado a cada abertura do banco.
+ */
+class TriggersDoResumo {
+
+    private static final String[] CRIACAO = {
+            "CREATE TRIGGER IF NOT EXISTS `ResumoDoEstoque_depois_de_inserir` AFTER INSERT ON `Produto` BEGIN " +
+                    somaAoResumo("+", "new") + " END",
+            "CREATE TRIGGER IF NOT EXISTS `ResumoDoEstoque_depois_de_remover` AFTER DELETE ON `Produto` BEGIN " +
+                    somaAoResumo("-", "old") + " END",
+            "CREATE TRIGGER IF NOT EXISTS `ResumoDoEstoque_depois_de_alterar` AFTER UPDATE ON `Produto` BEGIN " +
+                    somaAoResumo("-", "old") + " " + somaAoResumo("+", "new") + " END"
+    };
+
+    private TriggersDoResumo() {
+    }
+
+    // Cria os triggers e calcula os totais uma vez, a partir dos produtos que já existem
+    static void cria(SupportSQLiteDatabase database) {
+        for (String instrucao : CRIACAO) {
+            database.execSQL(instrucao);
+        }
+        recalcula(database);
+    }
+
+    private static void recalcula(SupportSQLiteDatabase database) {
+        database.execSQL("INSERT OR REPLACE INTO `ResumoDoEstoque` " +
+                "(`id`, `produtos`, `unidades`, `valorTotal`, `produtosComEstoqueBaixo`) " +
+                "SELECT " + ResumoDoEstoque.ID + ", COUNT(*), " +
+                "COALESCE(SUM(`quantidade`), 0), " +
+                "COALESCE(SUM(`preco` * `quantidade`), 0), " +
+                "COALESCE(SUM(`quantidade` < " + ResumoDoEstoque.LIMITE_ESTOQUE_BAIXO + "), 0) " +
+                "FROM `Produto`");
+    }
+
+    // Soma (ou subtrai) a parte da linha new ou old de Produto em cada total
+    private static String somaAoResumo(String sinal, String linha) {
+        return "UPDATE `ResumoDoEstoque` SET " +
+                "`produtos` = `produtos` " + sinal + " 1, " +
+                "`unidades` = `unidades` " + sinal + " " + linha + ".`quantidade`, " +
+                "`valorTotal` = `valorTotal` " + sinal + " " + linha + ".`preco` * " + linha + ".`quantidade`, " +
+                "`produtosComEstoqueBaixo` = `produtosComEstoqueBaixo` " + sinal +
+                " (" + linha + ".`quantidade` < " + ResumoDoEstoque.LIMITE_ESTOQUE_BAIXO + ")" +
+                " WHERE `id` = " + ResumoDoEstoque.ID + ";";
+    }
+}
@@ -0,0 +1,169 @@
+package br.com.alura.estoque.database;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import br.com.alura.estoque.database.dao.PendenciaDAO;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.metrica.Rastreamento;
+import br.com.alura.estoque.model.Produto;
+
+/*
+Gravação de listas grandes de produtos, usada pela sincronização no lugar de
+ProdutoDAO.salva(List).
+
+Cada lote é gravado na sua própria transação: o lock de escrita é liberado ao fim de
+cada lote, e as leituras da tela (e o InvalidationTracker do Room) não ficam esperando
+a sincronização inteira terminar. Dentro do lote, os produtos novos são inseridos e os
+existentes só são atualizados quando o conteúdo mudou (ver ProdutoDAO.atualizaSeDiferente()).
+Produtos com alterações locais ainda na caixa de saída (Pendencia) são ignorados, para que
+a sincronização não desfaça o que o usuário fez e a API ainda não recebeu.
+
+Se for chamado dentro de uma transação já aberta (db.runInTransaction()), os lotes
+passam a fazer parte dela, e a gravação continua atômica como um todo.
+ */
+public class UpsertDeProdutos {
+
+    public static final int TAMANHO_DO_LOTE_PADRAO = 500;
+
+    /*
+    O lote pode ter qualquer tamanho, mas as versões antigas do SQLite aceitam no máximo
+    999 parâmetros por instrução. Os ids dos IN (pendências e remoções) vão em partes.
+     */
+    private static final int IDS_POR_CONSULTA = 500;
+
+    private final EstoqueDatabase db;
+    private final ProdutoDAO dao;
+    private final PendenciaDAO pendenciaDAO;
+    private final int tamanhoDoLote;
+
+    public UpsertDeProdutos(EstoqueDatabase db) {
+        this(db, TAMANHO_DO_LOTE_PADRAO);
+    }
+
+    public UpsertDeProdutos(EstoqueDatabase db, int tamanhoDoLote) {
+        this.db = db;
+        this.dao = Rastreamento.envolve(ProdutoDAO.class, db.getProdutoDAO());
+        this.pendenciaDAO = db.getPendenciaDAO();
+        this.tamanhoDoLote = tamanhoDoLote;
+    }
+
+    /*
+    Devolve os produtos efetivamente inseridos e atualizados, para que quem chama
+    repasse só o que mudou, em vez de reler a tabela.
+     */
+    public Resultado grava(List<Produto> produtos) {
+        Resultado resultado = new Resultado();
+        for (int inicio = 0; inicio < produtos.size(); inicio += tamanhoDoLote) {
+            List<Produto> lote = produtos.subList(inicio,
+                    Math.min(inicio + tamanhoDoLote, produtos.size()));
+            db.runInTransaction(() -> gravaLote(lote, resultado));
+        }
+        return resultado;
+    }
+
+    /*
+    Usado pela carga completa, que recebe o catálogo inteiro em ordem de id: remove os
+    produtos locais com id entre depoisDe (exclusive) e ate (inclusive) que não estão entre
+    os recebidos, ou seja, que a API já não tem. Sem isso, um produto removido na API
+    enquanto não havia marca d'água (antes da primeira sincronização, ou depois de ela
+    ser perdida) ficaria no app para sempre, já que as remoções só chegam nas mudanças.
+
+    Produtos com pendência ficam, como em grava(), e os ids temporários (negativos)
+    nunca estão no intervalo. Devolve os ids removidos, para a tela tirá-los da lista.
+     */
+    public List<Long> removeAusentes(long depoisDe, long ate, List<Produto> recebidos) {
+        Set<Long> mantidos = new HashSet<>();
+        for (Produto produto : recebidos) {
+            mantidos.add(produto.getId());
+        }
+        List<Long> ausentes = new ArrayList<>();
+        for (Long id : dao.buscaIdsEntre(depoisDe, ate)) {
+            if (!mantidos.contains(id)) {
+                ausentes.add(id);
+            }
+        }
+        if (ausentes.isEmpty()) {
+            return ausentes;
+        }
+        Set<Long> pendentes = pendentesEntre(ausentes);
+        List<Long> removidos = new ArrayList<>(ausentes.size());
+        for (Long id : ausentes) {
+            if (!pendentes.contains(id)) {
+                removidos.add(id);
+            }
+        }
+        for (int inicio = 0; inicio < removidos.size(); inicio += IDS_POR_CONSULTA) {
+            int fim = Math.min(inicio + IDS_POR_CONSULTA, removidos.size());
+            dao.removePorIds(removidos.subList(inicio, fim));
+        }
+        return removidos;
+    }
+
+    private void gravaLote(List<Produto> produtos, Resultado resultado) {
+        List<Produto> lote = semPendencias(produtos);
+        long[] ids = dao.insereSeNovos(lote);
+        for (int i = 0; i < ids.length; i++) {
+            Produto produto = lote.get(i);
+            if (ids[i] != -1) {
+                resultado.inseridos.add(produto);
+                continue;
+            }
+            int alterados = dao.atualizaSeDiferente(produto.getId(), produto.getNome(),
+                    produto.getPreco(), produto.getQuantidade(), produto.getVersao());
+            if (alterados > 0) {
+                resultado.atualizados.add(produto);
+            } else {
+                resultado.inalterados++;
+            }
+        }
+    }
+
+    private List<Produto> semPendencias(List<Produto> produtos) {
+        List<Long> ids = new ArrayList<>(produtos.size());
+        for (Produto produto : produtos) {
+            ids.add(produto.getId());
+        }
+        Set<Long> ignorados = pendentesEntre(ids);
+        if (ignorados.isEmpty()) {
+            return produtos;
+        }
+        List<Produto> semPendencias = new ArrayList<>(produtos.size());
+        for (Produto produto : produtos) {
+            if (!ignorados.contains(produto.getId())) {
+                semPendencias.add(produto);
+            }
+        }
+        return semPendencias;
+    }
+
+    private Set<Long> pendentesEntre(List<Long> ids) {
+        Set<Long> pendentes = new HashSet<>();
+        for (int inicio = 0; inicio < ids.size(); inicio += IDS_POR_CONSULTA) {
+            int fim = Math.min(inicio + IDS_POR_CONSULTA, ids.size());
+            pendentes.addAll(pendenciaDAO.buscaProdutosPendentes(ids.subList(inicio, fim)));
+        }
+        return pendentes;
+    }
+
+    public static class Resultado {
+
+        private final List<Produto> inseridos = new ArrayList<>();
+        private final List<Produto> atualizados = new ArrayList<>();
+        private int inalterados;
+
+        public List<Produto> getInseridos() {
+            return inseridos;
+        }
+
+        public List<Produto> getAtualizados() {
+            return atualizados;
+        }
+
+        public int getInalterados() {
+            return inalterados;
+        }
+    }
+}
@@ -1,22 +1,36 @@
 package br.com.alura.estoque.database.converter;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 import androidx.room.TypeConverter;
 
+/*
+Antes os preços eram gravados como REAL, via doubleValue(), e lidos com new BigDecimal(double),
+o que trazia valores como 10.4999999999999982236431605997495353221893310546875 e ainda
+criava um Double para cada linha lida.
+
+Agora o valor é gravado como um INTEGER com a quantidade de centavos. A conversão usa
+long primitivo nos dois sentidos (sem Double nem Long), e o SQLite consegue somar e
+ordenar os preços de forma exata.
+ */
 public class BigDecimalConverter {
 
+    private static final int CASAS_DECIMAIS = 2;
+
     @TypeConverter
-    public Double paraDouble(BigDecimal valor) {
-        return valor.doubleValue();
+    public long paraCentavos(BigDecimal valor) {
+        if (valor == null) {
+            return 0;
+        }
+        return valor.setScale(CASAS_DECIMAIS, RoundingMode.HALF_EVEN)
+                .unscaledValue()
+                .longValueExact();
     }
 
     @TypeConverter
-    public BigDecimal paraBigDecimal(Double valor) {
-        if (valor != null) {
-            return new BigDecimal(valor);
-        }
-        return BigDecimal.ZERO;
+    public BigDecimal paraBigDecimal(long centavos) {
+        return BigDecimal.valueOf(centavos, CASAS_DECIMAIS);
     }
 
 }
@@ -0,0 +1,21 @@
+package br.com.alura.estoque.database.converter;
+
+import androidx.room.TypeConverter;
+import br.com.alura.estoque.model.Pendencia;
+
+/*
+Grava a operação de uma pendência pelo nome (TEXT), e não pela posição no enum,
+para que reordenar ou incluir operações não mude o significado das linhas já gravadas.
+ */
+public class OperacaoConverter {
+
+    @TypeConverter
+    public String paraTexto(Pendencia.Operacao operacao) {
+        return operacao.name();
+    }
+
+    @TypeConverter
+    public Pendencia.Operacao paraOperacao(String texto) {
+        return Pendencia.Operacao.valueOf(texto);
+    }
+}
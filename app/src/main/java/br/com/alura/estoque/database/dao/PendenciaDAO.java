@@ -0,0 +1,55 @@
+package br.com.alura.estoque.database.dao;
+
+import java.util.List;
+
+import androidx.room.Dao;
+import androidx.room.Delete;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Update;
+import br.com.alura.estoque.model.Pendencia;
+
+@Dao
+public interface PendenciaDAO {
+
+    @Insert
+    void insere(Pendencia pendencia);
+
+    @Update
+    void atualiza(Pendencia pendencia);
+
+    @Delete
+    void remove(Pendencia pendencia);
+
+    @Query("SELECT * FROM Pendencia WHERE produtoId = :produtoId")
+    Pendencia buscaPorProduto(long produtoId);
+
+    /*
+    Pelo id da própria pendência, que o AUTOINCREMENT nunca repete. O produtoId não
+    serve para reconhecer a pendência de uma resposta: um id temporário pode voltar a
+    ser usado por outro produto novo depois que o primeiro foi removido.
+     */
+    @Query("SELECT * FROM Pendencia WHERE id = :id")
+    Pendencia busca(long id);
+
+    // Na ordem em que as alterações foram feitas
+    @Query("SELECT * FROM Pendencia ORDER BY id LIMIT :quantidade")
+    List<Pendencia> buscaLote(int quantidade);
+
+    @Query("SELECT COUNT(*) FROM Pendencia")
+    int conta();
+
+    /*
+    Usado pela sincronização para não sobrescrever alterações locais que ainda não
+    chegaram à API. Assim como em removePorIds(), os ids devem vir em lotes.
+     */
+    @Query("SELECT produtoId FROM Pendencia WHERE produtoId IN (:produtoIds)")
+    List<Long> buscaProdutosPendentes(List<Long> produtoIds);
+
+    /*
+    Remove a pendência só se ela não foi alterada desde o envio. Devolve 0 quando
+    uma nova alteração chegou enquanto a requisição estava em andamento.
+     */
+    @Query("DELETE FROM Pendencia WHERE id = :id AND revisao = :revisao")
+    int removeSeNaoMudou(long id, int revisao);
+}
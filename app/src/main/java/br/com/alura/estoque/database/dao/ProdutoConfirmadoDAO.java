@@ -0,0 +1,25 @@
+package br.com.alura.estoque.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import br.com.alura.estoque.model.ProdutoConfirmado;
+
+@Dao
+public interface ProdutoConfirmadoDAO {
+
+    // Mantém a versão que já estava guardada: ela é a última confirmada pela API
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void guardaSeAusente(ProdutoConfirmado produto);
+
+    // Usado quando a API confirma uma versão nova e ainda há alterações locais pendentes
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void guarda(ProdutoConfirmado produto);
+
+    @Query("SELECT * FROM ProdutoConfirmado WHERE id = :id")
+    ProdutoConfirmado busca(long id);
+
+    @Query("DELETE FROM ProdutoConfirmado WHERE id = :id")
+    void remove(long id);
+}
@@ -1,5 +1,6 @@
 package br.com.alura.estoque.database.dao;
 
+import java.math.BigDecimal;
 import java.util.List;
 
 import androidx.room.Dao;
@@ -7,8 +8,11 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
 import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
 import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.ResumoDoEstoque;
 
 @Dao
 public interface ProdutoDAO {
@@ -22,16 +26,89 @@ public interface ProdutoDAO {
     @Query("SELECT * FROM Produto")
     List<Produto> buscaTodos();
 
+    /*
+    Paginação por chave (keyset): em vez de OFFSET, que obriga o SQLite a percorrer
+    e descartar todas as linhas anteriores, partimos do último id já carregado e usamos
+    o índice da chave primária para ir direto à próxima página.
+     */
+    @Query("SELECT * FROM Produto WHERE id > :ultimoId ORDER BY id LIMIT :quantidade")
+    List<Produto> buscaPagina(long ultimoId, int quantidade);
+
+    /*
+    Página imediatamente anterior ao primeiro id carregado, usada quando o usuário volta
+    a rolar para cima e a página já foi descartada da memória.
+    Vem em ordem decrescente, portanto precisa ser invertida por quem consulta.
+     */
+    @Query("SELECT * FROM Produto WHERE id < :primeiroId ORDER BY id DESC LIMIT :quantidade")
+    List<Produto> buscaPaginaAnteriorInvertida(long primeiroId, int quantidade);
+
+    // Usado para reconsultar a faixa de produtos que está na tela (ver ProdutosObservaveis)
+    @Query("SELECT * FROM Produto WHERE id BETWEEN :primeiroId AND :ultimoId ORDER BY id LIMIT :limite")
+    List<Produto> buscaIntervalo(long primeiroId, long ultimoId, int limite);
+
+    /*
+    A tabela do índice de busca não é uma entidade do Room, que recusaria uma @Query
+    sobre ela ao compilar. As consultas são montadas pelo IndiceDeBusca.
+     */
+    @RawQuery(observedEntities = Produto.class)
+    List<Produto> buscaPorConsulta(SupportSQLiteQuery consulta);
+
+    /*
+    Totais do estoque (valor, unidades, produtos com estoque baixo) já calculados
+    pelos triggers de TriggersDoResumo: uma leitura por chave, sem percorrer os produtos.
+     */
+    @Query("SELECT * FROM ResumoDoEstoque WHERE id = " + ResumoDoEstoque.ID)
+    ResumoDoEstoque buscaResumo();
+
     @Query("SELECT * FROM Produto WHERE id = :id")
     Produto buscaProduto(long id);
 
+    /*
+    Produtos criados sem conexão recebem ids negativos temporários, que nunca colidem
+    com os ids gerados pela API. Com a tabela vazia, o MIN() devolve NULL, lido como 0.
+     */
+    @Query("SELECT MIN(id) FROM Produto")
+    long buscaMenorId();
+
+    // Usado pela carga completa para encontrar os produtos que a API não tem mais
+    @Query("SELECT id FROM Produto WHERE id > :depoisDe AND id <= :ate")
+    List<Long> buscaIdsEntre(long depoisDe, long ate);
+
     @Delete
     void remove(Produto produto);
 
+    /*
+    Usado para aplicar as remoções (tombstones) recebidas na sincronização.
+    O SQLite limita a quantidade de parâmetros por instrução, então quem chama
+    deve enviar os ids em lotes.
+     */
+    @Query("DELETE FROM Produto WHERE id IN (:ids)")
+    void removePorIds(List<Long> ids);
+
     /*
     Tenta cadastrar os produtos. Caso ocorra algum conflito (registro já existe),
     atualiza-os.
+
+    O REPLACE apaga e insere de novo cada linha em conflito, mesmo que nada tenha mudado.
+    Para listas grandes (sincronização), prefira o UpsertDeProdutos.
      */
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void salva(List<Produto> produtos);
+
+    /*
+    Métodos usados pelo UpsertDeProdutos.
+
+    insereSeNovos() devolve -1 na posição de cada produto que já existia, e só esses
+    passam por atualizaSeDiferente(). O WHERE dessa atualização compara o conteúdo,
+    então um produto que veio igual da API não é reescrito (nem os seus índices).
+
+    O Room compila as duas instruções uma única vez e as reaproveita a cada chamada.
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long[] insereSeNovos(List<Produto> produtos);
+
+    @Query("UPDATE Produto SET nome = :nome, preco = :preco, quantidade = :quantidade, versao = :versao " +
+            "WHERE id = :id AND (nome IS NOT :nome OR preco != :preco " +
+            "OR quantidade != :quantidade OR versao != :versao)")
+    int atualizaSeDiferente(long id, String nome, BigDecimal preco, int quantidade, long versao);
 }
@@ -0,0 +1,20 @@
+package br.com.alura.estoque.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import br.com.alura.estoque.model.Sincronizacao;
+
+@Dao
+public interface SincronizacaoDAO {
+
+    @Query("SELECT * FROM Sincronizacao WHERE recurso = :recurso")
+    Sincronizacao busca(String recurso);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void salva(Sincronizacao sincronizacao);
+
+    @Query("DELETE FROM Sincronizacao WHERE recurso = :recurso")
+    void remove(String recurso);
+}
@@ -0,0 +1,63 @@
+package br.com.alura.estoque.metrica;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Os tempos de uma operação rastreada (ver Rastreamento), cada etapa no seu histograma:
+- espera: do envio ao Pool até uma Thread começar a executá-la;
+- execução: o trabalho em si (a consulta, a gravação);
+- entrega: do fim da execução até o FinalizadaListener terminar na UI Thread, o que
+  inclui a espera na fila da UI Thread.
+As chamadas ao DAO só têm execução. Linhas são as lidas ou gravadas, quando dá para saber.
+ */
+public class EstatisticasDaOperacao {
+
+    private final Histograma espera = new Histograma();
+    private final Histograma execucao = new Histograma();
+    private final Histograma entrega = new Histograma();
+    private final AtomicLong linhas = new AtomicLong();
+
+    public void registraEspera(long nanos) {
+        espera.registraNanos(nanos);
+    }
+
+    public void registraExecucao(long nanos, int linhasTocadas) {
+        execucao.registraNanos(nanos);
+        if (linhasTocadas > 0) {
+            linhas.addAndGet(linhasTocadas);
+        }
+    }
+
+    public void registraEntrega(long nanos) {
+        entrega.registraNanos(nanos);
+    }
+
+    public Histograma getEspera() {
+        return espera;
+    }
+
+    public Histograma getExecucao() {
+        return execucao;
+    }
+
+    public Histograma getEntrega() {
+        return entrega;
+    }
+
+    public long getLinhas() {
+        return linhas.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder("linhas: ").append(getLinhas());
+        if (espera.getContagem() > 0) {
+            texto.append("\n  espera: ").append(espera);
+        }
+        texto.append("\n  execução: ").append(execucao);
+        if (entrega.getContagem() > 0) {
+            texto.append("\n  entrega: ").append(entrega);
+        }
+        return texto.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package br.com.alura.estoque.metrica;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+Distribuição de durações, para saber não só a média, mas o p50, o p95 e o p99.
+
+Guardar cada amostra custaria memória sem limite, então as durações (em microssegundos)
+são contadas em faixas: até 3 µs uma faixa por valor e, daí em diante, quatro faixas por
+potência de 2 (4, 5, 6, 7, 8-9, 10-11, ..., 1024-1279, ...). O erro de um
+percentil fica abaixo de 25% do valor, o que basta para ver onde o tempo está indo,
+e 160 faixas cobrem de 1 µs a mais de 12 dias.
+
+registra() só faz incrementos atômicos, sem lock: pode ser chamado ao mesmo tempo por
+várias Threads (as do OkHttp, as dos Pools) sem que uma espere a outra.
+ */
+public class Histograma {
+
+    private static final int FAIXAS_POR_POTENCIA = 4;
+    private static final int QUANTIDADE_DE_FAIXAS = 160;
+
+    private final AtomicLongArray contagens = new AtomicLongArray(QUANTIDADE_DE_FAIXAS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong somaMicros = new AtomicLong();
+    private final AtomicLong maximoMicros = new AtomicLong();
+
+    public void registraNanos(long duracaoNanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(duracaoNanos));
+        contagens.incrementAndGet(faixaDe(micros));
+        total.incrementAndGet();
+        somaMicros.addAndGet(micros);
+        long maximoAtual;
+        do {
+            maximoAtual = maximoMicros.get();
+        } while (micros > maximoAtual && !maximoMicros.compareAndSet(maximoAtual, micros));
+    }
+
+    public long getContagem() {
+        return total.get();
+    }
+
+    public double getMediaEmMillis() {
+        long contagem = total.get();
+        if (contagem == 0) {
+            return 0;
+        }
+        return somaMicros.get() / (double) contagem / 1000;
+    }
+
+    public double getMaximoEmMillis() {
+        return maximoMicros.get() / 1000.0;
+    }
+
+    /*
+    O percentil é o limite superior da faixa em que ele cai, limitado ao máximo registrado.
+    Como as Threads continuam registrando durante a leitura, o resultado é aproximado.
+     */
+    public double percentilEmMillis(double percentil) {
+        long contagem = total.get();
+        if (contagem == 0) {
+            return 0;
+        }
+        long posicao = Math.max(1, (long) Math.ceil(contagem * percentil / 100));
+        long acumulado = 0;
+        for (int faixa = 0; faixa < QUANTIDADE_DE_FAIXAS; faixa++) {
+            acumulado += contagens.get(faixa);
+            if (acumulado >= posicao) {
+                return Math.min(limiteSuperiorDa(faixa), maximoMicros.get()) / 1000.0;
+            }
+        }
+        return getMaximoEmMillis();
+    }
+
+    public String resumo() {
+        return String.format(Locale.ROOT, "n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                getContagem(), percentilEmMillis(50), percentilEmMillis(95),
+                percentilEmMillis(99), getMaximoEmMillis());
+    }
+
+    @Override
+    public String toString() {
+        return resumo();
+    }
+
+    // Visíveis no pacote para o teste conferir as faixas sem passar pelos percentis
+    static int faixaDe(long micros) {
+        if (micros < FAIXAS_POR_POTENCIA) {
+            return (int) micros;
+        }
+        int bitMaisAlto = 63 - Long.numberOfLeadingZeros(micros);
+        int subfaixa = (int) (micros >>> (bitMaisAlto - 2)) & (FAIXAS_POR_POTENCIA - 1);
+        int faixa = (bitMaisAlto - 1) * FAIXAS_POR_POTENCIA + subfaixa;
+        return Math.min(faixa, QUANTIDADE_DE_FAIXAS - 1);
+    }
+
+    static long limiteSuperiorDa(int faixa) {
+        if (faixa < FAIXAS_POR_POTENCIA) {
+            return faixa;
+        }
+        if (faixa == QUANTIDADE_DE_FAIXAS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int bitMaisAlto = faixa / FAIXAS_POR_POTENCIA + 1;
+        int subfaixa = faixa % FAIXAS_POR_POTENCIA;
+        long inicio = (long) (FAIXAS_POR_POTENCIA + subfaixa) << (bitMaisAlto - 2);
+        return inicio + (1L << (bitMaisAlto - 2)) - 1;
+    }
+}
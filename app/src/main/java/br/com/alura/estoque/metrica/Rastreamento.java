@@ -0,0 +1,145 @@
+package br.com.alura.estoque.metrica;
+
+import android.util.Log;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Rastreamento das operações do Repository e do DAO, para saber quanto de uma atualização
+da lista é espera na fila dos Pools, consulta ou gravação no banco e entrega na UI Thread.
+
+Vem desligado. Com ele desligado, envolve() devolve o próprio DAO e a BaseAsyncTask só
+lê um volatile por tarefa, então não há custo que apareça. Deve ser ligado antes de o
+primeiro Repository ser criado (na EstoqueApplication), já que os DAOs são envolvidos
+quando os Repositories os pegam do banco.
+
+despeja() devolve o texto com as estatísticas de todas as operações, em ordem de nome.
+ */
+public final class Rastreamento {
+
+    private static final String TAG = "Rastreamento";
+
+    private static final ConcurrentHashMap<String, EstatisticasDaOperacao> operacoes =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Method, String> nomesDosMetodos = new ConcurrentHashMap<>();
+    private static volatile boolean ativo = false;
+
+    private Rastreamento() {
+    }
+
+    public static void ativa(boolean ligado) {
+        ativo = ligado;
+    }
+
+    public static boolean isAtivo() {
+        return ativo;
+    }
+
+    /*
+    Com o rastreamento ligado, devolve um Proxy do DAO que mede cada chamada, com o nome
+    "ProdutoDAO.salva(List)". As linhas são o tamanho da lista devolvida ou, nas gravações
+    sem retorno, da lista recebida; um int devolvido (o UPDATE) é a quantidade de linhas
+    alteradas e um objeto devolvido conta como uma linha.
+     */
+    public static <D> D envolve(Class<D> tipo, D dao) {
+        if (!ativo) {
+            return dao;
+        }
+        Object proxy = Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[]{tipo},
+                (instancia, metodo, argumentos) -> {
+                    if (metodo.getDeclaringClass() == Object.class) {
+                        return metodo.invoke(dao, argumentos);
+                    }
+                    long inicio = System.nanoTime();
+                    Object resultado;
+                    try {
+                        resultado = metodo.invoke(dao, argumentos);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    estatisticasDe(nomeDo(tipo, metodo))
+                            .registraExecucao(System.nanoTime() - inicio, linhasDe(metodo, resultado, argumentos));
+                    return resultado;
+                });
+        return tipo.cast(proxy);
+    }
+
+    public static EstatisticasDaOperacao estatisticasDe(String operacao) {
+        EstatisticasDaOperacao estatisticas = operacoes.get(operacao);
+        if (estatisticas == null) {
+            EstatisticasDaOperacao novas = new EstatisticasDaOperacao();
+            estatisticas = operacoes.putIfAbsent(operacao, novas);
+            if (estatisticas == null) {
+                estatisticas = novas;
+            }
+        }
+        return estatisticas;
+    }
+
+    public static String despeja() {
+        List<String> nomes = new ArrayList<>(operacoes.keySet());
+        Collections.sort(nomes);
+        StringBuilder texto = new StringBuilder("operações rastreadas: ").append(nomes.size());
+        for (String nome : nomes) {
+            texto.append('\n').append(nome).append(" - ").append(operacoes.get(nome));
+        }
+        return texto.toString();
+    }
+
+    // Para comparar duas atualizações da lista sem as medições anteriores
+    public static void zera() {
+        operacoes.clear();
+    }
+
+    public static void registraNoLog() {
+        for (String linha : despeja().split("\n")) {
+            Log.d(TAG, linha);
+        }
+    }
+
+    public static int linhasDe(Object resultado) {
+        if (resultado instanceof Collection) {
+            return ((Collection<?>) resultado).size();
+        }
+        if (resultado instanceof long[]) {
+            return ((long[]) resultado).length;
+        }
+        return resultado != null ? 1 : 0;
+    }
+
+    private static int linhasDe(Method metodo, Object resultado, Object[] argumentos) {
+        // Gravações sem retorno: a lista (ou a entidade) recebida
+        if (metodo.getReturnType() == void.class) {
+            if (argumentos != null && argumentos.length == 1 && argumentos[0] instanceof Collection) {
+                return ((Collection<?>) argumentos[0]).size();
+            }
+            return 1;
+        }
+        if (resultado instanceof Integer) {
+            return (Integer) resultado;
+        }
+        return linhasDe(resultado);
+    }
+
+    private static String nomeDo(Class<?> tipo, Method metodo) {
+        String nome = nomesDosMetodos.get(metodo);
+        if (nome == null) {
+            StringBuilder texto = new StringBuilder(tipo.getSimpleName())
+                    .append('.').append(metodo.getName()).append('(');
+            Class<?>[] parametros = metodo.getParameterTypes();
+            for (int i = 0; i < parametros.length; i++) {
+                texto.append(i > 0 ? ", " : "").append(parametros[i].getSimpleName());
+            }
+            nome = texto.append(')').toString();
+            nomesDosMetodos.put(metodo, nome);
+        }
+        return nome;
+    }
+}
@@ -0,0 +1,44 @@
+package br.com.alura.estoque.model;
+
+/*
+Faixa de ids que a lista tem em memória, usada para reconsultar apenas o que está
+na tela (ver ProdutosObservaveis). Nas pontas já alcançadas, o limite fica aberto
+(Long.MIN_VALUE ou Long.MAX_VALUE), para que produtos novos nelas também apareçam.
+
+A versão identifica o estado da lista quando a faixa foi tirada; se a lista mudar
+antes de o resultado chegar, o resultado já não corresponde a ela.
+ */
+public class IntervaloDeProdutos {
+
+    private final long primeiroId;
+    private final long ultimoId;
+    private final int limite;
+    private final int versao;
+
+    public IntervaloDeProdutos(long primeiroId, long ultimoId, int limite, int versao) {
+        this.primeiroId = primeiroId;
+        this.ultimoId = ultimoId;
+        this.limite = limite;
+        this.versao = versao;
+    }
+
+    public long getPrimeiroId() {
+        return primeiroId;
+    }
+
+    public long getUltimoId() {
+        return ultimoId;
+    }
+
+    public int getLimite() {
+        return limite;
+    }
+
+    public int getVersao() {
+        return versao;
+    }
+
+    public boolean isAbertoNoFim() {
+        return ultimoId == Long.MAX_VALUE;
+    }
+}
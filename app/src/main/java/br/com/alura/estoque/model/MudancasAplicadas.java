@@ -0,0 +1,58 @@
+package br.com.alura.estoque.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+O que uma etapa da sincronização de fato mudou no banco: os produtos inseridos,
+os atualizados (com o conteúdo novo) e os ids removidos. Produtos que vieram da API
+iguais ao que já estava gravado não aparecem aqui.
+
+É isso que a tela recebe para mesclar com a lista que já está em memória, sem
+precisar reler a tabela.
+ */
+public class MudancasAplicadas {
+
+    private final List<Produto> inseridos;
+    private final List<Produto> atualizados;
+    private final List<Long> removidos;
+
+    public MudancasAplicadas(List<Produto> inseridos, List<Produto> atualizados, List<Long> removidos) {
+        this.inseridos = inseridos;
+        this.atualizados = atualizados;
+        this.removidos = removidos;
+    }
+
+    public MudancasAplicadas(List<Produto> inseridos, List<Produto> atualizados) {
+        this(inseridos, atualizados, Collections.emptyList());
+    }
+
+    public List<Produto> getInseridos() {
+        return inseridos;
+    }
+
+    public List<Produto> getAtualizados() {
+        return atualizados;
+    }
+
+    public List<Long> getRemovidos() {
+        return removidos;
+    }
+
+    /*
+    Inseridos e atualizados juntos, em ordem de id. A tela mescla essa lista com a
+    janela, que também está ordenada por id (ver ListaProdutosAdapter.mescla()).
+     */
+    public List<Produto> getAlterados() {
+        List<Produto> alterados = new ArrayList<>(inseridos.size() + atualizados.size());
+        alterados.addAll(inseridos);
+        alterados.addAll(atualizados);
+        Collections.sort(alterados, (um, outro) -> Long.compare(um.getId(), outro.getId()));
+        return alterados;
+    }
+
+    public boolean isVazia() {
+        return inseridos.isEmpty() && atualizados.isEmpty() && removidos.isEmpty();
+    }
+}
@@ -0,0 +1,41 @@
+package br.com.alura.estoque.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+Resposta da API com tudo o que mudou desde uma versão: os produtos criados ou
+alterados e os ids dos produtos removidos (tombstones). A versão devolvida é
+a nova marca d'água, a ser informada na próxima sincronização.
+ */
+public class MudancasProdutos {
+
+    private final List<Produto> alterados;
+    private final List<Long> removidos;
+    private final long versao;
+
+    public MudancasProdutos(List<Produto> alterados, List<Long> removidos, long versao) {
+        this.alterados = alterados;
+        this.removidos = removidos;
+        this.versao = versao;
+    }
+
+    // O Gson deixa as listas nulas quando a API omite o campo
+    public List<Produto> getAlterados() {
+        if (alterados == null) {
+            return Collections.emptyList();
+        }
+        return alterados;
+    }
+
+    public List<Long> getRemovidos() {
+        if (removidos == null) {
+            return Collections.emptyList();
+        }
+        return removidos;
+    }
+
+    public long getVersao() {
+        return versao;
+    }
+}
@@ -0,0 +1,35 @@
+package br.com.alura.estoque.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/*
+Uma página do catálogo: no máximo "limite" produtos a partir do cursor, em ordem de id,
+junto com a versão do catálogo no servidor no momento em que a página foi montada.
+
+Essa versão, e não a maior versão dos produtos recebidos, é a que pode servir de marca
+d'água: um produto de uma página já recebida pode ser alterado enquanto as seguintes
+são buscadas, e a nova versão dele pode ficar abaixo da maior já vista.
+ */
+public class PaginaDeProdutos {
+
+    private final List<Produto> produtos;
+    private final long versao;
+
+    public PaginaDeProdutos(List<Produto> produtos, long versao) {
+        this.produtos = produtos;
+        this.versao = versao;
+    }
+
+    // O Gson deixa a lista nula quando a API omite o campo
+    public List<Produto> getProdutos() {
+        if (produtos == null) {
+            return Collections.emptyList();
+        }
+        return produtos;
+    }
+
+    public long getVersao() {
+        return versao;
+    }
+}
@@ -0,0 +1,91 @@
+package br.com.alura.estoque.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/*
+Uma alteração feita localmente que ainda precisa ser enviada para a API (a caixa de saída).
+
+Existe no máximo uma pendência por produto: uma nova alteração é combinada com a que já
+está na fila (ver Operacao.combinaCom()). O conteúdo do produto não é copiado para cá;
+no envio, ele é lido da tabela Produto, que já tem a versão mais recente.
+
+A revisão muda a cada combinação. Assim, quando a resposta da API chega, dá para saber
+se o produto foi alterado de novo enquanto a requisição estava em andamento.
+A resposta é ligada à pendência pelo id dela, e não pelo produtoId: ids temporários
+podem se repetir entre produtos novos.
+ */
+@Entity(indices = {@Index(value = "produtoId", unique = true)})
+public class Pendencia {
+
+    @PrimaryKey(autoGenerate = true)
+    private final long id;
+    private final long produtoId;
+    @NonNull
+    private final Operacao operacao;
+    private final int revisao;
+    private final long criadaEm;
+
+    public Pendencia(long id, long produtoId, @NonNull Operacao operacao, int revisao, long criadaEm) {
+        this.id = id;
+        this.produtoId = produtoId;
+        this.operacao = operacao;
+        this.revisao = revisao;
+        this.criadaEm = criadaEm;
+    }
+
+    @Ignore
+    public Pendencia(long produtoId, @NonNull Operacao operacao, long criadaEm) {
+        this(0, produtoId, operacao, 0, criadaEm);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getProdutoId() {
+        return produtoId;
+    }
+
+    @NonNull
+    public Operacao getOperacao() {
+        return operacao;
+    }
+
+    public int getRevisao() {
+        return revisao;
+    }
+
+    public long getCriadaEm() {
+        return criadaEm;
+    }
+
+    // Mantém a posição na fila (id) e a data de criação, e avança a revisão
+    public Pendencia comOperacao(long produtoId, @NonNull Operacao operacao) {
+        return new Pendencia(id, produtoId, operacao, revisao + 1, criadaEm);
+    }
+
+    public enum Operacao {
+        SALVA,
+        EDITA,
+        REMOVE;
+
+        /*
+        Combina a operação que já está na fila com uma nova para o mesmo produto.
+        Devolve null quando as duas se anulam: um produto criado e removido antes de
+        chegar à API não precisa ser enviado.
+         */
+        public Operacao combinaCom(Operacao nova) {
+            if (this == SALVA) {
+                return nova == REMOVE ? null : SALVA;
+            }
+            if (this == EDITA) {
+                return nova == REMOVE ? REMOVE : EDITA;
+            }
+            return REMOVE;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package br.com.alura.estoque.model;
 
 import java.math.BigDecimal;
 
+import androidx.annotation.NonNull;
 import androidx.room.Entity;
+import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 
 @Entity
@@ -11,14 +13,32 @@ public class Produto {
     @PrimaryKey(autoGenerate = true)
     private final long id;
     private final String nome;
+    // Gravado em centavos, numa coluna INTEGER NOT NULL (ver BigDecimalConverter)
+    @NonNull
     private final BigDecimal preco;
     private final int quantidade;
 
-    public Produto(long id, String nome, BigDecimal preco, int quantidade) {
+    /*
+    Versão da última alteração do produto, definida pela API. É com ela que a
+    sincronização sabe a partir de onde pedir apenas o que mudou.
+     */
+    private final long versao;
+
+    public Produto(long id, String nome, BigDecimal preco, int quantidade, long versao) {
         this.id = id;
         this.nome = nome;
         this.preco = preco;
         this.quantidade = quantidade;
+        this.versao = versao;
+    }
+
+    /*
+    Produtos criados ou editados no formulário ainda não têm versão; ela é
+    atribuída pela API e volta na resposta.
+     */
+    @Ignore
+    public Produto(long id, String nome, BigDecimal preco, int quantidade) {
+        this(id, nome, preco, quantidade, 0);
     }
 
     public long getId() {
@@ -37,4 +57,8 @@ public class Produto {
         return quantidade;
     }
 
+    public long getVersao() {
+        return versao;
+    }
+
 }
@@ -0,0 +1,30 @@
+package br.com.alura.estoque.model;
+
+import java.math.BigDecimal;
+
+import androidx.room.Entity;
+
+/*
+Última versão confirmada pela API de um produto que tem alterações locais na caixa de saída.
+É guardada na primeira edição ou remoção feita no app e descartada quando a alteração é
+confirmada; se a API recusar a alteração, é ela que volta para a tabela Produto.
+
+Tem as mesmas colunas de Produto, numa tabela separada, para que os triggers do índice
+de busca e do resumo do estoque continuem vendo apenas o catálogo.
+ */
+@Entity
+public class ProdutoConfirmado extends Produto {
+
+    public ProdutoConfirmado(long id, String nome, BigDecimal preco, int quantidade, long versao) {
+        super(id, nome, preco, quantidade, versao);
+    }
+
+    public static ProdutoConfirmado de(Produto produto) {
+        return new ProdutoConfirmado(produto.getId(), produto.getNome(), produto.getPreco(),
+                produto.getQuantidade(), produto.getVersao());
+    }
+
+    public Produto comoProduto() {
+        return new Produto(getId(), getNome(), getPreco(), getQuantidade(), getVersao());
+    }
+}
@@ -0,0 +1,45 @@
+package br.com.alura.estoque.model;
+
+import java.net.HttpURLConnection;
+
+/*
+Resultado de um item de uma requisição em lote. A API responde com uma lista na mesma
+ordem dos itens enviados, e cada item tem o seu próprio status HTTP: um produto inválido
+não faz o lote inteiro falhar.
+ */
+public class ResultadoDoItem {
+
+    private final int status;
+    private final Produto produto;
+    private final String erro;
+
+    public ResultadoDoItem(int status, Produto produto, String erro) {
+        this.status = status;
+        this.produto = produto;
+        this.erro = erro;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    // Nulo nas remoções e nos itens com erro
+    public Produto getProduto() {
+        return produto;
+    }
+
+    public String getErro() {
+        return erro;
+    }
+
+    public boolean isSucesso() {
+        return status >= 200 && status < 300;
+    }
+
+    // A API não vai aceitar o item, mesmo que ele seja enviado de novo
+    public boolean isRejeitado() {
+        // Tempo esgotado e excesso de requisições passam sozinhos: são falhas, não recusas
+        return status >= 400 && status < 500
+                && status != HttpURLConnection.HTTP_CLIENT_TIMEOUT && status != 429;
+    }
+}
@@ -0,0 +1,60 @@
+package br.com.alura.estoque.model;
+
+import java.math.BigDecimal;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/*
+Totais do estoque numa única linha (id = 1), mantida pelos triggers da tabela Produto
+(ver TriggersDoResumo). Ler os totais é ler essa linha, qualquer que seja o tamanho
+do catálogo, em vez de carregar todos os produtos e somar em Java.
+ */
+@Entity
+public class ResumoDoEstoque {
+
+    public static final int ID = 1;
+
+    // Produtos com quantidade abaixo deste valor contam como estoque baixo
+    public static final int LIMITE_ESTOQUE_BAIXO = 5;
+
+    @PrimaryKey
+    private final int id;
+    private final long produtos;
+    private final long unidades;
+    @NonNull
+    private final BigDecimal valorTotal;
+    private final long produtosComEstoqueBaixo;
+
+    public ResumoDoEstoque(int id, long produtos, long unidades,
+                           @NonNull BigDecimal valorTotal, long produtosComEstoqueBaixo) {
+        this.id = id;
+        this.produtos = produtos;
+        this.unidades = unidades;
+        this.valorTotal = valorTotal;
+        this.produtosComEstoqueBaixo = produtosComEstoqueBaixo;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getProdutos() {
+        return produtos;
+    }
+
+    public long getUnidades() {
+        return unidades;
+    }
+
+    // Soma de preco * quantidade de todos os produtos
+    @NonNull
+    public BigDecimal getValorTotal() {
+        return valorTotal;
+    }
+
+    public long getProdutosComEstoqueBaixo() {
+        return produtosComEstoqueBaixo;
+    }
+}
@@ -0,0 +1,47 @@
+package br.com.alura.estoque.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/*
+Guarda, para cada recurso sincronizado com a API, a versão até a qual
+os dados locais já estão atualizados (a "marca d'água" da sincronização).
+ */
+@Entity
+public class Sincronizacao {
+
+    public static final String PRODUTO = "produto";
+
+    /*
+    Carga completa interrompida: aqui a "versão" é o id do último produto gravado, a partir
+    do qual a SincronizacaoPaginada continua. A linha é removida quando a carga termina.
+     */
+    public static final String PRODUTO_CARGA_COMPLETA = "produto.cargaCompleta";
+
+    /*
+    Versão do catálogo no servidor quando a carga completa interrompida começou. Ao terminar,
+    é ela que vira a marca d'água (PRODUTO): o que mudou depois desse momento é pedido na
+    sincronização seguinte. Removida junto com PRODUTO_CARGA_COMPLETA.
+     */
+    public static final String PRODUTO_VERSAO_DA_CARGA = "produto.versaoDaCarga";
+
+    @PrimaryKey
+    @NonNull
+    private final String recurso;
+    private final long versao;
+
+    public Sincronizacao(@NonNull String recurso, long versao) {
+        this.recurso = recurso;
+        this.versao = versao;
+    }
+
+    @NonNull
+    public String getRecurso() {
+        return recurso;
+    }
+
+    public long getVersao() {
+        return versao;
+    }
+}
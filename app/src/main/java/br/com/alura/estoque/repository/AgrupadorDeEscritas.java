@@ -0,0 +1,176 @@
+package br.com.alura.estoque.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.ResultadoDoItem;
+import br.com.alura.estoque.retrofit.TempoLimite;
+import br.com.alura.estoque.retrofit.resiliencia.PoliticaDeRetentativa;
+import br.com.alura.estoque.retrofit.service.ProdutoService;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.internal.EverythingIsNonNull;
+
+/*
+Junta as escritas pedidas numa janela curta de tempo em uma única requisição em lote
+(ver ProdutoService.salvaEmLote()), em vez de uma requisição por produto.
+
+Cada chamada continua recebendo o seu próprio DadosCarregadosCallback: quando a resposta
+do lote chega, o resultado de cada item é entregue a quem o pediu. Se a requisição inteira
+falhar (sem conexão ou erro transitório), todos os itens recebem a falha; se ela for
+recusada, os itens são reenviados um a um (ver enviaUmAUm()).
+
+Deve ser usado apenas na UI Thread, assim como as respostas do Retrofit.
+ */
+class AgrupadorDeEscritas {
+
+    private static final long JANELA_MILLIS = 50;
+    static final int MAXIMO_POR_REQUISICAO = 100;
+
+    private final Handler mainThread = new Handler(Looper.getMainLooper());
+    private final Grupo<Produto, Produto> salvamentos;
+    private final Grupo<Produto, Produto> edicoes;
+    private final Grupo<Long, Void> remocoes;
+
+    AgrupadorDeEscritas(ProdutoService service) {
+        salvamentos = new Grupo<>(service::salvaEmLote, ResultadoDoItem::getProduto);
+        edicoes = new Grupo<>(service::editaEmLote, ResultadoDoItem::getProduto);
+        remocoes = new Grupo<>(service::removeEmLote, resultado -> null);
+    }
+
+    void salva(Produto produto, ProdutoRepository.DadosCarregadosCallback<Produto> callback) {
+        salvamentos.adiciona(produto, callback);
+    }
+
+    void edita(Produto produto, ProdutoRepository.DadosCarregadosCallback<Produto> callback) {
+        edicoes.adiciona(produto, callback);
+    }
+
+    void remove(long id, ProdutoRepository.DadosCarregadosCallback<Void> callback) {
+        remocoes.adiciona(id, callback);
+    }
+
+    private interface RequisicaoEmLote<E> {
+        Call<List<ResultadoDoItem>> cria(List<E> itens);
+    }
+
+    private interface ExtraiResultado<R> {
+        R de(ResultadoDoItem resultado);
+    }
+
+    private class Grupo<E, R> {
+
+        private final RequisicaoEmLote<E> requisicao;
+        private final ExtraiResultado<R> extrator;
+        private final Runnable envio = this::envia;
+        private List<E> itens = new ArrayList<>();
+        private List<ProdutoRepository.DadosCarregadosCallback<R>> callbacks = new ArrayList<>();
+
+        Grupo(RequisicaoEmLote<E> requisicao, ExtraiResultado<R> extrator) {
+            this.requisicao = requisicao;
+            this.extrator = extrator;
+        }
+
+        void adiciona(E item, ProdutoRepository.DadosCarregadosCallback<R> callback) {
+            itens.add(item);
+            callbacks.add(callback);
+            if (itens.size() >= MAXIMO_POR_REQUISICAO) {
+                mainThread.removeCallbacks(envio);
+                envia();
+            } else if (itens.size() == 1) {
+                // O primeiro item abre a janela; os que chegarem até ela fechar vão juntos
+                mainThread.postDelayed(envio, JANELA_MILLIS);
+            }
+        }
+
+        private void envia() {
+            if (itens.isEmpty()) {
+                return;
+            }
+            List<E> enviados = itens;
+            List<ProdutoRepository.DadosCarregadosCallback<R>> aguardando = callbacks;
+            itens = new ArrayList<>();
+            callbacks = new ArrayList<>();
+            envia(enviados, aguardando);
+        }
+
+        private void envia(List<E> enviados, List<ProdutoRepository.DadosCarregadosCallback<R>> aguardando) {
+            TempoLimite.ESCRITA.aplicaEm(requisicao.cria(enviados)).enqueue(new Callback<List<ResultadoDoItem>>() {
+                @Override
+                @EverythingIsNonNull
+                public void onResponse(Call<List<ResultadoDoItem>> call,
+                                       Response<List<ResultadoDoItem>> response) {
+                    List<ResultadoDoItem> resultados = response.body();
+                    if (response.isSuccessful() && resultados != null
+                            && resultados.size() == aguardando.size()) {
+                        for (int i = 0; i < aguardando.size(); i++) {
+                            entrega(resultados.get(i), aguardando.get(i));
+                        }
+                        return;
+                    }
+                    boolean recusado = isRecusa(response.code());
+                    if ((recusado || response.isSuccessful()) && enviados.size() > 1) {
+                        enviaUmAUm(enviados, aguardando);
+                    } else if (recusado) {
+                        aguardando.get(0).quandoRejeitado("Recusado pela API (HTTP " + response.code() + ")");
+                    } else {
+                        falhaTodos(aguardando, "Resposta não esperada do servidor");
+                    }
+                }
+
+                @Override
+                @EverythingIsNonNull
+                public void onFailure(Call<List<ResultadoDoItem>> call, Throwable t) {
+                    falhaTodos(aguardando, "Erro na comunicação. Mensagem: " + t.getMessage());
+                }
+            });
+        }
+
+        /*
+        Uma recusa do lote inteiro (ou uma resposta que não casa com os itens enviados)
+        não diz qual item é o problema. Mandando cada um sozinho, só o item inválido é
+        recusado, e os outros seguem; sem isso, um único item ruim faria o lote inteiro
+        falhar em toda nova tentativa.
+         */
+        private void enviaUmAUm(List<E> enviados, List<ProdutoRepository.DadosCarregadosCallback<R>> aguardando) {
+            for (int i = 0; i < enviados.size(); i++) {
+                envia(Collections.singletonList(enviados.get(i)),
+                        Collections.singletonList(aguardando.get(i)));
+            }
+        }
+
+        // Um 4xx que não passa sozinho: repetir a mesma requisição dá a mesma resposta
+        private boolean isRecusa(int codigo) {
+            return codigo >= 400 && codigo < 500 && !PoliticaDeRetentativa.isTransitoria(codigo);
+        }
+
+        private void entrega(ResultadoDoItem resultado, ProdutoRepository.DadosCarregadosCallback<R> callback) {
+            if (resultado.isSucesso()) {
+                callback.quandoSucesso(extrator.de(resultado));
+            } else if (resultado.isRejeitado()) {
+                callback.quandoRejeitado(mensagemDe(resultado));
+            } else {
+                callback.quandoFalha(mensagemDe(resultado));
+            }
+        }
+
+        private String mensagemDe(ResultadoDoItem resultado) {
+            if (resultado.getErro() != null) {
+                return resultado.getErro();
+            }
+            return "Resposta não esperada do servidor";
+        }
+
+        private void falhaTodos(List<ProdutoRepository.DadosCarregadosCallback<R>> aguardando, String erro) {
+            for (ProdutoRepository.DadosCarregadosCallback<R> callback : aguardando) {
+                callback.quandoFalha(erro);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package br.com.alura.estoque.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Collections;
+import java.util.List;
+
+import androidx.sqlite.db.SupportSQLiteQuery;
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.asynctask.Pool;
+import br.com.alura.estoque.asynctask.Prioridade;
+import br.com.alura.estoque.asynctask.Tarefa;
+import br.com.alura.estoque.database.IndiceDeBusca;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.model.Produto;
+
+/*
+Busca por nome enquanto o usuário digita.
+
+Cada letra digitada chega aqui, mas só o texto que ficou parado por ATRASO_MILLIS vira
+uma consulta. Um texto novo cancela o anterior: se a consulta ainda não saiu da fila
+do Pool ela nem é executada, e se já estava rodando o resultado é descartado,
+para que uma resposta antiga nunca substitua a da busca atual.
+
+busca() devolve uma Tarefa que cancela só aquela busca; se outra já a substituiu,
+cancelá-la não tem efeito.
+
+Todos os métodos devem ser chamados na UI Thread.
+ */
+class BuscaDeProdutos {
+
+    private static final Handler MAIN_THREAD = new Handler(Looper.getMainLooper());
+    private static final long ATRASO_MILLIS = 250;
+
+    private final ProdutoDAO dao;
+    private final int limite;
+    private Runnable agendada;
+    private Tarefa emAndamento;
+    private int geracao = 0;
+
+    BuscaDeProdutos(ProdutoDAO dao, int limite) {
+        this.dao = dao;
+        this.limite = limite;
+    }
+
+    Tarefa busca(String texto, ProdutoRepository.DadosCarregadosCallback<List<Produto>> callback) {
+        cancela();
+        SupportSQLiteQuery consulta = IndiceDeBusca.buscaPorPrefixo(texto, limite);
+        if (consulta == null) {
+            callback.quandoSucesso(Collections.emptyList());
+            return Tarefa.CONCLUIDA;
+        }
+        int esta = geracao;
+        agendada = () -> {
+            agendada = null;
+            emAndamento = new BaseAsyncTask<>(() -> dao.buscaPorConsulta(consulta),
+                    produtos -> {
+                        if (esta == geracao) {
+                            emAndamento = null;
+                            callback.quandoSucesso(produtos);
+                        }
+                    }).rastreada("BuscaDeProdutos.busca").executa(Pool.LEITURA, Prioridade.ALTA);
+        };
+        MAIN_THREAD.postDelayed(agendada, ATRASO_MILLIS);
+        return new Tarefa() {
+            @Override
+            public void cancela() {
+                if (esta == geracao) {
+                    BuscaDeProdutos.this.cancela();
+                }
+            }
+
+            @Override
+            public boolean isCancelada() {
+                return esta != geracao;
+            }
+
+            @Override
+            public boolean isEncerrada() {
+                return isCancelada() || (agendada == null && emAndamento == null);
+            }
+        };
+    }
+
+    void cancela() {
+        geracao++;
+        if (agendada != null) {
+            MAIN_THREAD.removeCallbacks(agendada);
+            agendada = null;
+        }
+        if (emAndamento != null) {
+            emAndamento.cancela();
+            emAndamento = null;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package br.com.alura.estoque.repository;
+
+import android.util.LruCache;
+
+import java.util.List;
+
+import br.com.alura.estoque.model.MudancasAplicadas;
+import br.com.alura.estoque.model.Produto;
+
+/*
+Produtos gravados recentemente, pelo id, para que buscar um produto que acabou de ser
+salvo ou editado não precise ir ao SQLite.
+
+- Escrita: salvar, editar e remover atualizam o cache junto com o banco (write-through);
+- Leitura: o que é lido do banco não entra no cache. Uma leitura pode ver o banco de antes
+  de uma gravação e, guardada depois dela, deixaria a versão antiga no cache. Pelo mesmo
+  motivo, quem precisa do estado gravado (a caixa de saída) lê sempre do banco;
+- Sincronização: os produtos que ela altera ou remove são retirados do cache;
+- Memória: o tamanho é limitado por quantidade de produtos ou por bytes estimados, os
+  menos usados recentemente saem primeiro (LRU), e a Application reduz o cache quando o
+  sistema pede memória (ver reduz()).
+
+O LruCache do Android já é thread-safe e conta acertos, falhas e descartes.
+ */
+public class CacheDeProdutos {
+
+    private static final int TAMANHO_PADRAO_EM_BYTES = 1024 * 1024;
+
+    /*
+    Estimativa do que um Produto ocupa no heap, sem o nome: o objeto e os seus campos,
+    o BigDecimal do preço e o objeto String com o seu array. Cada caractere do nome
+    soma mais 2 bytes.
+     */
+    private static final int BYTES_POR_PRODUTO = 48 + 40 + 40;
+
+    private static volatile CacheDeProdutos instancia;
+
+    private final LruCache<Long, Produto> produtos;
+
+    private CacheDeProdutos(LruCache<Long, Produto> produtos) {
+        this.produtos = produtos;
+    }
+
+    public static CacheDeProdutos getInstance() {
+        CacheDeProdutos cache = instancia;
+        if (cache == null) {
+            synchronized (CacheDeProdutos.class) {
+                cache = instancia;
+                if (cache == null) {
+                    cache = porBytes(TAMANHO_PADRAO_EM_BYTES);
+                    instancia = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    public static CacheDeProdutos porQuantidade(int maximoDeProdutos) {
+        return new CacheDeProdutos(new LruCache<>(maximoDeProdutos));
+    }
+
+    public static CacheDeProdutos porBytes(int maximoDeBytes) {
+        return new CacheDeProdutos(new LruCache<Long, Produto>(maximoDeBytes) {
+            @Override
+            protected int sizeOf(Long id, Produto produto) {
+                String nome = produto.getNome();
+                return BYTES_POR_PRODUTO + (nome == null ? 0 : nome.length() * 2);
+            }
+        });
+    }
+
+    // Devolve null quando o produto não está no cache
+    public Produto busca(long id) {
+        return produtos.get(id);
+    }
+
+    public void guarda(Produto produto) {
+        produtos.put(produto.getId(), produto);
+    }
+
+    public void guarda(List<Produto> lista) {
+        for (Produto produto : lista) {
+            guarda(produto);
+        }
+    }
+
+    public void remove(long id) {
+        produtos.remove(id);
+    }
+
+    public void invalida(MudancasAplicadas mudancas) {
+        for (Produto produto : mudancas.getAlterados()) {
+            produtos.remove(produto.getId());
+        }
+        for (Long id : mudancas.getRemovidos()) {
+            produtos.remove(id);
+        }
+    }
+
+    /*
+    Chamado pela Application em onTrimMemory(). Com o app em segundo plano ou com pouca
+    memória, o cache é esvaziado; nos avisos mais leves, cai pela metade.
+     */
+    public void reduz(boolean esvazia) {
+        if (esvazia) {
+            produtos.evictAll();
+        } else {
+            produtos.trimToSize(produtos.maxSize() / 2);
+        }
+    }
+
+    public int getAcertos() {
+        return produtos.hitCount();
+    }
+
+    public int getFalhas() {
+        return produtos.missCount();
+    }
+
+    public int getDescartes() {
+        return produtos.evictionCount();
+    }
+
+    public int getTamanho() {
+        return produtos.size();
+    }
+}
@@ -0,0 +1,209 @@
+package br.com.alura.estoque.repository;
+
+import android.content.Context;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.asynctask.Pool;
+import br.com.alura.estoque.database.EstoqueDatabase;
+import br.com.alura.estoque.database.dao.PendenciaDAO;
+import br.com.alura.estoque.database.dao.ProdutoConfirmadoDAO;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.metrica.Rastreamento;
+import br.com.alura.estoque.model.MudancasAplicadas;
+import br.com.alura.estoque.model.Pendencia;
+import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.ProdutoConfirmado;
+import br.com.alura.estoque.retrofit.EstoqueRetrofit;
+
+/*
+Antes, salvar, editar ou remover um produto esperava a resposta da API para só então
+tocar no banco: cada alteração custava uma ida e volta na rede e, sem conexão, falhava.
+
+Agora a alteração é gravada no banco na hora, junto com uma Pendencia, na mesma
+transação, e a tela já recebe o resultado. O envio para a API acontece depois, em lotes
+(ver EnvioDePendencias), e continua de onde parou mesmo se o app for fechado.
+
+Se a API recusar uma alteração, ela é desfeita: o produto volta à última versão
+confirmada (guardada em ProdutoConfirmado na primeira alteração local) ou, se era um
+produto novo, é removido.
+
+Os métodos registra*() acessam o banco e devem ser chamados fora da UI Thread.
+Há uma única instância por processo, para que só exista um envio em andamento.
+ */
+public class CaixaDeSaida {
+
+    private static volatile CaixaDeSaida instancia;
+    private static final long IDS_NAO_CARREGADOS = Long.MIN_VALUE;
+
+    private final EstoqueDatabase db;
+    private final ProdutoDAO dao;
+    private final PendenciaDAO pendenciaDAO;
+    private final ProdutoConfirmadoDAO confirmadoDAO;
+    private final CacheDeProdutos cache;
+    private final MetricasCaixaDeSaida metricas = new MetricasCaixaDeSaida();
+    private final EnvioDePendencias envio;
+
+    /*
+    Menor id temporário já usado. Os ids são reservados em memória para que um produto
+    novo possa aparecer na tela antes de ser gravado; só o ponto de partida vem do banco,
+    lido uma vez em background (ver carregaIdsTemporarios()).
+     */
+    private final AtomicLong menorIdTemporario = new AtomicLong(IDS_NAO_CARREGADOS);
+
+    private CaixaDeSaida(EstoqueDatabase db, EnvioDePendencias.Dependencias dependencias) {
+        this.db = db;
+        this.dao = Rastreamento.envolve(ProdutoDAO.class, db.getProdutoDAO());
+        this.pendenciaDAO = db.getPendenciaDAO();
+        this.confirmadoDAO = db.getProdutoConfirmadoDAO();
+        this.cache = dependencias.getCache();
+        this.envio = new EnvioDePendencias(dependencias, this, metricas);
+    }
+
+    public static CaixaDeSaida getInstance(Context context) {
+        CaixaDeSaida caixa = instancia;
+        if (caixa == null) {
+            synchronized (CaixaDeSaida.class) {
+                caixa = instancia;
+                if (caixa == null) {
+                    EstoqueDatabase db = EstoqueDatabase.getInstance(context);
+                    caixa = new CaixaDeSaida(db, new EnvioDePendencias.Dependencias(db,
+                            EstoqueRetrofit.getInstance().getProdutoService(),
+                            CacheDeProdutos.getInstance()));
+                    instancia = caixa;
+                }
+            }
+        }
+        return caixa;
+    }
+
+    /*
+    O produto novo recebe um id negativo temporário, trocado pelo id da API quando
+    o envio for confirmado. Pode ser chamado em qualquer Thread; devolve null enquanto
+    o ponto de partida dos ids ainda não foi lido do banco.
+     */
+    public Produto reservaIdTemporario(Produto produto) {
+        long menor;
+        do {
+            menor = menorIdTemporario.get();
+            if (menor == IDS_NAO_CARREGADOS) {
+                return null;
+            }
+        } while (!menorIdTemporario.compareAndSet(menor, menor - 1));
+        return new Produto(menor - 1, produto.getNome(), produto.getPreco(), produto.getQuantidade());
+    }
+
+    private void carregaIdsTemporarios() {
+        menorIdTemporario.compareAndSet(IDS_NAO_CARREGADOS, Math.min(dao.buscaMenorId(), 0));
+    }
+
+    /*
+    Aceita o produto já com o id reservado por reservaIdTemporario() ou, se ele ainda
+    não tem id, reserva um aqui.
+     */
+    public Produto registraSalva(Produto produto) {
+        Produto produtoLocal = produto;
+        if (produtoLocal.getId() >= 0) {
+            carregaIdsTemporarios();
+            produtoLocal = reservaIdTemporario(produto);
+        }
+        Produto salvo = produtoLocal;
+        db.runInTransaction(() -> {
+            dao.salva(salvo);
+            enfileira(salvo.getId(), Pendencia.Operacao.SALVA);
+        });
+        cache.guarda(salvo);
+        return salvo;
+    }
+
+    public Produto registraEdicao(Produto produto) {
+        db.runInTransaction(() -> {
+            guardaVersaoConfirmada(produto.getId());
+            dao.atualiza(produto);
+            enfileira(produto.getId(), Pendencia.Operacao.EDITA);
+        });
+        cache.guarda(produto);
+        return produto;
+    }
+
+    public void registraRemocao(Produto produto) {
+        db.runInTransaction(() -> {
+            guardaVersaoConfirmada(produto.getId());
+            dao.remove(produto);
+            enfileira(produto.getId(), Pendencia.Operacao.REMOVE);
+        });
+        cache.remove(produto.getId());
+    }
+
+    /*
+    Produtos com id temporário ainda não existem na API, então não há o que guardar:
+    desfazer a criação é remover o produto.
+     */
+    private void guardaVersaoConfirmada(long produtoId) {
+        if (produtoId < 0) {
+            return;
+        }
+        Produto atual = dao.buscaProduto(produtoId);
+        if (atual != null) {
+            confirmadoDAO.guardaSeAusente(ProdutoConfirmado.de(atual));
+        }
+    }
+
+    /*
+    Deve ser chamado dentro de uma transação. Se o produto já tem uma pendência,
+    a nova operação é combinada com ela em vez de entrar na fila de novo.
+     */
+    void enfileira(long produtoId, Pendencia.Operacao operacao) {
+        Pendencia existente = pendenciaDAO.buscaPorProduto(produtoId);
+        if (existente == null) {
+            pendenciaDAO.insere(new Pendencia(produtoId, operacao, System.currentTimeMillis()));
+        } else {
+            Pendencia.Operacao combinada = existente.getOperacao().combinaCom(operacao);
+            if (combinada == null) {
+                pendenciaDAO.remove(existente);
+            } else {
+                pendenciaDAO.atualiza(existente.comOperacao(produtoId, combinada));
+            }
+        }
+        metricas.registraProfundidade(pendenciaDAO.conta());
+    }
+
+    // Deve ser chamado na UI Thread
+    public void envia() {
+        if (menorIdTemporario.get() == IDS_NAO_CARREGADOS) {
+            new BaseAsyncTask<>(() -> {
+                carregaIdsTemporarios();
+                return null;
+            }, carregados -> {
+            }).executa(Pool.LEITURA);
+        }
+        envio.envia();
+    }
+
+    /*
+    Quando a API confirma um produto criado sem conexão, o id temporário é trocado pelo
+    definitivo. Quem mostra os produtos é avisado por aqui, com o id antigo nos removidos
+    e o produto com o id novo nos inseridos.
+     */
+    public void setMudancasListener(MudancasListener listener) {
+        envio.setMudancasListener(listener);
+    }
+
+    public void removeMudancasListener() {
+        envio.setMudancasListener(mudancas -> {
+        });
+    }
+
+    public MetricasCaixaDeSaida getMetricas() {
+        return metricas;
+    }
+
+    public interface MudancasListener {
+        void quandoAplicadas(MudancasAplicadas mudancas);
+
+        // As alterações recusadas já foram desfeitas no banco quando este método é chamado
+        default void quandoRevertidas(int quantidade) {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package br.com.alura.estoque.repository;
+
+import br.com.alura.estoque.asynctask.Tarefa;
+import br.com.alura.estoque.model.MudancasAplicadas;
+import retrofit2.Call;
+
+/*
+Uma execução da sincronização com a API. Guarda a requisição e a tarefa em andamento
+para que a carga possa ser cancelada no meio, quando uma mais nova a substitui
+(ver SincronizacaoCompartilhada).
+
+Depois de cancelada, nada mais é entregue: nem mudanças, nem falhas (o cancelamento da
+requisição chega ao Retrofit como falha), nem o aviso de término.
+entrega(), falha() e termina() são chamados na UI Thread.
+ */
+class Carga implements Tarefa {
+
+    private final ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> callback;
+    private final Runnable aoTerminar;
+    private boolean cancelada = false;
+    private Call<?> requisicao;
+    private Tarefa tarefa;
+
+    Carga(ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> callback, Runnable aoTerminar) {
+        this.callback = callback;
+        this.aoTerminar = aoTerminar;
+    }
+
+    // Chamado também em background, pela IngestaoEmFluxo
+    synchronized <T> Call<T> acompanha(Call<T> requisicao) {
+        this.requisicao = requisicao;
+        if (cancelada) {
+            requisicao.cancel();
+        }
+        return requisicao;
+    }
+
+    synchronized Tarefa acompanha(Tarefa tarefa) {
+        this.tarefa = tarefa;
+        if (cancelada) {
+            tarefa.cancela();
+        }
+        return tarefa;
+    }
+
+    @Override
+    public synchronized void cancela() {
+        cancelada = true;
+        if (requisicao != null) {
+            requisicao.cancel();
+        }
+        if (tarefa != null) {
+            tarefa.cancela();
+        }
+    }
+
+    @Override
+    public synchronized boolean isCancelada() {
+        return cancelada;
+    }
+
+    void entrega(MudancasAplicadas mudancas) {
+        if (!isCancelada() && !mudancas.isVazia()) {
+            callback.quandoSucesso(mudancas);
+        }
+    }
+
+    void falha(String erro) {
+        if (!isCancelada()) {
+            callback.quandoFalha(erro);
+            aoTerminar.run();
+        }
+    }
+
+    void termina() {
+        if (!isCancelada()) {
+            aoTerminar.run();
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package br.com.alura.estoque.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.asynctask.Pool;
+import br.com.alura.estoque.database.EstoqueDatabase;
+import br.com.alura.estoque.database.dao.PendenciaDAO;
+import br.com.alura.estoque.database.dao.ProdutoConfirmadoDAO;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.metrica.Rastreamento;
+import br.com.alura.estoque.model.MudancasAplicadas;
+import br.com.alura.estoque.model.Pendencia;
+import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.ProdutoConfirmado;
+import br.com.alura.estoque.retrofit.callback.BaseCallback;
+import br.com.alura.estoque.retrofit.resiliencia.PoliticaDeRetentativa;
+import br.com.alura.estoque.retrofit.service.ProdutoService;
+
+/*
+Esvazia a caixa de saída: lê um lote de pendências, pede todas ao AgrupadorDeEscritas
+(uma requisição em lote por tipo de operação) e, quando todas respondem, grava os
+resultados numa única transação.
+Enquanto o lote terminar sem falhas de comunicação, o próximo é buscado.
+
+Cada resposta pode terminar de três formas:
+- confirmada: a pendência é removida (se não mudou durante o envio) e o banco recebe
+  o produto devolvido pela API;
+- rejeitada (4xx): a API não vai aceitar a alteração, então ela sai da fila e é desfeita
+  no banco, a não ser que o produto tenha sido alterado de novo durante o envio. A versão
+  confirmada guardada no app serve só para desfazer na hora: o produto pode ter mudado na
+  API desde então (é comum ser esse o motivo da recusa), e essa mudança não volta pela
+  sincronização, que já passou dela. Por isso o produto é buscado de novo na API;
+- falha (sem conexão, 5xx, 408 ou 429): a pendência fica, e um novo envio é agendado com
+  espera crescente e sorteada (ver PoliticaDeRetentativa), para que os aparelhos que
+  ficaram sem conexão juntos não reenviem as suas caixas de saída todos ao mesmo tempo.
+  Depois de NOVAS_TENTATIVAS.getMaximoDeTentativas() falhas seguidas, o envio espera o
+  próximo envia().
+
+Assim como na SincronizacaoPaginada, o estado abaixo só é acessado na UI Thread
+(respostas do Retrofit e quandoFinalizada() da BaseAsyncTask).
+ */
+class EnvioDePendencias {
+
+    private static final String TAG = "EnvioDePendencias";
+    private static final int TAMANHO_DO_LOTE = AgrupadorDeEscritas.MAXIMO_POR_REQUISICAO;
+    /*
+    As pendências só saem da fila confirmadas ou rejeitadas, mas as novas tentativas
+    automáticas param depois de algumas falhas seguidas: a fila volta a ser enviada no
+    próximo envia() (uma nova alteração, uma sincronização ou a abertura do app).
+     */
+    private static final PoliticaDeRetentativa NOVAS_TENTATIVAS = new PoliticaDeRetentativa(
+            10, TimeUnit.SECONDS.toMillis(2), TimeUnit.MINUTES.toMillis(5));
+
+    private final Handler mainThread = new Handler(Looper.getMainLooper());
+    private final EstoqueDatabase db;
+    private final ProdutoDAO dao;
+    private final PendenciaDAO pendenciaDAO;
+    private final ProdutoConfirmadoDAO confirmadoDAO;
+    private final CacheDeProdutos cache;
+    private final ProdutoService service;
+    private final AgrupadorDeEscritas agrupador;
+    private final CaixaDeSaida caixaDeSaida;
+    private final MetricasCaixaDeSaida metricas;
+    private final Runnable novaTentativa = this::envia;
+    private CaixaDeSaida.MudancasListener mudancasListener = mudancas -> {
+    };
+
+    private boolean enviando = false;
+    private boolean novoEnvioPedido = false;
+    private int falhasSeguidas = 0;
+
+    EnvioDePendencias(Dependencias dependencias, CaixaDeSaida caixaDeSaida, MetricasCaixaDeSaida metricas) {
+        this.db = dependencias.db;
+        this.dao = Rastreamento.envolve(ProdutoDAO.class, dependencias.db.getProdutoDAO());
+        this.pendenciaDAO = dependencias.db.getPendenciaDAO();
+        this.confirmadoDAO = dependencias.db.getProdutoConfirmadoDAO();
+        this.cache = dependencias.cache;
+        this.service = dependencias.service;
+        this.agrupador = new AgrupadorDeEscritas(dependencias.service);
+        this.caixaDeSaida = caixaDeSaida;
+        this.metricas = metricas;
+    }
+
+    void setMudancasListener(CaixaDeSaida.MudancasListener mudancasListener) {
+        this.mudancasListener = mudancasListener;
+    }
+
+    void envia() {
+        if (enviando) {
+            // As alterações novas entram no próximo lote do envio em andamento
+            novoEnvioPedido = true;
+            return;
+        }
+        enviando = true;
+        mainThread.removeCallbacks(novaTentativa);
+        buscaLote();
+    }
+
+    private void buscaLote() {
+        new BaseAsyncTask<>(() -> {
+            List<Envio> lote = new ArrayList<>();
+            for (Pendencia pendencia : pendenciaDAO.buscaLote(TAMANHO_DO_LOTE)) {
+                lote.add(new Envio(pendencia, dao.buscaProduto(pendencia.getProdutoId())));
+            }
+            return lote;
+        }, lote -> {
+            if (lote.isEmpty()) {
+                termina();
+            } else {
+                enviaLote(lote);
+            }
+        }).rastreada("EnvioDePendencias.buscaLote").executa(Pool.LEITURA);
+    }
+
+    private void termina() {
+        enviando = false;
+        if (novoEnvioPedido) {
+            novoEnvioPedido = false;
+            envia();
+        }
+    }
+
+    private void enviaLote(List<Envio> lote) {
+        long inicio = SystemClock.elapsedRealtime();
+        int[] aguardando = {lote.size()};
+        for (Envio envio : lote) {
+            envio.requisita(agrupador, () -> {
+                aguardando[0]--;
+                if (aguardando[0] == 0) {
+                    gravaRespostas(lote, inicio);
+                }
+            });
+        }
+    }
+
+    private void gravaRespostas(List<Envio> lote, long inicio) {
+        new BaseAsyncTask<>(() -> {
+            Gravacao gravacao = new Gravacao();
+            db.runInTransaction(() -> {
+                for (Envio envio : lote) {
+                    grava(envio, gravacao);
+                }
+                metricas.registraProfundidade(pendenciaDAO.conta());
+            });
+            return gravacao;
+        }, gravacao -> {
+            metricas.registraLote(SystemClock.elapsedRealtime() - inicio);
+            MudancasAplicadas mudancas = new MudancasAplicadas(gravacao.inseridos,
+                    gravacao.atualizados, gravacao.removidos);
+            if (!mudancas.isVazia()) {
+                mudancasListener.quandoAplicadas(mudancas);
+            }
+            if (gravacao.revertidas > 0) {
+                metricas.registraRevertidas(gravacao.revertidas);
+                mudancasListener.quandoRevertidas(gravacao.revertidas);
+            }
+            for (long produtoId : gravacao.aBuscarNaApi) {
+                buscaNaApi(produtoId);
+            }
+            if (gravacao.houveFalha) {
+                enviando = false;
+                novoEnvioPedido = false;
+                falhasSeguidas++;
+                if (falhasSeguidas < NOVAS_TENTATIVAS.getMaximoDeTentativas()) {
+                    mainThread.postDelayed(novaTentativa, NOVAS_TENTATIVAS.esperaDepoisDe(falhasSeguidas));
+                } else {
+                    Log.w(TAG, "Envio suspenso depois de " + falhasSeguidas + " falhas seguidas");
+                    falhasSeguidas = 0;
+                }
+            } else {
+                falhasSeguidas = 0;
+                buscaLote();
+            }
+        }).rastreada("EnvioDePendencias.gravaRespostas").execute();
+    }
+
+    // Executado dentro da transação de gravaRespostas()
+    private void grava(Envio envio, Gravacao gravacao) {
+        Pendencia pendencia = envio.pendencia;
+        long produtoId = pendencia.getProdutoId();
+        switch (envio.situacao) {
+            case FALHA:
+                gravacao.houveFalha = true;
+                return;
+            case REJEITADA:
+                Log.w(TAG, "API rejeitou " + pendencia.getOperacao() + " do produto " + produtoId);
+                if (pendenciaDAO.removeSeNaoMudou(pendencia.getId(), pendencia.getRevisao()) > 0) {
+                    desfaz(envio, gravacao);
+                }
+                return;
+            case CONFIRMADA:
+                metricas.registraConfirmada(System.currentTimeMillis() - pendencia.getCriadaEm());
+                if (pendencia.getOperacao() == Pendencia.Operacao.SALVA) {
+                    trocaIdTemporario(envio, gravacao);
+                } else if (pendenciaDAO.removeSeNaoMudou(pendencia.getId(), pendencia.getRevisao()) > 0) {
+                    confirmadoDAO.remove(produtoId);
+                    if (pendencia.getOperacao() == Pendencia.Operacao.EDITA) {
+                        // Grava a versão definida pela API
+                        dao.atualiza(envio.resposta);
+                        cache.guarda(envio.resposta);
+                        gravacao.atualizados.add(envio.resposta);
+                    }
+                } else if (envio.resposta != null) {
+                    // Há outra alteração na fila: a versão a restaurar, se ela for recusada, é esta
+                    confirmadoDAO.guarda(ProdutoConfirmado.de(envio.resposta));
+                }
+        }
+    }
+
+    /*
+    Volta o produto ao que a API conhece: um produto novo é removido; uma edição ou
+    remoção devolve a última versão confirmada, se ela foi guardada pela CaixaDeSaida,
+    e o produto ainda é buscado na API (ver buscaNaApi()).
+     */
+    private void desfaz(Envio envio, Gravacao gravacao) {
+        long produtoId = envio.pendencia.getProdutoId();
+        if (envio.pendencia.getOperacao() == Pendencia.Operacao.SALVA) {
+            dao.removePorIds(Collections.singletonList(produtoId));
+            cache.remove(produtoId);
+            gravacao.removidos.add(produtoId);
+            gravacao.revertidas++;
+            return;
+        }
+        gravacao.aBuscarNaApi.add(produtoId);
+        ProdutoConfirmado confirmado = confirmadoDAO.busca(produtoId);
+        if (confirmado == null) {
+            return;
+        }
+        confirmadoDAO.remove(produtoId);
+        Produto original = confirmado.comoProduto();
+        if (envio.pendencia.getOperacao() == Pendencia.Operacao.REMOVE) {
+            dao.salva(original);
+            gravacao.inseridos.add(original);
+        } else if (envio.produto != null) {
+            dao.atualiza(original);
+            gravacao.atualizados.add(original);
+        } else {
+            return;
+        }
+        cache.guarda(original);
+        gravacao.revertidas++;
+    }
+
+    /*
+    Depois de uma recusa, substitui a versão restaurada pelo que a API tem agora, ou
+    remove o produto se ele não existe mais lá. Uma falha aqui não é repetida: fica a
+    versão restaurada, que a próxima alteração do produto corrige.
+     */
+    private void buscaNaApi(long produtoId) {
+        service.buscaProduto(produtoId).enqueue(new BaseCallback<>(new BaseCallback.RespostaCallback<Produto>() {
+            @Override
+            public void quandoSucesso(Produto daApi) {
+                gravaDaApi(produtoId, daApi);
+            }
+
+            @Override
+            public void quandoNaoEncontrado() {
+                gravaDaApi(produtoId, null);
+            }
+
+            @Override
+            public void quandoFalha(String erro) {
+                Log.w(TAG, "Não foi possível buscar o produto " + produtoId + " recusado: " + erro);
+            }
+        }));
+    }
+
+    private void gravaDaApi(long produtoId, Produto daApi) {
+        new BaseAsyncTask<>(() -> {
+            Gravacao gravacao = new Gravacao();
+            db.runInTransaction(() -> {
+                if (pendenciaDAO.buscaPorProduto(produtoId) != null) {
+                    // Alterado de novo: a versão da API passa a ser a que se restaura numa recusa
+                    if (daApi != null) {
+                        confirmadoDAO.guarda(ProdutoConfirmado.de(daApi));
+                    }
+                    return;
+                }
+                Produto local = dao.buscaProduto(produtoId);
+                if (daApi == null) {
+                    if (local != null) {
+                        dao.remove(local);
+                        cache.remove(produtoId);
+                        gravacao.removidos.add(produtoId);
+                    }
+                } else if (local == null) {
+                    dao.salva(daApi);
+                    cache.guarda(daApi);
+                    gravacao.inseridos.add(daApi);
+                } else if (local.getVersao() != daApi.getVersao()) {
+                    dao.atualiza(daApi);
+                    cache.guarda(daApi);
+                    gravacao.atualizados.add(daApi);
+                }
+            });
+            return new MudancasAplicadas(gravacao.inseridos, gravacao.atualizados, gravacao.removidos);
+        }, mudancas -> {
+            if (!mudancas.isVazia()) {
+                mudancasListener.quandoAplicadas(mudancas);
+            }
+        }).rastreada("EnvioDePendencias.gravaDaApi").execute();
+    }
+
+    private void trocaIdTemporario(Envio envio, Gravacao gravacao) {
+        long idTemporario = envio.pendencia.getProdutoId();
+        Produto daApi = envio.resposta;
+        // A mesma pendência, mesmo que outro produto novo já tenha recebido o id temporário
+        Pendencia atual = pendenciaDAO.busca(envio.pendencia.getId());
+        if (atual == null) {
+            // Removido enquanto era criado na API: agora precisa ser removido lá também
+            caixaDeSaida.enfileira(daApi.getId(), Pendencia.Operacao.REMOVE);
+            confirmadoDAO.guarda(ProdutoConfirmado.de(daApi));
+            return;
+        }
+        Produto local = dao.buscaProduto(idTemporario);
+        dao.remove(local);
+        Produto definitivo;
+        if (atual.getRevisao() == envio.pendencia.getRevisao()) {
+            pendenciaDAO.remove(atual);
+            definitivo = daApi;
+        } else {
+            // Editado durante o envio: mantém o conteúdo local e envia a edição com o id novo
+            definitivo = new Produto(daApi.getId(), local.getNome(), local.getPreco(),
+                    local.getQuantidade(), daApi.getVersao());
+            pendenciaDAO.atualiza(atual.comOperacao(daApi.getId(), Pendencia.Operacao.EDITA));
+            confirmadoDAO.guarda(ProdutoConfirmado.de(daApi));
+        }
+        dao.salva(definitivo);
+        cache.remove(idTemporario);
+        cache.guarda(definitivo);
+        gravacao.removidos.add(idTemporario);
+        gravacao.inseridos.add(definitivo);
+    }
+
+    static class Dependencias {
+
+        private final EstoqueDatabase db;
+        private final ProdutoService service;
+        private final CacheDeProdutos cache;
+
+        Dependencias(EstoqueDatabase db, ProdutoService service, CacheDeProdutos cache) {
+            this.db = db;
+            this.service = service;
+            this.cache = cache;
+        }
+
+        CacheDeProdutos getCache() {
+            return cache;
+        }
+    }
+
+    private enum Situacao {
+        CONFIRMADA,
+        REJEITADA,
+        FALHA
+    }
+
+    private static class Envio {
+
+        private final Pendencia pendencia;
+        private final Produto produto;
+        private Situacao situacao = Situacao.FALHA;
+        private Produto resposta;
+
+        Envio(Pendencia pendencia, Produto produto) {
+            this.pendencia = pendencia;
+            this.produto = produto;
+        }
+
+        void requisita(AgrupadorDeEscritas agrupador, Runnable quandoRespondido) {
+            long produtoId = pendencia.getProdutoId();
+            if (produto == null && pendencia.getOperacao() != Pendencia.Operacao.REMOVE) {
+                // Não há mais o que enviar
+                situacao = Situacao.REJEITADA;
+                quandoRespondido.run();
+                return;
+            }
+            switch (pendencia.getOperacao()) {
+                case SALVA:
+                    // O id temporário fica só no app; a API define o id definitivo
+                    Produto novo = new Produto(0, produto.getNome(), produto.getPreco(),
+                            produto.getQuantidade());
+                    agrupador.salva(novo, new RespostaDoEnvio<>(quandoRespondido));
+                    break;
+                case EDITA:
+                    agrupador.edita(produto, new RespostaDoEnvio<>(quandoRespondido));
+                    break;
+                case REMOVE:
+                    agrupador.remove(produtoId, new RespostaDoEnvio<>(quandoRespondido));
+                    break;
+            }
+        }
+
+        private class RespostaDoEnvio<T> implements ProdutoRepository.DadosCarregadosCallback<T> {
+
+            private final Runnable quandoRespondido;
+
+            RespostaDoEnvio(Runnable quandoRespondido) {
+                this.quandoRespondido = quandoRespondido;
+            }
+
+            @Override
+            public void quandoSucesso(T resultado) {
+                if (resultado instanceof Produto) {
+                    resposta = (Produto) resultado;
+                }
+                // Criar e editar só são confirmados com o produto devolvido pela API
+                boolean confirmada = resposta != null
+                        || pendencia.getOperacao() == Pendencia.Operacao.REMOVE;
+                situacao = confirmada ? Situacao.CONFIRMADA : Situacao.REJEITADA;
+                quandoRespondido.run();
+            }
+
+            @Override
+            public void quandoRejeitado(String erro) {
+                situacao = Situacao.REJEITADA;
+                quandoRespondido.run();
+            }
+
+            @Override
+            public void quandoFalha(String erro) {
+                situacao = Situacao.FALHA;
+                quandoRespondido.run();
+            }
+        }
+    }
+
+    private static class Gravacao {
+
+        private final List<Produto> inseridos = new ArrayList<>();
+        private final List<Produto> atualizados = new ArrayList<>();
+        private final List<Long> removidos = new ArrayList<>();
+        private final List<Long> aBuscarNaApi = new ArrayList<>();
+        private int revertidas = 0;
+        private boolean houveFalha = false;
+    }
+}
@@ -0,0 +1,241 @@
+package br.com.alura.estoque.repository;
+
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.asynctask.Pool;
+import br.com.alura.estoque.asynctask.Prioridade;
+import br.com.alura.estoque.database.EstoqueDatabase;
+import br.com.alura.estoque.database.UpsertDeProdutos;
+import br.com.alura.estoque.database.dao.SincronizacaoDAO;
+import br.com.alura.estoque.model.MudancasAplicadas;
+import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.Sincronizacao;
+import br.com.alura.estoque.retrofit.LeitorDeProdutosEmFluxo;
+import br.com.alura.estoque.retrofit.TempoLimite;
+import br.com.alura.estoque.retrofit.service.ProdutoService;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/*
+Carga completa do catálogo em fluxo: cada lote lido do JSON é gravado no banco (numa
+transação do UpsertDeProdutos), o que mudou é entregue à carga, e só então o próximo
+lote é lido. Ou seja, no máximo um lote fica em memória, e o catálogo não é mais
+guardado duas vezes (lista convertida pelo Gson e lista relida do banco).
+
+A leitura da rede e a conversão ficam numa tarefa do pool de REDE, e não no de LEITURA,
+cujas duas Threads atendem as consultas da tela: uma leitura de minutos deixaria só uma
+para elas. Cada lote é gravado pelo pool de ESCRITA, o único escritor do banco. Enquanto um lote é gravado o próximo
+já está sendo lido, mas o seguinte só é lido quando a gravação termina.
+Ao final, a versão do catálogo informada pela API no cabeçalho da resposta
+(ProdutoService.CABECALHO_VERSAO) é guardada como marca d'água da sincronização, também
+pelo pool de ESCRITA, que por ser serial a grava depois do último lote. Não usamos a maior
+versão entre os produtos lidos: o que muda no servidor enquanto o corpo é transmitido pode
+chegar com uma versão menor que ela e ficaria de fora das sincronizações seguintes.
+
+Cada lote também remove os produtos locais que a API não tem mais: os que estão entre o
+maior id do lote anterior e o maior id deste e não vieram nele. Ao final, os que estão
+depois do maior id lido (ver UpsertDeProdutos.removeAusentes()). Mesmo que a API não
+mandasse os produtos em ordem de id, um removido por engano voltaria no lote em que vem.
+
+Junto com cada lote, na mesma transação, são gravados o maior id já gravado e a versão
+do catálogo, como faz a SincronizacaoPaginada a cada página. Se a leitura falhar no meio
+(rede, tempo limite, corpo inválido, ou o app encerrado), a próxima carga completa será
+paginada (ver SincronizacaoIncremental) e continuará depois do último lote gravado, em
+vez de baixar tudo de novo, guardando no fim a mesma versão.
+ */
+class IngestaoEmFluxo {
+
+    private static final int TAMANHO_DO_LOTE = 500;
+    private static final int MAXIMO_LOTES_AGUARDANDO_GRAVACAO = 1;
+
+    private final EstoqueDatabase db;
+    private final ProdutoService service;
+    private final UpsertDeProdutos upsert;
+    private final SincronizacaoDAO sincronizacaoDAO;
+    private final CacheDeProdutos cache;
+    private final LeitorDeProdutosEmFluxo leitor;
+
+    IngestaoEmFluxo(EstoqueDatabase db,
+                    ProdutoService service,
+                    UpsertDeProdutos upsert,
+                    SincronizacaoDAO sincronizacaoDAO,
+                    CacheDeProdutos cache,
+                    LeitorDeProdutosEmFluxo leitor) {
+        this.db = db;
+        this.service = service;
+        this.upsert = upsert;
+        this.sincronizacaoDAO = sincronizacaoDAO;
+        this.cache = cache;
+        this.leitor = leitor;
+    }
+
+    static int getTamanhoDoLote() {
+        return TAMANHO_DO_LOTE;
+    }
+
+    /*
+    Cancelar a carga cancela a requisição, o que interrompe a leitura do corpo com uma
+    IOException; os lotes já lidos continuam sendo gravados, mas a marca d'água não é salva.
+     */
+    void inicia(Carga carga) {
+        carga.acompanha(new BaseAsyncTask<>(() -> le(carga),
+                leitura -> {
+                    if (leitura.erro != null) {
+                        marcaParaRetomar(leitura.versaoDaCarga);
+                        carga.falha(leitura.erro);
+                    } else {
+                        salvaMarca(leitura.versaoDaCarga, leitura.maiorId, carga);
+                    }
+                })
+                .rastreada("IngestaoEmFluxo.le")
+                .executa(Pool.REDE, Prioridade.BAIXA));
+    }
+
+    private Leitura le(Carga carga) {
+        Semaphore gravacoesLivres = new Semaphore(MAXIMO_LOTES_AGUARDANDO_GRAVACAO);
+        Long versaoDaCarga = null;
+        try {
+            Response<ResponseBody> resposta = carga.acompanha(
+                    TempoLimite.CATALOGO_EM_FLUXO.aplicaEm(service.buscaTodosEmFluxo())).execute();
+            ResponseBody corpo = resposta.body();
+            if (!resposta.isSuccessful() || corpo == null) {
+                ResponseBody erro = resposta.errorBody();
+                if (erro != null) {
+                    erro.close();
+                }
+                return Leitura.falha("Resposta não esperada do servidor", null);
+            }
+            versaoDaCarga = versaoDe(resposta);
+            if (versaoDaCarga == null) {
+                corpo.close();
+                return Leitura.falha("Resposta sem a versão do catálogo", null);
+            }
+            long versao = versaoDaCarga;
+            long[] maiorId = {SincronizacaoPaginada.INICIO_DO_CATALOGO};
+            leitor.le(corpo, lote -> {
+                long depoisDe = maiorId[0];
+                for (Produto produto : lote) {
+                    maiorId[0] = Math.max(maiorId[0], produto.getId());
+                }
+                gravacoesLivres.acquireUninterruptibly();
+                gravaLote(lote, depoisDe, maiorId[0], versao, carga, gravacoesLivres);
+            });
+            return Leitura.concluida(versaoDaCarga, maiorId[0]);
+        } catch (IOException e) {
+            return Leitura.falha("Erro na comunicação. Mensagem: " + e.getMessage(), versaoDaCarga);
+        } catch (JsonParseException | IllegalStateException e) {
+            // Um corpo malformado chega como exceção do Gson, que na UI Thread derrubaria o app
+            return Leitura.falha("Resposta inválida do servidor. Mensagem: " + e.getMessage(),
+                    versaoDaCarga);
+        }
+    }
+
+    private static Long versaoDe(Response<ResponseBody> resposta) {
+        String versao = resposta.headers().get(ProdutoService.CABECALHO_VERSAO);
+        if (versao == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(versao.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /*
+    As gravações não são canceladas: um lote já lido é gravado mesmo que a carga seja
+    cancelada, e só a entrega das mudanças é ignorada (ver Carga.entrega()).
+     */
+    private void gravaLote(List<Produto> lote, long depoisDe, long ultimoId, long versaoDaCarga,
+                           Carga carga, Semaphore gravacoesLivres) {
+        new BaseAsyncTask<>(() -> {
+            try {
+                UpsertDeProdutos.Resultado[] resultado = new UpsertDeProdutos.Resultado[1];
+                List<Long> removidos = new ArrayList<>();
+                db.runInTransaction(() -> {
+                    resultado[0] = upsert.grava(lote);
+                    removidos.addAll(upsert.removeAusentes(depoisDe, ultimoId, lote));
+                    sincronizacaoDAO.salva(new Sincronizacao(Sincronizacao.PRODUTO_CARGA_COMPLETA, ultimoId));
+                    sincronizacaoDAO.salva(new Sincronizacao(Sincronizacao.PRODUTO_VERSAO_DA_CARGA,
+                            versaoDaCarga));
+                });
+                MudancasAplicadas mudancas = new MudancasAplicadas(
+                        resultado[0].getInseridos(), resultado[0].getAtualizados(), removidos);
+                cache.invalida(mudancas);
+                return mudancas;
+            } finally {
+                gravacoesLivres.release();
+            }
+        }, carga::entrega).rastreada("IngestaoEmFluxo.gravaLote").execute();
+    }
+
+    private void salvaMarca(long versaoDaCarga, long maiorId, Carga carga) {
+        new BaseAsyncTask<>(() -> {
+            List<Long> removidos = new ArrayList<>();
+            db.runInTransaction(() -> {
+                removidos.addAll(upsert.removeAusentes(maiorId, Long.MAX_VALUE,
+                        Collections.emptyList()));
+                sincronizacaoDAO.salva(new Sincronizacao(Sincronizacao.PRODUTO, versaoDaCarga));
+                sincronizacaoDAO.remove(Sincronizacao.PRODUTO_CARGA_COMPLETA);
+                sincronizacaoDAO.remove(Sincronizacao.PRODUTO_VERSAO_DA_CARGA);
+            });
+            MudancasAplicadas mudancas = new MudancasAplicadas(Collections.emptyList(),
+                    Collections.emptyList(), removidos);
+            cache.invalida(mudancas);
+            return mudancas;
+        }, mudancas -> {
+            carga.entrega(mudancas);
+            carga.termina();
+        }).execute();
+    }
+
+    /*
+    Roda no pool de ESCRITA depois dos lotes já lidos, então, se algum foi gravado, a
+    posição dele já está salva e é mantida. Se nenhum foi, a carga paginada começa do
+    início e, sem a versão (a resposta nem chegou), a obtém da primeira página.
+     */
+    private void marcaParaRetomar(Long versaoDaCarga) {
+        new BaseAsyncTask<>(() -> {
+            if (sincronizacaoDAO.busca(Sincronizacao.PRODUTO_CARGA_COMPLETA) == null) {
+                db.runInTransaction(() -> {
+                    sincronizacaoDAO.salva(new Sincronizacao(Sincronizacao.PRODUTO_CARGA_COMPLETA,
+                            SincronizacaoPaginada.INICIO_DO_CATALOGO));
+                    if (versaoDaCarga != null) {
+                        sincronizacaoDAO.salva(new Sincronizacao(Sincronizacao.PRODUTO_VERSAO_DA_CARGA,
+                                versaoDaCarga));
+                    }
+                });
+            }
+            return null;
+        }, salva -> {
+        }).execute();
+    }
+
+    private static class Leitura {
+
+        private final String erro;
+        private final Long versaoDaCarga;
+        private final long maiorId;
+
+        private Leitura(String erro, Long versaoDaCarga, long maiorId) {
+            this.erro = erro;
+            this.versaoDaCarga = versaoDaCarga;
+            this.maiorId = maiorId;
+        }
+
+        static Leitura concluida(long versaoDaCarga, long maiorId) {
+            return new Leitura(null, versaoDaCarga, maiorId);
+        }
+
+        static Leitura falha(String erro, Long versaoDaCarga) {
+            return new Leitura(erro, versaoDaCarga, SincronizacaoPaginada.INICIO_DO_CATALOGO);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package br.com.alura.estoque.repository;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Situação da caixa de saída: quantas alterações esperam envio e quanto tempo leva
+cada lote, do início das requisições até as respostas serem gravadas no banco.
+A idade mostra quanto tempo as alterações confirmadas ficaram na fila.
+
+Como a tela é atualizada antes do envio, há duas latências para comparar: a percebida,
+do pedido do usuário até o quadro que mostra a alteração, e a confirmada, até a API aceitá-la
+(a mesma idade média). As revertidas são as alterações recusadas e desfeitas.
+ */
+public class MetricasCaixaDeSaida {
+
+    private final AtomicInteger profundidade = new AtomicInteger();
+    private final AtomicLong lotesEnviados = new AtomicLong();
+    private final AtomicLong latenciaTotalMillis = new AtomicLong();
+    private final AtomicLong latenciaMaximaMillis = new AtomicLong();
+    private final AtomicLong confirmadas = new AtomicLong();
+    private final AtomicLong idadeTotalMillis = new AtomicLong();
+    private final AtomicLong percebidas = new AtomicLong();
+    private final AtomicLong latenciaPercebidaTotalMillis = new AtomicLong();
+    private final AtomicLong revertidas = new AtomicLong();
+
+    void registraProfundidade(int pendencias) {
+        profundidade.set(pendencias);
+    }
+
+    void registraLote(long latenciaMillis) {
+        lotesEnviados.incrementAndGet();
+        latenciaTotalMillis.addAndGet(latenciaMillis);
+        long maximaAtual;
+        do {
+            maximaAtual = latenciaMaximaMillis.get();
+        } while (latenciaMillis > maximaAtual
+                && !latenciaMaximaMillis.compareAndSet(maximaAtual, latenciaMillis));
+    }
+
+    void registraConfirmada(long idadeMillis) {
+        confirmadas.incrementAndGet();
+        idadeTotalMillis.addAndGet(idadeMillis);
+    }
+
+    void registraPercebida(long latenciaMillis) {
+        percebidas.incrementAndGet();
+        latenciaPercebidaTotalMillis.addAndGet(latenciaMillis);
+    }
+
+    void registraRevertidas(int quantidade) {
+        revertidas.addAndGet(quantidade);
+    }
+
+    public int getProfundidade() {
+        return profundidade.get();
+    }
+
+    public long getLotesEnviados() {
+        return lotesEnviados.get();
+    }
+
+    public long getLatenciaMediaDoLoteEmMillis() {
+        long lotes = lotesEnviados.get();
+        if (lotes == 0) {
+            return 0;
+        }
+        return latenciaTotalMillis.get() / lotes;
+    }
+
+    public long getLatenciaMaximaDoLoteEmMillis() {
+        return latenciaMaximaMillis.get();
+    }
+
+    public long getIdadeMediaEmMillis() {
+        long total = confirmadas.get();
+        if (total == 0) {
+            return 0;
+        }
+        return idadeTotalMillis.get() / total;
+    }
+
+    public long getLatenciaPercebidaMediaEmMillis() {
+        long total = percebidas.get();
+        if (total == 0) {
+            return 0;
+        }
+        return latenciaPercebidaTotalMillis.get() / total;
+    }
+
+    public long getLatenciaConfirmadaMediaEmMillis() {
+        return getIdadeMediaEmMillis();
+    }
+
+    public long getRevertidas() {
+        return revertidas.get();
+    }
+}
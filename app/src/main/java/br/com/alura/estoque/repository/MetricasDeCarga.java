@@ -0,0 +1,38 @@
+package br.com.alura.estoque.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+Quantas sincronizações foram de fato iniciadas, quantos pedidos aproveitaram uma que já
+estava em andamento (deduplicadas) e quantas foram canceladas por uma mais nova.
+ */
+public class MetricasDeCarga {
+
+    private final AtomicLong iniciadas = new AtomicLong();
+    private final AtomicLong deduplicadas = new AtomicLong();
+    private final AtomicLong canceladas = new AtomicLong();
+
+    void registraIniciada() {
+        iniciadas.incrementAndGet();
+    }
+
+    void registraDeduplicada() {
+        deduplicadas.incrementAndGet();
+    }
+
+    void registraCancelada() {
+        canceladas.incrementAndGet();
+    }
+
+    public long getIniciadas() {
+        return iniciadas.get();
+    }
+
+    public long getDeduplicadas() {
+        return deduplicadas.get();
+    }
+
+    public long getCanceladas() {
+        return canceladas.get();
+    }
+}
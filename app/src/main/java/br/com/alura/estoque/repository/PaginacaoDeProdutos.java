@@ -0,0 +1,57 @@
+package br.com.alura.estoque.repository;
+
+import java.util.Collections;
+import java.util.List;
+
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.asynctask.Pool;
+import br.com.alura.estoque.asynctask.Prioridade;
+import br.com.alura.estoque.asynctask.Tarefa;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.model.Produto;
+
+/*
+Fonte paginada dos produtos salvos internamente.
+
+Não guarda estado: quem pede a página informa o id a partir do qual quer continuar,
+o que permite que a lista mantenha só uma janela de páginas em memória e descarte
+as demais, pedindo-as de novo quando o usuário voltar a elas.
+
+As páginas lidas não vão para o CacheDeProdutos: a leitura pode ver o banco de antes
+de uma edição que acabou de ser gravada e, guardada depois dela, desfaria a edição no cache.
+ */
+class PaginacaoDeProdutos {
+
+    private final ProdutoDAO dao;
+    private final int tamanhoPagina;
+
+    PaginacaoDeProdutos(ProdutoDAO dao, int tamanhoPagina) {
+        this.dao = dao;
+        this.tamanhoPagina = tamanhoPagina;
+    }
+
+    // Começa antes de 0 para incluir os produtos com id temporário (negativo)
+    List<Produto> primeiraPagina() {
+        return dao.buscaPagina(Long.MIN_VALUE, tamanhoPagina);
+    }
+
+    Tarefa buscaPaginaSeguinte(long ultimoId,
+                               ProdutoRepository.DadosCarregadosCallback<List<Produto>> callback) {
+        // A página que o usuário está esperando na tela passa na frente de outras leituras
+        return new BaseAsyncTask<>(() -> dao.buscaPagina(ultimoId, tamanhoPagina),
+                callback::quandoSucesso)
+                .rastreada("PaginacaoDeProdutos.buscaPaginaSeguinte")
+                .executa(Pool.LEITURA, Prioridade.ALTA);
+    }
+
+    Tarefa buscaPaginaAnterior(long primeiroId,
+                               ProdutoRepository.DadosCarregadosCallback<List<Produto>> callback) {
+        return new BaseAsyncTask<>(() -> {
+            List<Produto> pagina = dao.buscaPaginaAnteriorInvertida(primeiroId, tamanhoPagina);
+            Collections.reverse(pagina);
+            return pagina;
+        }, callback::quandoSucesso)
+                .rastreada("PaginacaoDeProdutos.buscaPaginaAnterior")
+                .executa(Pool.LEITURA, Prioridade.ALTA);
+    }
+}
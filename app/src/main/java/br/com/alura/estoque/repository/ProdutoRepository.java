@@ -1,14 +1,32 @@
 package br.com.alura.estoque.repository;
 
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.view.Choreographer;
 
 import java.util.List;
 
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.OnLifecycleEvent;
 import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.asynctask.EscopoDeTarefas;
+import br.com.alura.estoque.asynctask.Pool;
+import br.com.alura.estoque.asynctask.Prioridade;
+import br.com.alura.estoque.asynctask.Tarefa;
+import br.com.alura.estoque.asynctask.TarefaComposta;
+import br.com.alura.estoque.database.ConsultaObservavel;
 import br.com.alura.estoque.database.EstoqueDatabase;
+import br.com.alura.estoque.database.Inscricao;
+import br.com.alura.estoque.database.ProdutosObservaveis;
+import br.com.alura.estoque.database.UpsertDeProdutos;
 import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.metrica.Rastreamento;
+import br.com.alura.estoque.model.IntervaloDeProdutos;
+import br.com.alura.estoque.model.MudancasAplicadas;
 import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.ResumoDoEstoque;
 import br.com.alura.estoque.retrofit.EstoqueRetrofit;
 import br.com.alura.estoque.retrofit.callback.BaseCallback;
 import br.com.alura.estoque.retrofit.callback.CallbackSemRetorno;
@@ -28,8 +46,20 @@ Ou seja, incluiremos esta camada a mais em nosso aplicativo.
 O Repository é um componente que lidará apenas com os dados, portanto chamadas
 como atualiza() do Adapter, por exemplo, precisa ser feita para quem estiver
 chamando o Repository, o qual não terá este tipo de responsabilidade.
+
+Cada Repository pertence a uma tela (o LifecycleOwner recebido no construtor). As
+leituras devolvem uma Tarefa, que pode ser cancelada antes, e todas as que ainda não
+terminaram são canceladas quando a tela é destruída: as consultas que ainda estão na fila
+dos Pools nem chegam a executar, e as que já executaram não são entregues.
+A sincronização com a API, que é compartilhada por todas as telas, não é interrompida.
  */
-public class ProdutoRepository {
+public class ProdutoRepository implements LifecycleObserver {
+
+    /*
+    Quantidade de produtos buscada a cada página. A lista mantém apenas algumas
+    páginas em memória, então o catálogo inteiro nunca é carregado de uma vez.
+     */
+    public static final int TAMANHO_PAGINA = 50;
 
     /*
     No caso do DAO, será uma dependência, portanto criaremos um atributo de tipo ProdutoDAO.
@@ -37,12 +67,28 @@ public class ProdutoRepository {
     criar um banco de dados.
      */
     private final ProdutoDAO dao;
+    private final UpsertDeProdutos upsert;
     private final ProdutoService service;
-
-    public ProdutoRepository(Context context) {
+    private final PaginacaoDeProdutos paginacao;
+    private final SincronizacaoCompartilhada sincronizacao;
+    private final CaixaDeSaida caixaDeSaida;
+    private final CacheDeProdutos cache;
+    private final ProdutosObservaveis observaveis;
+    private final BuscaDeProdutos busca;
+    private final EscopoDeTarefas escopo = new EscopoDeTarefas();
+
+    public ProdutoRepository(Context context, LifecycleOwner dono) {
         EstoqueDatabase db = EstoqueDatabase.getInstance(context);
-        this.dao = db.getProdutoDAO();
-        this.service = new EstoqueRetrofit().getProdutoService();
+        this.dao = Rastreamento.envolve(ProdutoDAO.class, db.getProdutoDAO());
+        this.upsert = new UpsertDeProdutos(db);
+        this.service = EstoqueRetrofit.getInstance().getProdutoService();
+        this.cache = CacheDeProdutos.getInstance();
+        this.paginacao = new PaginacaoDeProdutos(dao, TAMANHO_PAGINA);
+        this.caixaDeSaida = CaixaDeSaida.getInstance(context);
+        this.sincronizacao = SincronizacaoCompartilhada.getInstance(context);
+        this.observaveis = new ProdutosObservaveis(db);
+        this.busca = new BuscaDeProdutos(dao, TAMANHO_PAGINA);
+        dono.getLifecycle().addObserver(this);
     }
 
     /*
@@ -55,12 +101,123 @@ public class ProdutoRepository {
 
     Nosso Listener agora recebe e retorna um tipo Generics, e no caso, estamos
      definindo que iremos enviar e receber o tipo List<Produto>.
+
+    A primeira página salva internamente chega pelo callback. Depois, a sincronização
+    com a API não devolve a lista de novo: cada etapa entrega ao mudancasCallback só o que
+    foi inserido, atualizado ou removido, para ser mesclado com o que já está na tela.
+     */
+    public Tarefa buscaProdutos(DadosCarregadosCallback<List<Produto>> callback,
+                                DadosCarregadosCallback<MudancasAplicadas> mudancasCallback) {
+        // Confirmações da caixa de saída (troca de ids temporários) chegam da mesma forma
+        caixaDeSaida.setMudancasListener(new CaixaDeSaida.MudancasListener() {
+            @Override
+            public void quandoAplicadas(MudancasAplicadas mudancas) {
+                mudancasCallback.quandoSucesso(mudancas);
+            }
+
+            @Override
+            public void quandoRevertidas(int quantidade) {
+                mudancasCallback.quandoRejeitado(quantidade == 1
+                        ? "Uma alteração foi recusada pelo servidor e desfeita"
+                        : quantidade + " alterações foram recusadas pelo servidor e desfeitas");
+            }
+        });
+        return escopo.acompanha(buscaProdutosInternos(callback, mudancasCallback));
+    }
+
+    /*
+    Pede uma sincronização nova, cancelando a que estiver em andamento (por exemplo,
+    quando o usuário pede para atualizar a lista). As mudanças chegam ao mudancasCallback.
+     */
+    public Tarefa recarrega(DadosCarregadosCallback<MudancasAplicadas> mudancasCallback) {
+        return escopo.acompanha(sincronizacao.sincronizaDeNovo(mudancasCallback));
+    }
+
+    /*
+    Procura primeiro no CacheDeProdutos; só vai ao banco se o produto não estiver lá.
+    O produto lido do banco não é guardado no cache, que só recebe o que é gravado
+    (ver PaginacaoDeProdutos).
+     */
+    public Tarefa buscaProduto(long id, DadosCarregadosCallback<Produto> callback) {
+        Produto emCache = cache.busca(id);
+        if (emCache != null) {
+            callback.quandoSucesso(emCache);
+            return Tarefa.CONCLUIDA;
+        }
+        return escopo.acompanha(new BaseAsyncTask<>(() -> dao.buscaProduto(id), produto -> {
+            if (produto != null) {
+                callback.quandoSucesso(produto);
+            } else {
+                callback.quandoFalha("Produto não encontrado");
+            }
+        }).rastreada("ProdutoRepository.buscaProduto").executa(Pool.LEITURA, Prioridade.ALTA));
+    }
+
+    /*
+    Consulta de novo a faixa de produtos da tela sempre que a tabela Produto mudar,
+    seja pela sincronização, pela caixa de saída ou por outra tela. Numa sincronização
+    grande, os avisos são agrupados e a faixa é consultada poucas vezes.
+    A Inscricao é cancelada junto com as demais tarefas quando a tela é destruída.
+     */
+    public Inscricao observaProdutos(ConsultaObservavel.Parametros<IntervaloDeProdutos> faixa,
+                                     ConsultaObservavel.Observador<IntervaloDeProdutos, List<Produto>> observador) {
+        return escopo.acompanha(observaveis.observaIntervalo(faixa, observador));
+    }
+
+    /*
+    Busca os produtos cujo nome tem palavras começando com as digitadas. Pode ser chamado
+    a cada letra: só o último texto é consultado, depois de uma pausa na digitação.
+     */
+    public Tarefa buscaPorNome(String texto, DadosCarregadosCallback<List<Produto>> callback) {
+        return escopo.acompanha(busca.busca(texto, callback));
+    }
+
+    public void cancelaBusca() {
+        busca.cancela();
+    }
+
+    public Tarefa buscaResumo(DadosCarregadosCallback<ResumoDoEstoque> callback) {
+        return escopo.acompanha(new BaseAsyncTask<>(dao::buscaResumo, callback::quandoSucesso)
+                .rastreada("ProdutoRepository.buscaResumo").executa(Pool.LEITURA, Prioridade.ALTA));
+    }
+
+    public CacheDeProdutos getCache() {
+        return cache;
+    }
+
+    public MetricasDeCarga getMetricasDeCarga() {
+        return sincronizacao.getMetricas();
+    }
+
+    /*
+    A caixa de saída e a sincronização vivem enquanto o processo existir; quando a tela
+    é destruída, as tarefas dela são canceladas para que elas não fiquem presas à tela.
+    A sincronização em andamento só deixa de entregar à tela: ela continua, para a
+    próxima tela (depois de uma rotação, por exemplo) aproveitar.
+
+    As gravações (salva, edita e remove) não são canceladas: elas já foram mostradas ao
+    usuário e continuam até chegar à API pela caixa de saída.
+     */
+    @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+    public void encerra() {
+        escopo.encerra();
+        caixaDeSaida.removeMudancasListener();
+    }
+
+    /*
+    Os produtos chegam à tela por páginas: buscaProdutos() entrega a primeira e,
+    conforme o usuário rola a lista, os métodos abaixo entregam as vizinhas.
      */
-    public void buscaProdutos(DadosCarregadosCallback<List<Produto>> callback) {
-        buscaProdutosInternos(callback);
+    public Tarefa buscaPaginaSeguinte(long ultimoId, DadosCarregadosCallback<List<Produto>> callback) {
+        return escopo.acompanha(paginacao.buscaPaginaSeguinte(ultimoId, callback));
+    }
+
+    public Tarefa buscaPaginaAnterior(long primeiroId, DadosCarregadosCallback<List<Produto>> callback) {
+        return escopo.acompanha(paginacao.buscaPaginaAnterior(primeiroId, callback));
     }
 
-    private void buscaProdutosInternos(DadosCarregadosCallback<List<Produto>> callback) {
+    private Tarefa buscaProdutosInternos(DadosCarregadosCallback<List<Produto>> callback,
+                                       DadosCarregadosCallback<MudancasAplicadas> mudancasCallback) {
 
         /*
         Criando AsyncTask para pegar os produtos salvos internamente.
@@ -72,15 +229,36 @@ public class ProdutoRepository {
         Aqui, na nossa situação, nós criamos uma AsyncTask que primeiro faz uma busca interna e
         atualiza a visualização para o usuário.
         Em seguida, realizamos uma busca externa para pegar as informações e atualizá-las.
+
+        Atualização: a BaseAsyncTask não usa mais a fila do AsyncTask. A leitura vai para o
+        pool de LEITURA e, por isso, não espera mais atrás de gravações em andamento.
+
+        As duas etapas (a leitura e a sincronização) formam uma única Tarefa.
          */
-        new BaseAsyncTask<>(dao::buscaTodos, // Fazendo a busca internamente e retornando todos os produtos
+        TarefaComposta tarefa = new TarefaComposta();
+        tarefa.acompanha(new BaseAsyncTask<>(paginacao::primeiraPagina, // Fazendo a busca internamente e retornando a primeira página de produtos
                 produtos -> {
                     // Atualizando a lista de produtos (que foram pegos internamente logo acima) para visuzalização
                     callback.quandoSucesso(produtos);
                     //buscaProdutosNaAPI1(callback);
                     //buscaProdutosNaAPI2(callback);
-                    buscaProdutosNaAPI3(callback);
-                }).execute();
+                    //buscaProdutosNaAPI3(callback);
+                    tarefa.acompanhaUltima(sincronizaComAPI(mudancasCallback));
+                }).rastreada("ProdutoRepository.buscaProdutos").executa(Pool.LEITURA));
+        return tarefa;
+    }
+
+    /*
+    Ao contrário de buscaProdutosNaAPI3(), que espera o catálogo inteiro chegar para só então
+    gravar e devolver tudo, aqui só o que mudou desde a última sincronização é buscado,
+    e chega ao callback assim que é gravado (lote por lote, na primeira vez).
+    Quem recebe deve mesclar as mudanças com o que já está na tela.
+
+    Se outra tela já iniciou uma sincronização, o callback passa a receber as mudanças
+    dela, em vez de uma nova ser iniciada (ver SincronizacaoCompartilhada).
+     */
+    private Tarefa sincronizaComAPI(DadosCarregadosCallback<MudancasAplicadas> callback) {
+        return sincronizacao.sincroniza(callback);
     }
 
     private void buscaProdutosNaAPI1(DadosCarregadosCallback<List<Produto>> callback) {
@@ -147,8 +325,9 @@ public class ProdutoRepository {
                 // Segundo listener que sera executado em onPostExecute
                 produtosNovos -> {
                     callback.quandoSucesso(produtosNovos); // Vale lembrar que esse callback está sendo implementado em ListaProdutosActivity
-                    // O método executeOnExecutor com o valor AsyncTask.THREAD_POOL_EXECUTOR significa que essa AsyncTask é uma execução fora do padrão e que não entrará na fila.
-                }).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                    // Antes era usado executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR) para que essa tarefa não entrasse na fila serial.
+                    // Agora basta escolher um pool diferente do de ESCRITA.
+                }).executa(Pool.LEITURA);
     }
 
     private void buscaProdutosNaAPI2(DadosCarregadosCallback<List<Produto>> callback) {
@@ -203,10 +382,13 @@ public class ProdutoRepository {
     private void atualizaInternamente(List<Produto> produtos, DadosCarregadosCallback<List<Produto>> callback) {
         new BaseAsyncTask<>(() ->
         {
-            dao.salva(produtos);
-            return dao.buscaTodos();
+            // Só o que foi inserido ou atualizado volta para a tela, sem reler a tabela
+            UpsertDeProdutos.Resultado resultado = upsert.grava(produtos);
+            return new MudancasAplicadas(resultado.getInseridos(), resultado.getAtualizados())
+                    .getAlterados();
         },
-            r -> { callback.quandoSucesso(r); } // Vale lembrar que esse callback está sendo implementado em ListaProdutosActivity
+                // Vale lembrar que esse callback está sendo implementado em ListaProdutosActivity
+                callback::quandoSucesso
         ).execute();
     }
 
@@ -216,7 +398,46 @@ public class ProdutoRepository {
         Mantive o método anterior devido aos comentários.
          */
         //salvaAPI1(produto, callback);
-        salvaAPI2(produto, callback);
+        //salvaAPI2(produto, callback);
+        salvaNaCaixaDeSaida(produto, callback);
+    }
+
+    /*
+    Salvar, editar e remover são otimistas: o callback é chamado na hora, ainda na
+    UI Thread, e a gravação no banco e a caixa de saída vêm depois. Se a API recusar
+    a alteração, ela é desfeita no banco pelo EnvioDePendencias, a tela acompanha pela
+    observação da tabela e o mudancasCallback de buscaProdutos() recebe quandoRejeitado().
+
+    O produto novo já vai para a tela com o id temporário. Só se os ids temporários ainda
+    não foram carregados (logo na abertura do app) o callback espera a gravação.
+     */
+    private void salvaNaCaixaDeSaida(Produto produto, DadosCarregadosCallback<Produto> callback) {
+        long inicio = SystemClock.elapsedRealtime();
+        Produto comIdTemporario = caixaDeSaida.reservaIdTemporario(produto);
+        if (comIdTemporario != null) {
+            cache.guarda(comIdTemporario);
+            mostraNaHora(comIdTemporario, callback, inicio);
+        }
+        new BaseAsyncTask<>(() -> caixaDeSaida.registraSalva(
+                comIdTemporario != null ? comIdTemporario : produto),
+                produtoSalvo -> {
+                    // A gravação continua mesmo com a tela destruída, mas não há mais a quem mostrar
+                    if (comIdTemporario == null && !escopo.isEncerrado()) {
+                        mostraNaHora(produtoSalvo, callback, inicio);
+                    }
+                    caixaDeSaida.envia();
+                }).rastreada("ProdutoRepository.salva").execute();
+    }
+
+    /*
+    O callback só atualiza o adapter; a alteração aparece quando o próximo quadro é
+    desenhado. Por isso a latência percebida é medida até esse quadro, e não até o
+    retorno do callback, que seria sempre perto de zero.
+     */
+    private <T> void mostraNaHora(T resultado, DadosCarregadosCallback<T> callback, long inicio) {
+        callback.quandoSucesso(resultado);
+        Choreographer.getInstance().postFrameCallback(quadro ->
+                caixaDeSaida.getMetricas().registraPercebida(SystemClock.elapsedRealtime() - inicio));
     }
 
     private void salvaAPI2(Produto produto, DadosCarregadosCallback<Produto> callback) {
@@ -286,8 +507,15 @@ public class ProdutoRepository {
     private void salvaInternamente(Produto produtoSalvo, DadosCarregadosCallback<Produto> callback) {
         new BaseAsyncTask<>(() ->
         {
+            /*
+            Antes, o produto era lido de volta do banco logo depois de inserido.
+            Ele já está em memória; só o id pode ter sido gerado pelo banco.
+             */
             long id = dao.salva(produtoSalvo);
-            return dao.buscaProduto(id);
+            Produto persistido = new Produto(id, produtoSalvo.getNome(), produtoSalvo.getPreco(),
+                    produtoSalvo.getQuantidade(), produtoSalvo.getVersao());
+            cache.guarda(persistido);
+            return persistido;
         }, produtoPersistido -> callback.quandoSucesso (produtoPersistido)).execute();
     }
 
@@ -313,7 +541,14 @@ public class ProdutoRepository {
     }*/
 
     public void edita(Produto produto, DadosCarregadosCallback<Produto> callback) {
-        editaNaAPI(produto, callback);
+        //editaNaAPI(produto, callback);
+        long inicio = SystemClock.elapsedRealtime();
+        cache.guarda(produto);
+        mostraNaHora(produto, callback, inicio);
+        new BaseAsyncTask<>(() -> caixaDeSaida.registraEdicao(produto),
+                produtoEditado -> caixaDeSaida.envia())
+                .rastreada("ProdutoRepository.edita")
+                .execute();
     }
 
     private void editaNaAPI(Produto produto, DadosCarregadosCallback<Produto> callback) {
@@ -335,6 +570,7 @@ public class ProdutoRepository {
     private void editaInternamente(Produto produto, DadosCarregadosCallback<Produto> callback) {
         new BaseAsyncTask<>(() -> {
             dao.atualiza(produto);
+            cache.guarda(produto);
             return produto;
         }, produtoEditado ->
                 //adapter.edita(posicao, produtoEditado))
@@ -347,7 +583,14 @@ public class ProdutoRepository {
     Void, como fazemos na Async Task.
      */
     public void remove(Produto produto, DadosCarregadosCallback<Void> callback) {
-        removeNaAPI(produto, callback);
+        //removeNaAPI(produto, callback);
+        long inicio = SystemClock.elapsedRealtime();
+        cache.remove(produto.getId());
+        mostraNaHora(null, callback, inicio);
+        new BaseAsyncTask<>(() -> {
+            caixaDeSaida.registraRemocao(produto);
+            return null;
+        }, (Void v) -> caixaDeSaida.envia()).rastreada("ProdutoRepository.remove").execute();
     }
 
     /*
@@ -384,6 +627,7 @@ public class ProdutoRepository {
     private void removeInternamente(Produto produto, DadosCarregadosCallback<Void> callback) {
         new BaseAsyncTask<>(() -> {
             dao.remove(produto);
+            cache.remove(produto.getId());
             return null;
         /*
         Percebi que quando o retorno é um Void, precisa definir o tipo do retorno dentro dos parênteses
@@ -394,5 +638,13 @@ public class ProdutoRepository {
     public interface DadosCarregadosCallback <T> {
         void quandoSucesso(T resultado);
         void quandoFalha(String erro);
+
+        /*
+        Chamado quando a API recusa o pedido (4xx), ou seja, não adianta tentar de novo.
+        Por padrão é tratado como uma falha qualquer.
+         */
+        default void quandoRejeitado(String erro) {
+            quandoFalha(erro);
+        }
     }
 }
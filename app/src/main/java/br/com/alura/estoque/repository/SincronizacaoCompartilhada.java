@@ -0,0 +1,163 @@
+package br.com.alura.estoque.repository;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import br.com.alura.estoque.asynctask.Tarefa;
+import br.com.alura.estoque.database.EstoqueDatabase;
+import br.com.alura.estoque.model.MudancasAplicadas;
+import br.com.alura.estoque.retrofit.EstoqueRetrofit;
+
+/*
+Antes, cada chamada de buscaProdutos() (e cada ProdutoRepository, um por Activity)
+iniciava a sua própria sincronização. Recriar a tela ou atualizar várias vezes seguidas
+empilhava downloads e gravações repetidos.
+
+Agora existe uma única sincronização por processo:
+- sincroniza(): se já há uma carga em andamento, o callback só passa a receber as
+  mudanças dela (single-flight), sem uma nova requisição;
+- sincronizaDeNovo(): a carga em andamento, se houver, é cancelada e uma nova começa,
+  entregando as mudanças a todos os interessados (a mais recente vence).
+
+Quem entra no meio de uma carga não perde nada: as mudanças entregues antes já estão
+no banco, de onde a primeira página é lida.
+
+Os dois métodos devolvem o interesse de quem chamou como uma Tarefa. Cancelá-lo só tira
+o callback da lista: a carga continua, mesmo sem ninguém esperando, porque ela pertence ao
+processo e não à tela. Uma rotação destrói a Activity no meio da primeira carga completa,
+e cancelar ali jogaria fora o download do catálogo, que em fluxo só guarda a marca d'água
+no final. A nova Activity, ao pedir a sincronização, passa a receber as mudanças da mesma carga.
+
+Todos os métodos devem ser chamados na UI Thread.
+ */
+class SincronizacaoCompartilhada {
+
+    private static volatile SincronizacaoCompartilhada instancia;
+
+    private final SincronizacaoIncremental sincronizacao;
+    private final MetricasDeCarga metricas = new MetricasDeCarga();
+    private final List<ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas>> interessados =
+            new ArrayList<>();
+    private Carga emAndamento;
+
+    private SincronizacaoCompartilhada(SincronizacaoIncremental sincronizacao) {
+        this.sincronizacao = sincronizacao;
+    }
+
+    static SincronizacaoCompartilhada getInstance(Context context) {
+        SincronizacaoCompartilhada compartilhada = instancia;
+        if (compartilhada == null) {
+            synchronized (SincronizacaoCompartilhada.class) {
+                compartilhada = instancia;
+                if (compartilhada == null) {
+                    EstoqueRetrofit retrofit = EstoqueRetrofit.getInstance();
+                    compartilhada = new SincronizacaoCompartilhada(new SincronizacaoIncremental(
+                            EstoqueDatabase.getInstance(context),
+                            retrofit.getProdutoService(),
+                            ProdutoRepository.TAMANHO_PAGINA,
+                            retrofit.criaLeitorDeProdutosEmFluxo(IngestaoEmFluxo.getTamanhoDoLote())));
+                    instancia = compartilhada;
+                }
+            }
+        }
+        return compartilhada;
+    }
+
+    Tarefa sincroniza(ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> callback) {
+        adicionaInteressado(callback);
+        if (emAndamento != null) {
+            metricas.registraDeduplicada();
+        } else {
+            inicia();
+        }
+        return new Interesse(callback);
+    }
+
+    Tarefa sincronizaDeNovo(ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> callback) {
+        adicionaInteressado(callback);
+        if (emAndamento != null) {
+            emAndamento.cancela();
+            metricas.registraCancelada();
+        }
+        inicia();
+        return new Interesse(callback);
+    }
+
+    // Para quem não quer mais receber as mudanças da carga em andamento
+    void remove(ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> callback) {
+        interessados.remove(callback);
+    }
+
+    MetricasDeCarga getMetricas() {
+        return metricas;
+    }
+
+    private void adicionaInteressado(ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> callback) {
+        if (!interessados.contains(callback)) {
+            interessados.add(callback);
+        }
+    }
+
+    private void inicia() {
+        metricas.registraIniciada();
+        Carga[] carga = new Carga[1];
+        carga[0] = new Carga(new ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas>() {
+            @Override
+            public void quandoSucesso(MudancasAplicadas mudancas) {
+                for (ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> interessado
+                        : new ArrayList<>(interessados)) {
+                    interessado.quandoSucesso(mudancas);
+                }
+            }
+
+            @Override
+            public void quandoFalha(String erro) {
+                for (ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> interessado
+                        : new ArrayList<>(interessados)) {
+                    interessado.quandoFalha(erro);
+                }
+            }
+        }, () -> {
+            // Os interessados valiam só para esta carga
+            if (emAndamento == carga[0]) {
+                emAndamento = null;
+                interessados.clear();
+            }
+        });
+        emAndamento = carga[0];
+        sincronizacao.sincroniza(carga[0]);
+    }
+
+    /*
+    Encerrado quando foi cancelado ou quando a carga terminou e limpou os interessados.
+     */
+    private class Interesse implements Tarefa {
+
+        private final ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> callback;
+        private boolean cancelado = false;
+
+        Interesse(ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void cancela() {
+            if (!cancelado) {
+                cancelado = true;
+                remove(callback);
+            }
+        }
+
+        @Override
+        public boolean isCancelada() {
+            return cancelado;
+        }
+
+        @Override
+        public boolean isEncerrada() {
+            return cancelado || !interessados.contains(callback);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package br.com.alura.estoque.repository;
+
+import java.util.List;
+
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.asynctask.Pool;
+import br.com.alura.estoque.database.EstoqueDatabase;
+import br.com.alura.estoque.database.UpsertDeProdutos;
+import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.database.dao.SincronizacaoDAO;
+import br.com.alura.estoque.metrica.Rastreamento;
+import br.com.alura.estoque.model.MudancasAplicadas;
+import br.com.alura.estoque.model.MudancasProdutos;
+import br.com.alura.estoque.model.Sincronizacao;
+import br.com.alura.estoque.retrofit.LeitorDeProdutosEmFluxo;
+import br.com.alura.estoque.retrofit.TempoLimite;
+import br.com.alura.estoque.retrofit.callback.BaseCallback;
+import br.com.alura.estoque.retrofit.service.ProdutoService;
+
+/*
+Antes, toda abertura da tela baixava e regravava (com REPLACE) o catálogo inteiro,
+mesmo sem nenhuma mudança, e os produtos removidos na API nunca eram removidos aqui.
+
+Agora, se já existe uma marca d'água salva, pedimos à API apenas o que mudou desde ela:
+os produtos alterados são gravados, os removidos são apagados e a nova marca é salva,
+tudo na mesma transação. Sem marca (primeira sincronização), o catálogo é buscado
+inteiro, de acordo com o ModoDeCargaCompleta, e a marca é salva ao terminar.
+ */
+class SincronizacaoIncremental {
+
+    /*
+    EM_FLUXO: uma única requisição, lida e gravada em lotes (IngestaoEmFluxo). É o mais
+    rápido, mas, se falhar no meio, a mesma resposta não tem como ser continuada;
+    PAGINADA: uma requisição por página (SincronizacaoPaginada), guardando a posição a cada
+    página gravada. É usado quando uma carga completa anterior foi interrompida, a partir
+    do último lote ou página gravados, para que uma rede instável não obrigue a baixar o
+    catálogo inteiro a cada tentativa.
+     */
+    enum ModoDeCargaCompleta {
+        PAGINADA,
+        EM_FLUXO
+    }
+
+    // Abaixo do limite de 999 parâmetros por instrução das versões antigas do SQLite
+    private static final int IDS_POR_REMOCAO = 500;
+
+    private final EstoqueDatabase db;
+    private final ProdutoDAO dao;
+    private final UpsertDeProdutos upsert;
+    private final CacheDeProdutos cache = CacheDeProdutos.getInstance();
+    private final SincronizacaoDAO sincronizacaoDAO;
+    private final ProdutoService service;
+    private final int tamanhoPagina;
+    private final LeitorDeProdutosEmFluxo leitorEmFluxo;
+
+    SincronizacaoIncremental(EstoqueDatabase db,
+                             ProdutoService service,
+                             int tamanhoPagina,
+                             LeitorDeProdutosEmFluxo leitorEmFluxo) {
+        this.db = db;
+        this.dao = Rastreamento.envolve(ProdutoDAO.class, db.getProdutoDAO());
+        this.upsert = new UpsertDeProdutos(db, IngestaoEmFluxo.getTamanhoDoLote());
+        this.sincronizacaoDAO = db.getSincronizacaoDAO();
+        this.service = service;
+        this.tamanhoPagina = tamanhoPagina;
+        this.leitorEmFluxo = leitorEmFluxo;
+    }
+
+    /*
+    As mudanças chegam por carga.entrega() e, ao final (com ou sem mudanças),
+    carga.termina() é chamado. Cada requisição e tarefa fica registrada na carga,
+    para que ela possa ser cancelada em qualquer etapa.
+     */
+    void sincroniza(Carga carga) {
+        carga.acompanha(new BaseAsyncTask<>(this::buscaPontoDePartida,
+                ponto -> {
+                    if (ponto.marca != null) {
+                        buscaMudancas(ponto.marca.getVersao(), carga);
+                    } else {
+                        buscaCatalogoCompleto(ponto, carga);
+                    }
+                }).rastreada("SincronizacaoIncremental.buscaVersao").executa(Pool.LEITURA));
+    }
+
+    /*
+    Uma carga interrompida continua com a versão do catálogo de quando começou. Sem ela
+    (marca gravada por uma versão anterior do app), não há como saber desde quando os
+    produtos já gravados podem estar desatualizados, e a carga recomeça do início.
+     */
+    private PontoDePartida buscaPontoDePartida() {
+        PontoDePartida ponto = new PontoDePartida();
+        ponto.marca = sincronizacaoDAO.busca(Sincronizacao.PRODUTO);
+        if (ponto.marca == null) {
+            ponto.retomada = sincronizacaoDAO.busca(Sincronizacao.PRODUTO_CARGA_COMPLETA);
+            if (ponto.retomada != null) {
+                ponto.versaoDaCarga = sincronizacaoDAO.busca(Sincronizacao.PRODUTO_VERSAO_DA_CARGA);
+            }
+        }
+        return ponto;
+    }
+
+    private void buscaCatalogoCompleto(PontoDePartida ponto, Carga carga) {
+        if (ponto.getModo() == ModoDeCargaCompleta.EM_FLUXO) {
+            new IngestaoEmFluxo(db, service, upsert, sincronizacaoDAO, cache, leitorEmFluxo).inicia(carga);
+        } else {
+            new SincronizacaoPaginada(db, service, upsert, sincronizacaoDAO, cache,
+                    tamanhoPagina, carga, ponto.getAPartirDe(), ponto.getVersaoDaCarga()).inicia();
+        }
+    }
+
+    private void buscaMudancas(long versao, Carga carga) {
+        carga.acompanha(TempoLimite.CONSULTA.aplicaEm(service.buscaMudancas(versao)))
+                .enqueue(new BaseCallback<>(new BaseCallback.RespostaCallback<MudancasProdutos>() {
+            @Override
+            public void quandoSucesso(MudancasProdutos mudancas) {
+                aplica(mudancas, carga);
+            }
+
+            @Override
+            public void quandoFalha(String erro) {
+                carga.falha(erro);
+            }
+
+            @Override
+            public void quandoNaoModificado() {
+                carga.termina();
+            }
+        }));
+    }
+
+    private void aplica(MudancasProdutos mudancas, Carga carga) {
+        carga.acompanha(new BaseAsyncTask<>(() -> {
+            UpsertDeProdutos.Resultado[] resultado = new UpsertDeProdutos.Resultado[1];
+            db.runInTransaction(() -> {
+                resultado[0] = upsert.grava(mudancas.getAlterados());
+                List<Long> removidos = mudancas.getRemovidos();
+                for (int inicio = 0; inicio < removidos.size(); inicio += IDS_POR_REMOCAO) {
+                    int fim = Math.min(inicio + IDS_POR_REMOCAO, removidos.size());
+                    dao.removePorIds(removidos.subList(inicio, fim));
+                }
+                sincronizacaoDAO.salva(new Sincronizacao(Sincronizacao.PRODUTO, mudancas.getVersao()));
+            });
+            MudancasAplicadas aplicadas = new MudancasAplicadas(resultado[0].getInseridos(),
+                    resultado[0].getAtualizados(), mudancas.getRemovidos());
+            cache.invalida(aplicadas);
+            return aplicadas;
+        }, aplicadas -> {
+            carga.entrega(aplicadas);
+            carga.termina();
+        }).rastreada("SincronizacaoIncremental.aplica").execute());
+    }
+
+    private static class PontoDePartida {
+
+        private Sincronizacao marca;
+        private Sincronizacao retomada;
+        private Sincronizacao versaoDaCarga;
+
+        ModoDeCargaCompleta getModo() {
+            return retomada != null ? ModoDeCargaCompleta.PAGINADA : ModoDeCargaCompleta.EM_FLUXO;
+        }
+
+        long getAPartirDe() {
+            if (versaoDaCarga == null) {
+                return SincronizacaoPaginada.INICIO_DO_CATALOGO;
+            }
+            return retomada.getVersao();
+        }
+
+        // Nula quando a carga recomeça do início: a versão vem com a primeira página
+        Long getVersaoDaCarga() {
+            return versaoDaCarga != null ? versaoDaCarga.getVersao() : null;
+        }
+    }
+}
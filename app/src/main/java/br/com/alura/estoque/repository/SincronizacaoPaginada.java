@@ -0,0 +1,166 @@
+package br.com.alura.estoque.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.database.EstoqueDatabase;
+import br.com.alura.estoque.database.UpsertDeProdutos;
+import br.com.alura.estoque.database.dao.SincronizacaoDAO;
+import br.com.alura.estoque.model.MudancasAplicadas;
+import br.com.alura.estoque.model.PaginaDeProdutos;
+import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.Sincronizacao;
+import br.com.alura.estoque.retrofit.TempoLimite;
+import br.com.alura.estoque.retrofit.callback.BaseCallback;
+import br.com.alura.estoque.retrofit.service.ProdutoService;
+
+/*
+Busca o catálogo da API página por página, salvando cada uma no banco e entregando à
+carga o que ela mudou (MudancasAplicadas) assim que é gravada. Dessa forma, o tempo até
+os primeiros produtos aparecerem não depende do tamanho do catálogo.
+
+Enquanto a página N está sendo gravada, a página N+1 já está sendo buscada.
+Para não acumular páginas em memória quando a rede é mais rápida que o banco,
+a busca da página N+2 só começa depois que a gravação da página N termina.
+
+Ao gravar a última página, guarda como marca d'água a versão do catálogo de quando a
+carga começou (a da primeira página), para que as próximas sincronizações peçam apenas o
+que mudou desde então (ver SincronizacaoIncremental). A maior versão entre os produtos
+recebidos não serve: as páginas são montadas em momentos diferentes, e um produto de uma
+página já recebida que seja alterado no meio da carga pode ganhar uma versão menor que
+ela, o que faria a alteração ficar de fora de todas as sincronizações seguintes.
+
+Cada página também remove os produtos locais que estão no intervalo de ids coberto por
+ela (do cursor com que foi pedida até o seu último id, ou até o fim, na última) e que não
+vieram nela: foram removidos na API (ver UpsertDeProdutos.removeAusentes()).
+
+Junto com cada página, na mesma transação, são gravados o id do último produto dela
+(Sincronizacao.PRODUTO_CARGA_COMPLETA) e a versão do início da carga
+(Sincronizacao.PRODUTO_VERSAO_DA_CARGA). Se a carga for interrompida, a próxima continua
+a partir desse id e, ao terminar, guarda essa mesma versão.
+
+Todos os métodos são chamados na UI Thread (onResponse() e quandoFinalizada()),
+então o estado abaixo não precisa de sincronização.
+ */
+class SincronizacaoPaginada {
+
+    static final long INICIO_DO_CATALOGO = 0;
+
+    private static final int MAXIMO_PAGINAS_AGUARDANDO_GRAVACAO = 1;
+
+    private final EstoqueDatabase db;
+    private final ProdutoService service;
+    private final UpsertDeProdutos upsert;
+    private final SincronizacaoDAO sincronizacaoDAO;
+    private final CacheDeProdutos cache;
+    private final int tamanhoPagina;
+    private final Carga carga;
+    private final long aPartirDe;
+
+    private int paginasAguardandoGravacao = 0;
+    private Long proximaPaginaAguardando = null;
+    // Nula até a primeira página chegar, quando a carga não é uma continuação
+    private Long versaoDaCarga;
+
+    SincronizacaoPaginada(EstoqueDatabase db,
+                          ProdutoService service,
+                          UpsertDeProdutos upsert,
+                          SincronizacaoDAO sincronizacaoDAO,
+                          CacheDeProdutos cache,
+                          int tamanhoPagina,
+                          Carga carga,
+                          long aPartirDe,
+                          Long versaoDaCarga) {
+        this.db = db;
+        this.service = service;
+        this.upsert = upsert;
+        this.sincronizacaoDAO = sincronizacaoDAO;
+        this.cache = cache;
+        this.tamanhoPagina = tamanhoPagina;
+        this.carga = carga;
+        this.aPartirDe = aPartirDe;
+        this.versaoDaCarga = versaoDaCarga;
+    }
+
+    void inicia() {
+        buscaPagina(aPartirDe);
+    }
+
+    /*
+    As gravações não são canceladas: uma página já recebida é gravada mesmo que a carga
+    seja cancelada. Depois do cancelamento, apenas nenhuma página nova é pedida.
+     */
+    private void buscaPagina(long aPartirDe) {
+        if (carga.isCancelada()) {
+            return;
+        }
+        carga.acompanha(TempoLimite.CONSULTA.aplicaEm(service.buscaPagina(aPartirDe, tamanhoPagina)))
+                .enqueue(new BaseCallback<>(new BaseCallback.RespostaCallback<PaginaDeProdutos>() {
+                    @Override
+                    public void quandoSucesso(PaginaDeProdutos pagina) {
+                        recebePagina(aPartirDe, pagina);
+                    }
+
+                    @Override
+                    public void quandoFalha(String erro) {
+                        carga.falha(erro);
+                    }
+                }));
+    }
+
+    private void recebePagina(long pedidaAPartirDe, PaginaDeProdutos pagina) {
+        if (versaoDaCarga == null) {
+            versaoDaCarga = pagina.getVersao();
+        }
+        List<Produto> produtos = pagina.getProdutos();
+        boolean ultima = produtos.size() < tamanhoPagina;
+        if (!ultima) {
+            long aPartirDe = produtos.get(produtos.size() - 1).getId();
+            if (paginasAguardandoGravacao < MAXIMO_PAGINAS_AGUARDANDO_GRAVACAO) {
+                buscaPagina(aPartirDe);
+            } else {
+                proximaPaginaAguardando = aPartirDe;
+            }
+        }
+        gravaPagina(pedidaAPartirDe, produtos, ultima);
+    }
+
+    private void gravaPagina(long pedidaAPartirDe, List<Produto> pagina, boolean ultima) {
+        paginasAguardandoGravacao++;
+        long versao = versaoDaCarga;
+        new BaseAsyncTask<>(() -> {
+            UpsertDeProdutos.Resultado[] resultado = new UpsertDeProdutos.Resultado[1];
+            List<Long> removidos = new ArrayList<>();
+            db.runInTransaction(() -> {
+                resultado[0] = upsert.grava(pagina);
+                long ate = ultima ? Long.MAX_VALUE : pagina.get(pagina.size() - 1).getId();
+                removidos.addAll(upsert.removeAusentes(pedidaAPartirDe, ate, pagina));
+                if (ultima) {
+                    sincronizacaoDAO.salva(new Sincronizacao(Sincronizacao.PRODUTO, versao));
+                    sincronizacaoDAO.remove(Sincronizacao.PRODUTO_CARGA_COMPLETA);
+                    sincronizacaoDAO.remove(Sincronizacao.PRODUTO_VERSAO_DA_CARGA);
+                } else {
+                    sincronizacaoDAO.salva(new Sincronizacao(Sincronizacao.PRODUTO_CARGA_COMPLETA,
+                            pagina.get(pagina.size() - 1).getId()));
+                    sincronizacaoDAO.salva(new Sincronizacao(Sincronizacao.PRODUTO_VERSAO_DA_CARGA, versao));
+                }
+            });
+            MudancasAplicadas mudancas = new MudancasAplicadas(resultado[0].getInseridos(),
+                    resultado[0].getAtualizados(), removidos);
+            cache.invalida(mudancas);
+            return mudancas;
+        }, mudancas -> {
+            paginasAguardandoGravacao--;
+            if (proximaPaginaAguardando != null) {
+                long aPartirDe = proximaPaginaAguardando;
+                proximaPaginaAguardando = null;
+                buscaPagina(aPartirDe);
+            }
+            carga.entrega(mudancas);
+            if (ultima) {
+                carga.termina();
+            }
+        }).execute();
+    }
+}
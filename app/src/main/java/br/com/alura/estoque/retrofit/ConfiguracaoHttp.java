@@ -0,0 +1,77 @@
+package br.com.alura.estoque.retrofit;
+
+import java.io.File;
+
+/*
+Parâmetros do cliente HTTP compartilhado por todo o app.
+
+Como o cliente é criado uma única vez, a configuração precisa ser informada
+em EstoqueRetrofit.configura() antes do primeiro uso de EstoqueRetrofit.getInstance().
+ */
+public class ConfiguracaoHttp {
+
+    private static final int MAXIMO_CONEXOES_OCIOSAS = 5;
+    private static final long MINUTOS_CONEXAO_OCIOSA = 5;
+    private static final int MAXIMO_REQUISICOES = 16;
+    private static final int MAXIMO_REQUISICOES_POR_HOST = 6;
+    private static final long TAMANHO_MAXIMO_CACHE_EM_BYTES = 10L * 1024 * 1024;
+
+    private final int maximoConexoesOciosas;
+    private final long minutosConexaoOciosa;
+    private final int maximoRequisicoes;
+    private final int maximoRequisicoesPorHost;
+    // Sem diretório (null), as respostas não são guardadas em disco
+    private final File diretorioCache;
+    private final long tamanhoMaximoCacheEmBytes;
+
+    public ConfiguracaoHttp(int maximoConexoesOciosas,
+                            long minutosConexaoOciosa,
+                            int maximoRequisicoes,
+                            int maximoRequisicoesPorHost,
+                            File diretorioCache,
+                            long tamanhoMaximoCacheEmBytes) {
+        this.maximoConexoesOciosas = maximoConexoesOciosas;
+        this.minutosConexaoOciosa = minutosConexaoOciosa;
+        this.maximoRequisicoes = maximoRequisicoes;
+        this.maximoRequisicoesPorHost = maximoRequisicoesPorHost;
+        this.diretorioCache = diretorioCache;
+        this.tamanhoMaximoCacheEmBytes = tamanhoMaximoCacheEmBytes;
+    }
+
+    public static ConfiguracaoHttp padrao() {
+        return padrao(null);
+    }
+
+    public static ConfiguracaoHttp padrao(File diretorioCache) {
+        return new ConfiguracaoHttp(MAXIMO_CONEXOES_OCIOSAS,
+                MINUTOS_CONEXAO_OCIOSA,
+                MAXIMO_REQUISICOES,
+                MAXIMO_REQUISICOES_POR_HOST,
+                diretorioCache,
+                TAMANHO_MAXIMO_CACHE_EM_BYTES);
+    }
+
+    public int getMaximoConexoesOciosas() {
+        return maximoConexoesOciosas;
+    }
+
+    public long getMinutosConexaoOciosa() {
+        return minutosConexaoOciosa;
+    }
+
+    public int getMaximoRequisicoes() {
+        return maximoRequisicoes;
+    }
+
+    public int getMaximoRequisicoesPorHost() {
+        return maximoRequisicoesPorHost;
+    }
+
+    public File getDiretorioCache() {
+        return diretorioCache;
+    }
+
+    public long getTamanhoMaximoCacheEmBytes() {
+        return tamanhoMaximoCacheEmBytes;
+    }
+}
@@ -1,9 +1,32 @@
 package br.com.alura.estoque.retrofit;
 
+import com.google.gson.Gson;
+
 import org.jetbrains.annotations.NotNull;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import br.com.alura.estoque.retrofit.metrica.MetricasDeCache;
+import br.com.alura.estoque.retrofit.metrica.MedicaoDeConversao;
+import br.com.alura.estoque.retrofit.metrica.MetricasDeConexao;
+import br.com.alura.estoque.retrofit.metrica.MetricasDeRequisicoes;
+import br.com.alura.estoque.retrofit.metrica.MetricasDeResiliencia;
+import br.com.alura.estoque.retrofit.metrica.TemposDaRequisicao;
+import br.com.alura.estoque.retrofit.resiliencia.DisjuntorInterceptor;
+import br.com.alura.estoque.retrofit.resiliencia.PoliticaDeRetentativa;
+import br.com.alura.estoque.retrofit.resiliencia.Retentativa;
 import br.com.alura.estoque.retrofit.service.ProdutoService;
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
@@ -21,15 +44,32 @@ EstoqueDatabase com a configuração geral da instância.
 O Retrofit é uma camada acima de okhttp, que é o User-Agent exibido na aba Request,
 que realmente faz a execução, a requisição web.
 
+Antes, cada ProdutoRepository criava o seu próprio EstoqueRetrofit, ou seja, o seu próprio
+OkHttpClient com pool de conexões, dispatcher e conversor Gson. Assim, as conexões keep-alive
+nunca eram reaproveitadas entre as telas. Agora existe uma única instância por processo.
  */
 public class EstoqueRetrofit {
 
     private static final String URL_BASE = "http://192.168.0.105:8080/";
+
+    private static volatile EstoqueRetrofit instancia;
+    private static ConfiguracaoHttp configuracao = ConfiguracaoHttp.padrao();
+
+    private final OkHttpClient client;
+    private final Gson gson = new Gson();
     private final ProdutoService produtoService;
+    private final MetricasDeConexao metricasDeConexao = new MetricasDeConexao();
+    private final MetricasDeCache metricasDeCache = new MetricasDeCache();
+    private final MetricasDeResiliencia metricasDeResiliencia = new MetricasDeResiliencia();
+    private final MetricasDeRequisicoes metricasDeRequisicoes = new MetricasDeRequisicoes();
+    // O Gson continua convertendo; a MedicaoDeConversao só mede quanto tempo ele leva
+    private final MedicaoDeConversao medicaoDeConversao =
+            new MedicaoDeConversao(GsonConverterFactory.create(gson), metricasDeRequisicoes);
+    private final PoliticaDeRetentativa politicaDeRetentativa = PoliticaDeRetentativa.padrao();
 
-    public EstoqueRetrofit() {
+    private EstoqueRetrofit() {
 
-        OkHttpClient client = configuraClient();
+        client = configuraClient();
 
         /*
         Criando uma instância do Retrofit utilizando um endereço URL raiz (Base URL)
@@ -37,7 +77,7 @@ public class EstoqueRetrofit {
         Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl(URL_BASE)
                 .client(client) // Logging Interceptor
-                .addConverterFactory(GsonConverterFactory.create())
+                .addConverterFactory(medicaoDeConversao)
                 .build();
 
         /*
@@ -48,6 +88,33 @@ public class EstoqueRetrofit {
         produtoService = retrofit.create(ProdutoService.class);
     }
 
+    public static EstoqueRetrofit getInstance() {
+        EstoqueRetrofit retrofit = instancia;
+        if (retrofit == null) {
+            synchronized (EstoqueRetrofit.class) {
+                retrofit = instancia;
+                if (retrofit == null) {
+                    retrofit = new EstoqueRetrofit();
+                    instancia = retrofit;
+                }
+            }
+        }
+        return retrofit;
+    }
+
+    /*
+    Deve ser chamado antes do primeiro getInstance(), já que depois disso
+    o cliente já foi criado com a configuração anterior.
+     */
+    public static void configura(ConfiguracaoHttp novaConfiguracao) {
+        synchronized (EstoqueRetrofit.class) {
+            if (instancia != null) {
+                throw new IllegalStateException("O cliente HTTP já foi criado");
+            }
+            configuracao = novaConfiguracao;
+        }
+    }
+
     @NotNull
     private OkHttpClient configuraClient() {
 
@@ -72,8 +139,110 @@ public class EstoqueRetrofit {
         em logcat.
          */
         HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-        logging.setLevel(HttpLoggingInterceptor.Level.BODY);
-        return new OkHttpClient.Builder().addInterceptor(logging).build();
+        /*
+        No nível BODY o interceptor lê o corpo inteiro para exibi-lo, o que anularia
+        a leitura em fluxo do catálogo (ver LeitorDeProdutosEmFluxo). Por isso
+        exibimos apenas a linha da requisição e os cabeçalhos.
+         */
+        logging.setLevel(HttpLoggingInterceptor.Level.HEADERS);
+
+        /*
+        O dispatcher limita quantas requisições rodam ao mesmo tempo, no total e por host,
+        e o pool mantém as conexões ociosas abertas para serem reaproveitadas.
+         */
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(configuracao.getMaximoRequisicoes());
+        dispatcher.setMaxRequestsPerHost(configuracao.getMaximoRequisicoesPorHost());
+        ConnectionPool pool = new ConnectionPool(
+                configuracao.getMaximoConexoesOciosas(),
+                configuracao.getMinutosConexaoOciosa(),
+                TimeUnit.MINUTES);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                // Primeiro, para que um disjuntor aberto recuse a requisição antes de tudo
+                .addInterceptor(new DisjuntorInterceptor(metricasDeResiliencia))
+                .addInterceptor(new NaoModificadoInterceptor(metricasDeCache))
+                // Indica à conversão, feita em seguida na mesma Thread, de qual endpoint é a resposta
+                .addInterceptor(medicaoDeConversao.interceptor())
+                .addInterceptor(logging)
+                .dispatcher(dispatcher)
+                .connectionPool(pool)
+                /*
+                HTTP/2 é negociado via ALPN durante o TLS, então só é usado quando o servidor
+                é acessado por HTTPS e o oferece. Em HTTP simples continuamos no HTTP/1.1.
+                 */
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                /*
+                O log acima é só texto no logcat. Cada requisição também tem as etapas
+                (DNS, conexão, TLS, envio, primeiro byte, leitura) cronometradas e somadas
+                aos histogramas do endpoint, além das contagens de conexões.
+                 */
+                .eventListenerFactory(TemposDaRequisicao.fabrica(metricasDeRequisicoes, metricasDeConexao));
+
+        /*
+        Com o cache em disco, o OkHttp guarda as respostas com ETag/Last-Modified e, na
+        próxima busca, envia If-None-Match/If-Modified-Since. Se nada mudou, o servidor
+        responde 304 sem corpo e o catálogo não é transferido de novo.
+         */
+        if (configuracao.getDiretorioCache() != null) {
+            builder.cache(new Cache(configuracao.getDiretorioCache(),
+                    configuracao.getTamanhoMaximoCacheEmBytes()));
+        }
+        return builder.build();
+    }
+
+    /*
+    Abre uma conexão com o servidor antes da primeira busca, deixando-a no pool
+    para que a primeira requisição da tela não pague o DNS e o handshake.
+     */
+    public void preAquece() {
+        Request request = new Request.Builder()
+                .url(URL_BASE)
+                .head()
+                .build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                response.close();
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+            }
+        });
+    }
+
+    public MetricasDeConexao getMetricasDeConexao() {
+        return metricasDeConexao;
+    }
+
+    public MetricasDeCache getMetricasDeCache() {
+        return metricasDeCache;
+    }
+
+    public MetricasDeRequisicoes getMetricasDeRequisicoes() {
+        return metricasDeRequisicoes;
+    }
+
+    public MetricasDeResiliencia getMetricasDeResiliencia() {
+        return metricasDeResiliencia;
+    }
+
+    public PoliticaDeRetentativa getPoliticaDeRetentativa() {
+        return politicaDeRetentativa;
+    }
+
+    // Uma para cada Callback, já que ela conta as tentativas de uma requisição
+    public Retentativa novaRetentativa() {
+        return new Retentativa(politicaDeRetentativa, metricasDeResiliencia);
+    }
+
+    /*
+    O mesmo Gson usado pelo Retrofit, para que a leitura em fluxo converta os produtos
+    exatamente como as demais requisições.
+     */
+    public LeitorDeProdutosEmFluxo criaLeitorDeProdutosEmFluxo(int tamanhoDoLote) {
+        return new LeitorDeProdutosEmFluxo(gson, tamanhoDoLote);
     }
 
     public ProdutoService getProdutoService() {
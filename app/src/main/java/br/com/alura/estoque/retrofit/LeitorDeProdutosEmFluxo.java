@@ -0,0 +1,60 @@
+package br.com.alura.estoque.retrofit;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import br.com.alura.estoque.model.Produto;
+import okhttp3.ResponseBody;
+
+/*
+Com o GsonConverterFactory, a lista inteira de produtos é montada em memória antes de
+chegar ao repositório. Este leitor percorre o array JSON do corpo da resposta item a item,
+conforme os bytes chegam da rede, e entrega os produtos em lotes de tamanho fixo.
+
+Assim, a memória usada depende do tamanho do lote, e não do tamanho do catálogo.
+O corpo precisa vir de um método anotado com @Streaming, para que o Retrofit não o
+carregue inteiro antes de devolvê-lo.
+ */
+public class LeitorDeProdutosEmFluxo {
+
+    private final Gson gson;
+    private final int tamanhoDoLote;
+
+    public LeitorDeProdutosEmFluxo(Gson gson, int tamanhoDoLote) {
+        this.gson = gson;
+        this.tamanhoDoLote = tamanhoDoLote;
+    }
+
+    /*
+    Devolve a quantidade total de produtos lidos. O lote entregue ao listener não é
+    reaproveitado, então pode ser guardado ou enviado para outra Thread.
+     */
+    public int le(ResponseBody corpo, LoteLidoListener listener) throws IOException {
+        int total = 0;
+        try (JsonReader leitor = gson.newJsonReader(corpo.charStream())) {
+            List<Produto> lote = new ArrayList<>(tamanhoDoLote);
+            leitor.beginArray();
+            while (leitor.hasNext()) {
+                lote.add(gson.fromJson(leitor, Produto.class));
+                total++;
+                if (lote.size() == tamanhoDoLote) {
+                    listener.quandoLido(lote);
+                    lote = new ArrayList<>(tamanhoDoLote);
+                }
+            }
+            leitor.endArray();
+            if (!lote.isEmpty()) {
+                listener.quandoLido(lote);
+            }
+        }
+        return total;
+    }
+
+    public interface LoteLidoListener {
+        void quandoLido(List<Produto> lote);
+    }
+}
@@ -0,0 +1,71 @@
+package br.com.alura.estoque.retrofit;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+import br.com.alura.estoque.retrofit.metrica.MetricasDeCache;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/*
+Quando o servidor responde 304, o cache do OkHttp devolve a resposta guardada como se
+fosse um 200, e o Retrofit converteria o catálogo inteiro com o Gson de novo, só para
+gravarmos no banco exatamente os mesmos produtos.
+
+Nas requisições marcadas com o cabeçalho CURTO_CIRCUITO (ver ProdutoService), este
+interceptor devolve um 304 sem corpo no lugar da resposta guardada. Assim o Retrofit não
+faz a conversão e o BaseCallback avisa quandoNaoModificado(), sem gravar nada.
+O cabeçalho é removido antes de a requisição sair do app.
+ */
+public class NaoModificadoInterceptor implements Interceptor {
+
+    private static final String CABECALHO_CURTO_CIRCUITO = "Estoque-Curto-Circuito-304";
+    // Para ser usado com @Headers nos métodos do Service
+    public static final String CURTO_CIRCUITO = CABECALHO_CURTO_CIRCUITO + ": true";
+
+    private final MetricasDeCache metricas;
+
+    NaoModificadoInterceptor(MetricasDeCache metricas) {
+        this.metricas = metricas;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean curtoCircuito = request.header(CABECALHO_CURTO_CIRCUITO) != null;
+        if (curtoCircuito) {
+            request = request.newBuilder()
+                    .removeHeader(CABECALHO_CURTO_CIRCUITO)
+                    .build();
+        }
+
+        Response response = chain.proceed(request);
+        metricas.registra(response);
+        if (!curtoCircuito || !naoMudou(response)) {
+            return response;
+        }
+        response.close();
+        return response.newBuilder()
+                .code(HttpURLConnection.HTTP_NOT_MODIFIED)
+                .message("Not Modified")
+                .body(ResponseBody.create(new byte[0], null))
+                .build();
+    }
+
+    /*
+    Tanto a revalidação (304 da rede) quanto a resposta servida só do cache indicam
+    que o conteúdo é o mesmo que já foi processado na última busca.
+     */
+    private boolean naoMudou(Response response) {
+        Response respostaDaRede = response.networkResponse();
+        if (respostaDaRede == null) {
+            return response.cacheResponse() != null;
+        }
+        return respostaDaRede.code() == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+}
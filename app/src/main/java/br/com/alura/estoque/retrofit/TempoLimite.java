@@ -0,0 +1,31 @@
+package br.com.alura.estoque.retrofit;
+
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.Call;
+
+/*
+Tempo máximo de uma requisição inteira: conexão, envio, espera e leitura do corpo.
+
+Os tempos do OkHttpClient valem para cada etapa separadamente, então uma resposta que
+chega devagar, mas sem parar, nunca terminaria. Cada tipo de requisição tem o seu limite:
+uma página ou as mudanças desde a última sincronização são pequenas; o catálogo em fluxo
+pode ter centenas de milhares de produtos.
+ */
+public enum TempoLimite {
+
+    CONSULTA(15, TimeUnit.SECONDS),
+    ESCRITA(30, TimeUnit.SECONDS),
+    CATALOGO_EM_FLUXO(5, TimeUnit.MINUTES);
+
+    private final long millis;
+
+    TempoLimite(long duracao, TimeUnit unidade) {
+        this.millis = unidade.toMillis(duracao);
+    }
+
+    public <T> Call<T> aplicaEm(Call<T> call) {
+        call.timeout().timeout(millis, TimeUnit.MILLISECONDS);
+        return call;
+    }
+}
@@ -1,5 +1,10 @@
 package br.com.alura.estoque.retrofit.callback;
 
+import java.net.HttpURLConnection;
+
+import br.com.alura.estoque.retrofit.EstoqueRetrofit;
+import br.com.alura.estoque.retrofit.resiliencia.CircuitoAbertoException;
+import br.com.alura.estoque.retrofit.resiliencia.Retentativa;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -24,25 +29,48 @@ nulo, para então passar à ação desejada.
 
 BaseCallback<T> =  Recebe um tipo genérico
 Callback<T> = retorna um tipo genérico
+
+Antes, qualquer falha passageira virava na hora uma mensagem de erro, e o usuário
+tentava de novo na mão. Agora as falhas transitórias (rede, 408, 429, 5xx) das
+requisições idempotentes são repetidas pela Retentativa, com espera crescente, e só
+chegam ao quandoFalha() depois da última tentativa.
+
+Uma requisição cancelada (a tela que a pediu foi destruída, por exemplo) não entrega
+nada: nem resultado, nem a falha que o Retrofit gera para o cancelamento. Isso vale
+também para uma repetição que já estava em andamento quando a original foi cancelada.
  */
 public class BaseCallback<T> implements Callback<T> {
 
     private final RespostaCallback<T> callback;
+    private final Retentativa retentativa;
 
     public BaseCallback(RespostaCallback<T> callback) {
+        this(callback, EstoqueRetrofit.getInstance().novaRetentativa());
+    }
+
+    public BaseCallback(RespostaCallback<T> callback, Retentativa retentativa) {
         this.callback = callback;
+        this.retentativa = retentativa;
     }
 
 
     @Override
     @EverythingIsNonNull
     public void onResponse(Call<T> call, Response<T> response) {
+        if (retentativa.isCancelada(call)) {
+            return;
+        }
         if(response.isSuccessful()) {
             T resultado = response.body();
             if(resultado != null) {
                 callback.quandoSucesso(resultado);
             }
-        } else {
+        } else if(response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            // Nada mudou desde a última resposta guardada em cache (ver NaoModificadoInterceptor)
+            callback.quandoNaoModificado();
+        } else if(response.code() == HttpURLConnection.HTTP_NOT_FOUND) {
+            callback.quandoNaoEncontrado();
+        } else if (!retentativa.repeteSeTransitoria(call, response, this)) {
             callback.quandoFalha("Resposta não esperada do servidor");
         }
     }
@@ -50,7 +78,17 @@ public class BaseCallback<T> implements Callback<T> {
     @Override
     @EverythingIsNonNull
     public void onFailure(Call<T> call, Throwable t) {
-        callback.quandoFalha("Erro na comunicação. Mensagem: " + t.getMessage());
+        if (retentativa.isCancelada(call) || retentativa.repeteSeTransitoria(call, t, this)) {
+            return;
+        }
+        callback.quandoFalha(mensagemDe(t));
+    }
+
+    static String mensagemDe(Throwable t) {
+        if (t instanceof CircuitoAbertoException) {
+            return t.getMessage();
+        }
+        return "Erro na comunicação. Mensagem: " + t.getMessage();
     }
 
     /*
@@ -64,5 +102,20 @@ public class BaseCallback<T> implements Callback<T> {
     public interface RespostaCallback<T> {
         void quandoSucesso(T resultado);
         void quandoFalha(String erro);
+
+        /*
+        Só é chamado nas requisições com curto-circuito do 304. Por padrão não faz nada,
+        já que não há nada novo para gravar ou mostrar.
+         */
+        default void quandoNaoModificado() {
+        }
+
+        /*
+        O recurso pedido não existe na API (404). Por padrão é uma falha como as outras;
+        só quem busca um produto pelo id precisa distinguir esse caso.
+         */
+        default void quandoNaoEncontrado() {
+            quandoFalha("Resposta não esperada do servidor");
+        }
     }
 }
@@ -1,5 +1,7 @@
 package br.com.alura.estoque.retrofit.callback;
 
+import br.com.alura.estoque.retrofit.EstoqueRetrofit;
+import br.com.alura.estoque.retrofit.resiliencia.Retentativa;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -10,21 +12,33 @@ import retrofit2.internal.EverythingIsNonNull;
  * retorno. Tanto que a implementação de Callback recebe um Void.
  *
  * Até o momento, somente o método remove() utiliza essa Callback
+ *
+ * As falhas transitórias são repetidas e as requisições canceladas não entregam nada,
+ * da mesma forma que no {@link BaseCallback}.
  */
 public class CallbackSemRetorno implements Callback<Void> {
 
     private final RespostaCallback callback;
+    private final Retentativa retentativa;
 
     public CallbackSemRetorno(RespostaCallback callback) {
+        this(callback, EstoqueRetrofit.getInstance().novaRetentativa());
+    }
+
+    public CallbackSemRetorno(RespostaCallback callback, Retentativa retentativa) {
         this.callback = callback;
+        this.retentativa = retentativa;
     }
 
     @Override
     @EverythingIsNonNull
     public void onResponse(Call<Void> call, Response<Void> response) {
+        if (retentativa.isCancelada(call)) {
+            return;
+        }
         if(response.isSuccessful()){
             callback.quandoSucesso();
-        } else {
+        } else if (!retentativa.repeteSeTransitoria(call, response, this)) {
             callback.quandoFalha("Resposta não esperada do servidor");
         }
     }
@@ -32,7 +46,10 @@ public class CallbackSemRetorno implements Callback<Void> {
     @Override
     @EverythingIsNonNull
     public void onFailure(Call<Void> call, Throwable t) {
-        callback.quandoFalha("Erro na comunicação. Mensagem: " + t.getMessage());
+        if (retentativa.isCancelada(call) || retentativa.repeteSeTransitoria(call, t, this)) {
+            return;
+        }
+        callback.quandoFalha(BaseCallback.mensagemDe(t));
     }
 
     public interface RespostaCallback {
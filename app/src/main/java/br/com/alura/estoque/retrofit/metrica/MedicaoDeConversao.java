@@ -0,0 +1,80 @@
+package br.com.alura.estoque.retrofit.metrica;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.Interceptor;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/*
+Mede o tempo de conversão das respostas (o Gson) separado do tempo de leitura do corpo.
+
+O Gson lê o corpo enquanto converte, então as duas coisas ficariam misturadas. Por isso o
+corpo é lido inteiro antes (o que conta como LEITURA_DO_CORPO na TemposDaRequisicao) e só
+então convertido. As respostas convertidas são pequenas (uma página, as mudanças, um
+produto); o catálogo em fluxo chega como ResponseBody e não passa por aqui.
+
+O Retrofit pede um conversor para cada método do serviço, uma única vez, e informa só as
+anotações dele, que podem ser iguais em dois métodos. O endpoint vem então da própria
+requisição (a tag Invocation), que o conversor não recebe: o interceptor() a guarda na
+Thread que vai converter. O OkHttp entrega a resposta ao Retrofit na mesma Thread em que
+os interceptors rodaram (a do enqueue() ou a que chamou execute()), e o Retrofit converte
+ali mesmo, antes de chamar o Callback.
+ */
+public class MedicaoDeConversao extends Converter.Factory {
+
+    private final Converter.Factory conversor;
+    private final MetricasDeRequisicoes metricas;
+    private final ThreadLocal<String> endpointDaResposta = new ThreadLocal<>();
+
+    public MedicaoDeConversao(Converter.Factory conversor, MetricasDeRequisicoes metricas) {
+        this.conversor = conversor;
+        this.metricas = metricas;
+    }
+
+    // Precisa estar no OkHttpClient usado pelo mesmo Retrofit que recebe esta fábrica
+    public Interceptor interceptor() {
+        return chain -> {
+            Response resposta = chain.proceed(chain.request());
+            endpointDaResposta.set(TemposDaRequisicao.endpointDe(chain.request()));
+            return resposta;
+        };
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                            Retrofit retrofit) {
+        Converter<ResponseBody, ?> delegado = conversor.responseBodyConverter(type, annotations, retrofit);
+        if (delegado == null) {
+            return null;
+        }
+        return (Converter<ResponseBody, Object>) corpo -> {
+            String endpoint = endpointDaResposta();
+            corpo.source().request(Long.MAX_VALUE);
+            long inicio = System.nanoTime();
+            try {
+                return delegado.convert(corpo);
+            } finally {
+                metricas.registra(endpoint, MetricasDeRequisicoes.Etapa.CONVERSAO,
+                        System.nanoTime() - inicio);
+            }
+        };
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations,
+                                                          Annotation[] methodAnnotations,
+                                                          Retrofit retrofit) {
+        return conversor.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+    }
+
+    private String endpointDaResposta() {
+        String endpoint = endpointDaResposta.get();
+        endpointDaResposta.remove();
+        return endpoint != null ? endpoint : "desconhecido";
+    }
+}
@@ -0,0 +1,54 @@
+package br.com.alura.estoque.retrofit.metrica;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Response;
+
+/*
+Classifica cada resposta GET de acordo com o papel do cache em disco:
+- acerto: servida direto do cache, sem ir à rede;
+- revalidação: o servidor respondeu 304 e o corpo veio do cache;
+- falha: o corpo veio da rede, seja por não estar no cache ou por ter mudado.
+ */
+public class MetricasDeCache {
+
+    private final AtomicLong acertos = new AtomicLong();
+    private final AtomicLong revalidacoes = new AtomicLong();
+    private final AtomicLong falhas = new AtomicLong();
+
+    public void registra(Response response) {
+        if (!"GET".equals(response.request().method())) {
+            return;
+        }
+        Response respostaDaRede = response.networkResponse();
+        if (respostaDaRede == null) {
+            if (response.cacheResponse() != null) {
+                acertos.incrementAndGet();
+            }
+        } else if (respostaDaRede.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            revalidacoes.incrementAndGet();
+        } else {
+            falhas.incrementAndGet();
+        }
+    }
+
+    public long getAcertos() {
+        return acertos.get();
+    }
+
+    public long getRevalidacoes() {
+        return revalidacoes.get();
+    }
+
+    public long getFalhas() {
+        return falhas.get();
+    }
+
+    @Override
+    public String toString() {
+        return "cache - acertos: " + getAcertos()
+                + " | revalidações: " + getRevalidacoes()
+                + " | falhas: " + getFalhas();
+    }
+}
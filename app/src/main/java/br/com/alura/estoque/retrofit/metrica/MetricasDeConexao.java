@@ -0,0 +1,48 @@
+package br.com.alura.estoque.retrofit.metrica;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+
+/*
+Conta quantas conexões foram abertas e quantas foram reaproveitadas do pool do OkHttp.
+
+Toda chamada adquire uma conexão (connectionAcquired), mas só as conexões novas passam
+pelo handshake (connectEnd). A diferença entre as duas contagens é a quantidade de
+chamadas que reaproveitaram uma conexão keep-alive.
+ */
+public class MetricasDeConexao extends EventListener {
+
+    private final AtomicLong conexoesAdquiridas = new AtomicLong();
+    private final AtomicLong conexoesNovas = new AtomicLong();
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress,
+                           Proxy proxy, Protocol protocol) {
+        conexoesNovas.incrementAndGet();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        conexoesAdquiridas.incrementAndGet();
+    }
+
+    public long getConexoesNovas() {
+        return conexoesNovas.get();
+    }
+
+    public long getConexoesReutilizadas() {
+        return Math.max(0, conexoesAdquiridas.get() - conexoesNovas.get());
+    }
+
+    @Override
+    public String toString() {
+        return "conexões novas: " + getConexoesNovas()
+                + " | reutilizadas: " + getConexoesReutilizadas();
+    }
+}
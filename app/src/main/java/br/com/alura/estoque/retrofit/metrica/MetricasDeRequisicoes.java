@@ -0,0 +1,97 @@
+package br.com.alura.estoque.retrofit.metrica;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.alura.estoque.metrica.Histograma;
+
+/*
+Quanto tempo cada endpoint leva em cada etapa da requisição, em histogramas (p50/p95/p99).
+
+O endpoint é o método do ProdutoService que criou a requisição, como no DisjuntorInterceptor,
+então a busca de uma página e o catálogo em fluxo não se misturam, mesmo sendo o mesmo
+GET produto. As etapas são medidas pela TemposDaRequisicao e pela MedicaoDeConversao.
+
+Tudo fica em memória, desde a abertura do app; despeja() devolve o texto para ser
+exibido ou gravado num relatório.
+ */
+public class MetricasDeRequisicoes {
+
+    public enum Etapa {
+        // Só acontecem quando uma conexão nova é aberta; as reaproveitadas do pool não passam por elas
+        DNS,
+        CONEXAO, // TCP e TLS, do connectStart ao connectEnd
+        TLS,
+        ENVIO, // cabeçalhos e corpo da requisição
+        PRIMEIRO_BYTE, // do fim do envio até os cabeçalhos da resposta começarem a chegar
+        LEITURA_DO_CORPO,
+        CONVERSAO, // Gson, com o corpo já lido
+        TOTAL
+    }
+
+    private final ConcurrentHashMap<String, Map<Etapa, Histograma>> endpoints = new ConcurrentHashMap<>();
+    private final AtomicLong falhas = new AtomicLong();
+
+    public void registra(String endpoint, Etapa etapa, long duracaoNanos) {
+        Histograma histograma = histogramasDo(endpoint).get(etapa);
+        histograma.registraNanos(duracaoNanos);
+    }
+
+    public void registraFalha() {
+        falhas.incrementAndGet();
+    }
+
+    public long getFalhas() {
+        return falhas.get();
+    }
+
+    // Devolve null se o endpoint ainda não foi chamado
+    public Histograma getHistograma(String endpoint, Etapa etapa) {
+        Map<Etapa, Histograma> histogramas = endpoints.get(endpoint);
+        return histogramas != null ? histogramas.get(etapa) : null;
+    }
+
+    public String despeja() {
+        List<String> nomes = new ArrayList<>(endpoints.keySet());
+        Collections.sort(nomes);
+        StringBuilder texto = new StringBuilder("requisições - falhas: ").append(getFalhas());
+        for (String nome : nomes) {
+            texto.append('\n').append(nome);
+            for (Map.Entry<Etapa, Histograma> etapa : endpoints.get(nome).entrySet()) {
+                if (etapa.getValue().getContagem() > 0) {
+                    texto.append("\n  ").append(etapa.getKey()).append(": ").append(etapa.getValue());
+                }
+            }
+        }
+        return texto.toString();
+    }
+
+    @Override
+    public String toString() {
+        return despeja();
+    }
+
+    /*
+    Os histogramas de um endpoint são criados todos juntos, na primeira requisição dele;
+    depois disso o mapa de etapas só é lido, então não precisa ser sincronizado.
+     */
+    private Map<Etapa, Histograma> histogramasDo(String endpoint) {
+        Map<Etapa, Histograma> histogramas = endpoints.get(endpoint);
+        if (histogramas == null) {
+            Map<Etapa, Histograma> novos = new EnumMap<>(Etapa.class);
+            for (Etapa etapa : Etapa.values()) {
+                novos.put(etapa, new Histograma());
+            }
+            histogramas = endpoints.putIfAbsent(endpoint, novos);
+            if (histogramas == null) {
+                histogramas = novos;
+            }
+        }
+        return histogramas;
+    }
+}
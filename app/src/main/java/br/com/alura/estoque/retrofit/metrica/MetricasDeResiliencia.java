@@ -0,0 +1,88 @@
+package br.com.alura.estoque.retrofit.metrica;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.com.alura.estoque.retrofit.resiliencia.Disjuntor;
+
+/*
+Retentativas e disjuntores das requisições à API:
+- retentativas: requisições repetidas depois de uma falha transitória;
+- esgotadas: as que falharam em todas as tentativas e chegaram como erro à tela;
+- recusadas: as que nem saíram do app porque o disjuntor do endpoint estava aberto.
+
+Cada mudança de estado de um disjuntor é contada e as últimas ficam guardadas,
+junto com o estado atual de cada endpoint.
+ */
+public class MetricasDeResiliencia {
+
+    private static final int TRANSICOES_GUARDADAS = 20;
+
+    private final AtomicLong retentativas = new AtomicLong();
+    private final AtomicLong esgotadas = new AtomicLong();
+    private final AtomicLong recusadas = new AtomicLong();
+    private final AtomicLong aberturas = new AtomicLong();
+    private final Map<String, Disjuntor.Estado> estados = new HashMap<>();
+    private final LinkedList<String> ultimasTransicoes = new LinkedList<>();
+
+    public void registraRetentativa() {
+        retentativas.incrementAndGet();
+    }
+
+    public void registraEsgotada() {
+        esgotadas.incrementAndGet();
+    }
+
+    public void registraRecusada() {
+        recusadas.incrementAndGet();
+    }
+
+    public synchronized void registraTransicao(String endpoint, Disjuntor.Estado de, Disjuntor.Estado para) {
+        if (para == Disjuntor.Estado.ABERTO) {
+            aberturas.incrementAndGet();
+        }
+        estados.put(endpoint, para);
+        ultimasTransicoes.addLast(endpoint + ": " + de + " -> " + para);
+        if (ultimasTransicoes.size() > TRANSICOES_GUARDADAS) {
+            ultimasTransicoes.removeFirst();
+        }
+    }
+
+    public long getRetentativas() {
+        return retentativas.get();
+    }
+
+    public long getEsgotadas() {
+        return esgotadas.get();
+    }
+
+    public long getRecusadas() {
+        return recusadas.get();
+    }
+
+    public long getAberturas() {
+        return aberturas.get();
+    }
+
+    // Só aparecem os endpoints cujo disjuntor já mudou de estado alguma vez
+    public synchronized Map<String, Disjuntor.Estado> getEstados() {
+        return new HashMap<>(estados);
+    }
+
+    public synchronized List<String> getUltimasTransicoes() {
+        return new ArrayList<>(ultimasTransicoes);
+    }
+
+    @Override
+    public String toString() {
+        return "resiliência - retentativas: " + getRetentativas()
+                + " | esgotadas: " + getEsgotadas()
+                + " | recusadas: " + getRecusadas()
+                + " | aberturas: " + getAberturas()
+                + " | disjuntores: " + getEstados();
+    }
+}
@@ -0,0 +1,155 @@
+package br.com.alura.estoque.retrofit.metrica;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.Invocation;
+
+/*
+Cronômetro de uma única requisição: o OkHttp cria um para cada Call (ver FABRICA) e avisa
+o início e o fim de cada etapa, que são registrados nas MetricasDeRequisicoes.
+
+Os avisos de uma Call chegam um de cada vez, na ordem, então os campos não precisam de
+sincronização. As contagens de conexões novas e reaproveitadas continuam sendo feitas
+pela MetricasDeConexao, para a qual os avisos de conexão são repassados.
+ */
+public class TemposDaRequisicao extends EventListener {
+
+    private final String endpoint;
+    private final MetricasDeRequisicoes metricas;
+    private final MetricasDeConexao conexoes;
+
+    private long inicioDaChamada;
+    private long inicioDoDns;
+    private long inicioDaConexao;
+    private long inicioDoTls;
+    private long inicioDoEnvio;
+    private long fimDoEnvio;
+    private long inicioDaLeitura;
+
+    private TemposDaRequisicao(String endpoint, MetricasDeRequisicoes metricas,
+                               MetricasDeConexao conexoes) {
+        this.endpoint = endpoint;
+        this.metricas = metricas;
+        this.conexoes = conexoes;
+    }
+
+    public static EventListener.Factory fabrica(MetricasDeRequisicoes metricas,
+                                                MetricasDeConexao conexoes) {
+        return call -> new TemposDaRequisicao(endpointDe(call.request()), metricas, conexoes);
+    }
+
+    @Override
+    public void callStart(@NotNull Call call) {
+        inicioDaChamada = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(@NotNull Call call, @NotNull String domainName) {
+        inicioDoDns = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NotNull Call call, @NotNull String domainName,
+                       @NotNull List<InetAddress> inetAddressList) {
+        registraDesde(inicioDoDns, MetricasDeRequisicoes.Etapa.DNS);
+    }
+
+    @Override
+    public void connectStart(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress,
+                             @NotNull Proxy proxy) {
+        inicioDaConexao = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(@NotNull Call call) {
+        inicioDoTls = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(@NotNull Call call, Handshake handshake) {
+        registraDesde(inicioDoTls, MetricasDeRequisicoes.Etapa.TLS);
+    }
+
+    @Override
+    public void connectEnd(@NotNull Call call, @NotNull InetSocketAddress inetSocketAddress,
+                           @NotNull Proxy proxy, Protocol protocol) {
+        registraDesde(inicioDaConexao, MetricasDeRequisicoes.Etapa.CONEXAO);
+        conexoes.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+
+    @Override
+    public void connectionAcquired(@NotNull Call call, @NotNull Connection connection) {
+        conexoes.connectionAcquired(call, connection);
+    }
+
+    @Override
+    public void requestHeadersStart(@NotNull Call call) {
+        inicioDoEnvio = System.nanoTime();
+    }
+
+    @Override
+    public void requestHeadersEnd(@NotNull Call call, @NotNull Request request) {
+        fimDoEnvio = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(@NotNull Call call, long byteCount) {
+        fimDoEnvio = System.nanoTime();
+    }
+
+    @Override
+    public void responseHeadersStart(@NotNull Call call) {
+        long agora = System.nanoTime();
+        metricas.registra(endpoint, MetricasDeRequisicoes.Etapa.ENVIO, fimDoEnvio - inicioDoEnvio);
+        metricas.registra(endpoint, MetricasDeRequisicoes.Etapa.PRIMEIRO_BYTE, agora - fimDoEnvio);
+    }
+
+    @Override
+    public void responseBodyStart(@NotNull Call call) {
+        inicioDaLeitura = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(@NotNull Call call, long byteCount) {
+        registraDesde(inicioDaLeitura, MetricasDeRequisicoes.Etapa.LEITURA_DO_CORPO);
+    }
+
+    @Override
+    public void callEnd(@NotNull Call call) {
+        registraDesde(inicioDaChamada, MetricasDeRequisicoes.Etapa.TOTAL);
+    }
+
+    @Override
+    public void callFailed(@NotNull Call call, @NotNull IOException ioe) {
+        metricas.registraFalha();
+    }
+
+    private void registraDesde(long inicio, MetricasDeRequisicoes.Etapa etapa) {
+        metricas.registra(endpoint, etapa, System.nanoTime() - inicio);
+    }
+
+    /*
+    O método do ProdutoService que criou a requisição (o Retrofit o deixa na tag Invocation).
+    É o nome usado nas métricas e também pelo DisjuntorInterceptor, um disjuntor por endpoint.
+     */
+    public static String endpointDe(Request request) {
+        Invocation invocacao = request.tag(Invocation.class);
+        if (invocacao != null) {
+            return invocacao.method().getName();
+        }
+        return request.method() + " " + request.url().encodedPath();
+    }
+}
@@ -0,0 +1,14 @@
+package br.com.alura.estoque.retrofit.resiliencia;
+
+import java.io.IOException;
+
+/*
+Lançada pelo DisjuntorInterceptor no lugar de enviar a requisição. Por ser uma
+IOException, chega ao onFailure() do Callback como qualquer erro de comunicação.
+ */
+public class CircuitoAbertoException extends IOException {
+
+    public CircuitoAbertoException(String endpoint) {
+        super("Servidor indisponível (" + endpoint + "), tente novamente em instantes");
+    }
+}
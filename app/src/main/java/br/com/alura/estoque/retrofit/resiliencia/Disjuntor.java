@@ -0,0 +1,106 @@
+package br.com.alura.estoque.retrofit.resiliencia;
+
+import android.os.SystemClock;
+
+import br.com.alura.estoque.retrofit.metrica.MetricasDeResiliencia;
+
+/*
+Disjuntor (circuit breaker) de um endpoint.
+
+- FECHADO: as requisições passam. Depois de limiteDeFalhas falhas seguidas, abre.
+- ABERTO: as requisições falham na hora, sem ir à rede, durante aberturaMillis.
+- MEIO_ABERTO: passado esse tempo, uma única requisição de teste é liberada.
+  Se ela der certo o disjuntor fecha; se falhar, abre de novo.
+
+Assim, enquanto o servidor está fora do ar, o app não acumula requisições que só
+terminariam no tempo limite, nem ajuda a derrubar o servidor quando ele voltar.
+ */
+public class Disjuntor {
+
+    public enum Estado {
+        FECHADO,
+        ABERTO,
+        MEIO_ABERTO
+    }
+
+    // O tempo que conta para a abertura; trocado nos testes para não depender do relógio real
+    interface Relogio {
+        long agoraEmMillis();
+    }
+
+    private final String endpoint;
+    private final int limiteDeFalhas;
+    private final long aberturaMillis;
+    private final MetricasDeResiliencia metricas;
+    private final Relogio relogio;
+
+    private Estado estado = Estado.FECHADO;
+    private int falhasSeguidas = 0;
+    private long abertoAte = 0;
+    private boolean testeEmAndamento = false;
+
+    Disjuntor(String endpoint, int limiteDeFalhas, long aberturaMillis, MetricasDeResiliencia metricas) {
+        this(endpoint, limiteDeFalhas, aberturaMillis, metricas, SystemClock::elapsedRealtime);
+    }
+
+    Disjuntor(String endpoint, int limiteDeFalhas, long aberturaMillis, MetricasDeResiliencia metricas,
+              Relogio relogio) {
+        this.endpoint = endpoint;
+        this.limiteDeFalhas = limiteDeFalhas;
+        this.aberturaMillis = aberturaMillis;
+        this.metricas = metricas;
+        this.relogio = relogio;
+    }
+
+    synchronized boolean permite() {
+        switch (estado) {
+            case ABERTO:
+                if (relogio.agoraEmMillis() < abertoAte) {
+                    return false;
+                }
+                muda(Estado.MEIO_ABERTO);
+                testeEmAndamento = true;
+                return true;
+            case MEIO_ABERTO:
+                if (testeEmAndamento) {
+                    return false;
+                }
+                testeEmAndamento = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    synchronized void registraSucesso() {
+        falhasSeguidas = 0;
+        testeEmAndamento = false;
+        if (estado != Estado.FECHADO) {
+            muda(Estado.FECHADO);
+        }
+    }
+
+    synchronized void registraFalha() {
+        testeEmAndamento = false;
+        falhasSeguidas++;
+        if (estado == Estado.MEIO_ABERTO
+                || (estado == Estado.FECHADO && falhasSeguidas >= limiteDeFalhas)) {
+            abertoAte = relogio.agoraEmMillis() + aberturaMillis;
+            muda(Estado.ABERTO);
+        }
+    }
+
+    // A requisição de teste foi cancelada por quem a fez: libera outra, sem mudar o estado
+    synchronized void registraInconclusiva() {
+        testeEmAndamento = false;
+    }
+
+    synchronized Estado getEstado() {
+        return estado;
+    }
+
+    private void muda(Estado novo) {
+        metricas.registraTransicao(endpoint, estado, novo);
+        estado = novo;
+    }
+}
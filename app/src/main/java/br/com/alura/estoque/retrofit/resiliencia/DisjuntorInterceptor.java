@@ -0,0 +1,77 @@
+package br.com.alura.estoque.retrofit.resiliencia;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import br.com.alura.estoque.retrofit.metrica.MetricasDeResiliencia;
+import br.com.alura.estoque.retrofit.metrica.TemposDaRequisicao;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/*
+Mantém um Disjuntor por endpoint e consulta o dele antes de cada requisição.
+
+O endpoint é o método do ProdutoService que criou a requisição (o Retrofit o deixa na
+tag Invocation). Assim, um problema só na busca de mudanças não impede o envio da caixa
+de saída, e todas as páginas do catálogo contam para o mesmo disjuntor, qualquer que
+seja o id na URL.
+Contam como falha os erros de rede e as respostas 5xx; uma resposta 4xx mostra que
+o servidor está respondendo.
+ */
+public class DisjuntorInterceptor implements Interceptor {
+
+    private static final int LIMITE_DE_FALHAS = 5;
+    private static final long ABERTURA_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final ConcurrentHashMap<String, Disjuntor> disjuntores = new ConcurrentHashMap<>();
+    private final MetricasDeResiliencia metricas;
+
+    public DisjuntorInterceptor(MetricasDeResiliencia metricas) {
+        this.metricas = metricas;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = TemposDaRequisicao.endpointDe(request);
+        Disjuntor disjuntor = disjuntorDe(endpoint);
+        if (!disjuntor.permite()) {
+            metricas.registraRecusada();
+            throw new CircuitoAbertoException(endpoint);
+        }
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            if (chain.call().isCanceled()) {
+                disjuntor.registraInconclusiva();
+            } else {
+                disjuntor.registraFalha();
+            }
+            throw e;
+        }
+        if (response.code() >= 500) {
+            disjuntor.registraFalha();
+        } else {
+            disjuntor.registraSucesso();
+        }
+        return response;
+    }
+
+    private Disjuntor disjuntorDe(String endpoint) {
+        Disjuntor disjuntor = disjuntores.get(endpoint);
+        if (disjuntor == null) {
+            Disjuntor novo = new Disjuntor(endpoint, LIMITE_DE_FALHAS, ABERTURA_MILLIS, metricas);
+            disjuntor = disjuntores.putIfAbsent(endpoint, novo);
+            if (disjuntor == null) {
+                disjuntor = novo;
+            }
+        }
+        return disjuntor;
+    }
+}
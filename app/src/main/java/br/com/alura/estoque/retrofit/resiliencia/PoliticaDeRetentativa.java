@@ -0,0 +1,82 @@
+package br.com.alura.estoque.retrofit.resiliencia;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Random;
+
+import okhttp3.Request;
+
+/*
+Quantas vezes e depois de quanto tempo uma requisição que falhou é repetida.
+
+A espera cresce exponencialmente (base, 2 * base, 4 * base... até o teto) e, dentro
+desse limite, é sorteada entre zero e o valor calculado (o chamado "full jitter").
+Sem o sorteio, todos os aparelhos que falharam juntos tentariam de novo juntos,
+e o servidor, que acabou de se recuperar, receberia a mesma rajada outra vez.
+ */
+public class PoliticaDeRetentativa {
+
+    private static final int MAXIMO_DE_TENTATIVAS = 3;
+    private static final long ESPERA_BASE_MILLIS = 500;
+    private static final long ESPERA_MAXIMA_MILLIS = 8_000;
+
+    private static final Random SORTEIO = new Random();
+
+    private final int maximoDeTentativas;
+    private final long esperaBaseMillis;
+    private final long esperaMaximaMillis;
+
+    public PoliticaDeRetentativa(int maximoDeTentativas, long esperaBaseMillis, long esperaMaximaMillis) {
+        this.maximoDeTentativas = maximoDeTentativas;
+        this.esperaBaseMillis = esperaBaseMillis;
+        this.esperaMaximaMillis = esperaMaximaMillis;
+    }
+
+    public static PoliticaDeRetentativa padrao() {
+        return new PoliticaDeRetentativa(MAXIMO_DE_TENTATIVAS, ESPERA_BASE_MILLIS, ESPERA_MAXIMA_MILLIS);
+    }
+
+    // Contando a primeira tentativa
+    public int getMaximoDeTentativas() {
+        return maximoDeTentativas;
+    }
+
+    // falhas: quantas tentativas já falharam seguidas (a partir de 1)
+    public long esperaDepoisDe(int falhas) {
+        int expoente = Math.min(Math.max(falhas - 1, 0), 30);
+        long limite = Math.min(esperaMaximaMillis, esperaBaseMillis << expoente);
+        return (long) (SORTEIO.nextDouble() * limite);
+    }
+
+    /*
+    Só repetimos o que pode ser enviado duas vezes sem efeito diferente: um POST
+    repetido depois de uma resposta perdida criaria o produto em dobro.
+     */
+    public static boolean isIdempotente(Request request) {
+        switch (request.method()) {
+            case "GET":
+            case "HEAD":
+            case "PUT":
+            case "DELETE":
+            case "OPTIONS":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Tempo esgotado, excesso de requisições e erros do servidor podem passar sozinhos
+    public static boolean isTransitoria(int codigo) {
+        return codigo == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                || codigo == 429
+                || codigo >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    /*
+    Erros de rede sim; o disjuntor aberto não, já que a ideia dele é justamente não
+    insistir. Erros de conversão do Gson não são IOException e também não se repetem.
+     */
+    public static boolean isTransitoria(Throwable erro) {
+        return erro instanceof IOException && !(erro instanceof CircuitoAbertoException);
+    }
+}
@@ -0,0 +1,77 @@
+package br.com.alura.estoque.retrofit.resiliencia;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.TimeUnit;
+
+import br.com.alura.estoque.retrofit.metrica.MetricasDeResiliencia;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/*
+Repete uma requisição que falhou de forma transitória, seguindo a PoliticaDeRetentativa.
+Cada Callback tem a sua, já que ela conta as tentativas daquela requisição.
+
+A repetição é um clone da Call, com o mesmo tempo limite (ver TempoLimite), enviado
+de novo com o mesmo Callback depois da espera.
+Quem fez a requisição só conhece (e só cancela) a Call original. Por isso, se ela foi
+cancelada, a repetição não é enviada e, se já estava em andamento, a resposta dela não
+é entregue (ver isCancelada()).
+Como as respostas do Retrofit chegam na UI Thread, o estado não precisa de sincronização.
+ */
+public class Retentativa {
+
+    private static final Handler MAIN_THREAD = new Handler(Looper.getMainLooper());
+
+    private final PoliticaDeRetentativa politica;
+    private final MetricasDeResiliencia metricas;
+    private Call<?> original;
+    private int falhas = 0;
+
+    public Retentativa(PoliticaDeRetentativa politica, MetricasDeResiliencia metricas) {
+        this.politica = politica;
+        this.metricas = metricas;
+    }
+
+    // Devolve true se a requisição será repetida; nesse caso a resposta não deve ser entregue
+    public <T> boolean repeteSeTransitoria(Call<T> call, Response<T> response, Callback<T> callback) {
+        return repete(call, PoliticaDeRetentativa.isTransitoria(response.code()), callback);
+    }
+
+    public <T> boolean repeteSeTransitoria(Call<T> call, Throwable erro, Callback<T> callback) {
+        return repete(call, PoliticaDeRetentativa.isTransitoria(erro), callback);
+    }
+
+    private <T> boolean repete(Call<T> call, boolean transitoria, Callback<T> callback) {
+        if (original == null) {
+            original = call;
+        }
+        if (!transitoria || isCancelada(call) || !PoliticaDeRetentativa.isIdempotente(call.request())) {
+            return false;
+        }
+        falhas++;
+        if (falhas >= politica.getMaximoDeTentativas()) {
+            metricas.registraEsgotada();
+            return false;
+        }
+        metricas.registraRetentativa();
+        MAIN_THREAD.postDelayed(() -> {
+            if (!isCancelada(call)) {
+                Call<T> repeticao = call.clone();
+                repeticao.timeout().timeout(call.timeout().timeoutNanos(), TimeUnit.NANOSECONDS);
+                repeticao.enqueue(callback);
+            }
+        }, politica.esperaDepoisDe(falhas));
+        return true;
+    }
+
+    /*
+    Para o Callback conferir antes de entregar uma resposta: a Call recebida pode ser uma
+    repetição, que não é cancelada junto com a original.
+     */
+    public boolean isCancelada(Call<?> call) {
+        return call.isCanceled() || (original != null && original.isCanceled());
+    }
+}
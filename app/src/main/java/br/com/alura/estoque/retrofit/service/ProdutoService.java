@@ -2,14 +2,23 @@ package br.com.alura.estoque.retrofit.service;
 
 import java.util.List;
 
+import br.com.alura.estoque.model.MudancasProdutos;
+import br.com.alura.estoque.model.PaginaDeProdutos;
 import br.com.alura.estoque.model.Produto;
+import br.com.alura.estoque.model.ResultadoDoItem;
+import br.com.alura.estoque.retrofit.NaoModificadoInterceptor;
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
+import retrofit2.http.HTTP;
+import retrofit2.http.Headers;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 /*
 Aqui nós inseriremos o código referente à definição das requisições
@@ -17,6 +26,12 @@ por meio de assinaturas, da documentação do Retrofit
  */
 public interface ProdutoService {
 
+    /*
+    Cabeçalho da resposta de buscaTodosEmFluxo() com a versão do catálogo no servidor
+    quando a resposta começou a ser montada (a mesma versão de PaginaDeProdutos).
+     */
+    String CABECALHO_VERSAO = "Estoque-Versao";
+
     /*
     GET = requisições get
     O valor dentro de get é nosso endpoint (será concatenado com a BaseURL)
@@ -28,10 +43,62 @@ public interface ProdutoService {
     indicar que tipo de retorno é esperado. No nosso caso, é uma lista de produtos.
 
 
+    Com o cabeçalho de curto-circuito, se o catálogo não mudou desde a última busca
+    (304 do servidor), a resposta não é convertida e o callback recebe quandoNaoModificado().
      */
     @GET("produto")
+    @Headers(NaoModificadoInterceptor.CURTO_CIRCUITO)
     Call<List<Produto>> buscaTodos();
 
+    /*
+    O mesmo catálogo, mas sem conversão: com @Streaming o corpo é devolvido enquanto
+    ainda está chegando, para ser lido em fluxo pelo LeitorDeProdutosEmFluxo.
+
+    Esta busca não aproveita o 304: ela só é feita quando não há nada sincronizado, então
+    o catálogo inteiro sempre é transferido, lido e gravado. Pelo mesmo motivo a resposta
+    não é guardada no cache em disco (no-store): ela nunca seria revalidada, e com
+    centenas de milhares de produtos só tiraria do cache as respostas que são reaproveitadas.
+    As sincronizações seguintes pedem apenas as mudanças (buscaMudancas()).
+
+    O corpo é só o array de produtos, em ordem de id como na variante paginada; a versão
+    do catálogo vem no CABECALHO_VERSAO.
+     */
+    @Streaming
+    @GET("produto")
+    @Headers("Cache-Control: no-store")
+    Call<ResponseBody> buscaTodosEmFluxo();
+
+    /*
+    Variante paginada do mesmo endpoint, por cursor: devolve no máximo "limite" produtos
+    com id maior que "aPartirDe", em ordem de id. A próxima página é pedida a partir do
+    id do último produto recebido, e uma página menor que o limite indica que acabou.
+
+    @Query = adiciona o parâmetro na URL, por exemplo: produto?aPartirDe=0&limite=50
+
+    Os produtos vêm junto com a versão do catálogo (PaginaDeProdutos), que é a marca
+    d'água guardada ao fim da carga, como em MudancasProdutos.
+
+    Aqui não usamos o curto-circuito do 304: o cursor da próxima página é o último id
+    desta, então precisamos do corpo mesmo quando ele não mudou (vem do cache em disco).
+     */
+    @GET("produto")
+    Call<PaginaDeProdutos> buscaPagina(@Query("aPartirDe") long aPartirDe, @Query("limite") int limite);
+
+    /*
+    Devolve apenas o que mudou depois da versão informada: os produtos alterados
+    e os ids dos produtos removidos, junto com a nova versão a ser guardada.
+     */
+    @GET("produto/mudancas")
+    @Headers(NaoModificadoInterceptor.CURTO_CIRCUITO)
+    Call<MudancasProdutos> buscaMudancas(@Query("desde") long versao);
+
+    /*
+    Um único produto, como a API o conhece agora. Usado para corrigir o banco quando
+    uma alteração é recusada: a cópia confirmada guardada no app pode já estar velha.
+     */
+    @GET("produto/{id}")
+    Call<Produto> buscaProduto(@Path("id") long id);
+
     /*
     Precisamos fazer uma requisição que irá atender ao que nossa API espera,
     POST, a receber um produto via corpo da requisição, devolvendo um produto
@@ -63,4 +130,19 @@ public interface ProdutoService {
      */
     @DELETE("produto/{id}")
     Call<Void> remove(@Path("id") long id);
+
+    /*
+    Variantes em lote das três operações acima: uma única requisição para vários produtos.
+    A resposta traz um ResultadoDoItem para cada item, na mesma ordem do corpo enviado.
+
+    O DELETE normalmente não tem corpo, por isso usamos @HTTP com hasBody = true.
+     */
+    @POST("produto/lote")
+    Call<List<ResultadoDoItem>> salvaEmLote(@Body List<Produto> produtos);
+
+    @PUT("produto/lote")
+    Call<List<ResultadoDoItem>> editaEmLote(@Body List<Produto> produtos);
+
+    @HTTP(method = "DELETE", path = "produto/lote", hasBody = true)
+    Call<List<ResultadoDoItem>> removeEmLote(@Body List<Long> ids);
 }
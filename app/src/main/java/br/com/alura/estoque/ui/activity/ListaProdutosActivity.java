@@ -1,30 +1,39 @@
 package br.com.alura.estoque.ui.activity;
 
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.widget.Toast;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.Collections;
 import java.util.List;
 
 import br.com.alura.estoque.R;
-import br.com.alura.estoque.asynctask.BaseAsyncTask;
-import br.com.alura.estoque.database.EstoqueDatabase;
-import br.com.alura.estoque.database.dao.ProdutoDAO;
+import br.com.alura.estoque.database.Inscricao;
+import br.com.alura.estoque.model.MudancasAplicadas;
 import br.com.alura.estoque.model.Produto;
 import br.com.alura.estoque.repository.ProdutoRepository;
 import br.com.alura.estoque.ui.dialog.EditaProdutoDialog;
 import br.com.alura.estoque.ui.dialog.SalvaProdutoDialog;
 import br.com.alura.estoque.ui.recyclerview.adapter.ListaProdutosAdapter;
+import br.com.alura.estoque.ui.recyclerview.listener.PaginacaoScrollListener;
 
 public class ListaProdutosActivity extends AppCompatActivity {
 
     private static final String TITULO_APPBAR = "Lista de produtos";
     private ListaProdutosAdapter adapter;
+    private ListaProdutosAdapter resultadosDaBusca;
+    private RecyclerView listaProdutos;
+    private boolean emBusca = false;
     private ProdutoRepository repository;
+    private boolean carregandoPagina = false;
+    private Inscricao observacao;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -44,18 +53,104 @@ public class ListaProdutosActivity extends AppCompatActivity {
 
         Ele é conhecido como repositório, ou Repository, em inglês, e lidará com a questão da
         origem dos dados, enviando-a para quem solicitar.
+
+        O Repository acompanha o ciclo de vida da Activity: quando ela é destruída, as buscas,
+        a observação e as consultas pendentes são canceladas sem precisarmos de onDestroy().
          */
-        repository = new ProdutoRepository(this);
+        repository = new ProdutoRepository(this, this);
         buscaProdutos();
+        observaProdutos();
     }
 
     private void buscaProdutos() {
         repository.buscaProdutos(new ProdutoRepository.DadosCarregadosCallback<List<Produto>>() {
             @Override
             public void quandoSucesso(List<Produto> resultado) {
+                // Chega primeiro a página salva internamente...
                 adapter.atualiza(resultado);
             }
 
+            @Override
+            public void quandoFalha(String erro) {
+                Toast.makeText(ListaProdutosActivity.this, erro, Toast.LENGTH_SHORT).show();
+            }
+        }, new ProdutoRepository.DadosCarregadosCallback<MudancasAplicadas>() {
+            @Override
+            public void quandoSucesso(MudancasAplicadas mudancas) {
+                /*
+                ...e, depois, a sincronização com a API grava no banco. Quem leva essas
+                mudanças para a tela é a observação da tabela (observaProdutos()),
+                que também percebe as escritas da caixa de saída e de outras telas.
+                 */
+            }
+
+            @Override
+            public void quandoFalha(String erro) {
+                Toast.makeText(ListaProdutosActivity.this, erro, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /*
+    Sempre que a tabela Produto muda, a faixa que está na tela é consultada de novo.
+    Se a janela mudou enquanto a consulta rodava, pedimos uma nova com a faixa atual.
+     */
+    private void observaProdutos() {
+        observacao = repository.observaProdutos(adapter::getIntervalo,
+                (intervalo, produtos) -> adapter.atualizaIntervalo(intervalo, produtos,
+                        () -> observacao.atualiza()));
+    }
+
+    /*
+    Enquanto a busca está aberta, a lista mostra os resultados num adapter separado.
+    O adapter principal continua recebendo as mudanças da tabela e, ao fechar a busca,
+    volta com a mesma janela de páginas de antes.
+     */
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.lista_produtos_busca_menu, menu);
+        MenuItem itemBusca = menu.findItem(R.id.menu_lista_produtos_busca);
+        SearchView campoBusca = (SearchView) itemBusca.getActionView();
+        campoBusca.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String texto) {
+                buscaPorNome(texto);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String texto) {
+                buscaPorNome(texto);
+                return true;
+            }
+        });
+        itemBusca.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                emBusca = true;
+                resultadosDaBusca.atualiza(Collections.emptyList());
+                listaProdutos.setAdapter(resultadosDaBusca);
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                emBusca = false;
+                repository.cancelaBusca();
+                listaProdutos.setAdapter(adapter);
+                return true;
+            }
+        });
+        return true;
+    }
+
+    private void buscaPorNome(String texto) {
+        repository.buscaPorNome(texto, new ProdutoRepository.DadosCarregadosCallback<List<Produto>>() {
+            @Override
+            public void quandoSucesso(List<Produto> encontrados) {
+                resultadosDaBusca.atualiza(encontrados);
+            }
+
             @Override
             public void quandoFalha(String erro) {
                 Toast.makeText(ListaProdutosActivity.this, erro, Toast.LENGTH_SHORT).show();
@@ -64,19 +159,81 @@ public class ListaProdutosActivity extends AppCompatActivity {
     }
 
     private void configuraListaProdutos() {
-        RecyclerView listaProdutos = findViewById(R.id.activity_lista_produtos_lista);
-        adapter = new ListaProdutosAdapter(this, this::abreFormularioEditaProduto);
+        listaProdutos = findViewById(R.id.activity_lista_produtos_lista);
+        adapter = new ListaProdutosAdapter(this, ProdutoRepository.TAMANHO_PAGINA,
+                (posicao, produto) -> abreFormularioEditaProduto(adapter, produto));
         listaProdutos.setAdapter(adapter);
         adapter.setOnItemClickRemoveContextMenuListener((posicao, produtoEscolhido) -> {
-            remove(posicao, produtoEscolhido);
+            remove(adapter, produtoEscolhido);
+        });
+        resultadosDaBusca = new ListaProdutosAdapter(this, ProdutoRepository.TAMANHO_PAGINA,
+                (posicao, produto) -> abreFormularioEditaProduto(resultadosDaBusca, produto));
+        resultadosDaBusca.setOnItemClickRemoveContextMenuListener((posicao, produtoEscolhido) -> {
+            remove(resultadosDaBusca, produtoEscolhido);
+        });
+        listaProdutos.addOnScrollListener(new PaginacaoScrollListener(
+                new PaginacaoScrollListener.CarregaPaginaListener() {
+                    @Override
+                    public void quandoPrecisaDaSeguinte() {
+                        buscaPaginaSeguinte();
+                    }
+
+                    @Override
+                    public void quandoPrecisaDaAnterior() {
+                        buscaPaginaAnterior();
+                    }
+                }));
+    }
+
+    /*
+    O scroll dispara várias vezes enquanto a página ainda está sendo buscada,
+    por isso só pedimos uma página de cada vez.
+     */
+    private void buscaPaginaSeguinte() {
+        if (emBusca || carregandoPagina || adapter.isFimAlcancado()) {
+            return;
+        }
+        carregandoPagina = true;
+        long ultimoId = adapter.getUltimoId();
+        repository.buscaPaginaSeguinte(ultimoId, new PaginaCarregadaCallback() {
+            @Override
+            public void quandoSucesso(List<Produto> pagina) {
+                carregandoPagina = false;
+                adapter.adicionaPaginaNoFim(ultimoId, pagina);
+            }
+        });
+    }
+
+    private void buscaPaginaAnterior() {
+        if (emBusca || carregandoPagina || adapter.isInicioAlcancado()) {
+            return;
+        }
+        carregandoPagina = true;
+        long primeiroId = adapter.getPrimeiroId();
+        repository.buscaPaginaAnterior(primeiroId, new PaginaCarregadaCallback() {
+            @Override
+            public void quandoSucesso(List<Produto> pagina) {
+                carregandoPagina = false;
+                adapter.adicionaPaginaNoInicio(primeiroId, pagina);
+            }
         });
     }
 
-    private void remove(int posicao, Produto produtoEscolhido) {
+    private abstract class PaginaCarregadaCallback
+            implements ProdutoRepository.DadosCarregadosCallback<List<Produto>> {
+
+        @Override
+        public void quandoFalha(String erro) {
+            carregandoPagina = false;
+            Toast.makeText(ListaProdutosActivity.this, erro, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void remove(ListaProdutosAdapter adapter, Produto produtoEscolhido) {
         repository.remove(produtoEscolhido, new ProdutoRepository.DadosCarregadosCallback<Void>() {
             @Override
             public void quandoSucesso(Void resultado) {
-                adapter.remove(posicao);
+                adapter.remove(produtoEscolhido.getId());
             }
 
             @Override
@@ -96,7 +253,10 @@ public class ListaProdutosActivity extends AppCompatActivity {
                 (produtoCriado) -> repository.salva(produtoCriado, new ProdutoRepository.DadosCarregadosCallback<Produto>() {
                     @Override
                     public void quandoSucesso(Produto produto) {
-                        adapter.adiciona(produto);
+                        // Com o id temporário (negativo), o produto entra no início da lista
+                        if (!adapter.adiciona(produto)) {
+                            mostraInicioDaLista();
+                        }
                     }
 
                     @Override
@@ -107,18 +267,43 @@ public class ListaProdutosActivity extends AppCompatActivity {
         ).mostra();
     }
 
-    private void abreFormularioEditaProduto(int posicao, Produto produto) {
+    /*
+    A janela está longe do início, onde ficam os produtos novos (ids temporários são
+    negativos). Ela volta para a primeira página; se o produto ainda não tiver sido
+    gravado quando a página for lida, ele entra logo depois, pela observação da tabela.
+    Uma página de rolagem ainda em andamento continua com o seu carregandoPagina e, quando
+    chegar, é descartada pelo adapter, já que foi pedida para a janela antiga.
+     */
+    private void mostraInicioDaLista() {
+        if (emBusca) {
+            return;
+        }
+        repository.buscaPaginaSeguinte(Long.MIN_VALUE, new ProdutoRepository.DadosCarregadosCallback<List<Produto>>() {
+            @Override
+            public void quandoSucesso(List<Produto> pagina) {
+                adapter.atualiza(pagina);
+                listaProdutos.scrollToPosition(0);
+            }
+
+            @Override
+            public void quandoFalha(String erro) {
+                Toast.makeText(ListaProdutosActivity.this, erro, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void abreFormularioEditaProduto(ListaProdutosAdapter adapter, Produto produto) {
         new EditaProdutoDialog(this, produto,
                 produtoCriado -> {
-                    edita(posicao, produtoCriado);
+                    edita(adapter, produtoCriado);
                 }).mostra();
     }
 
-    private void edita(int posicao, Produto produtoCriado) {
+    private void edita(ListaProdutosAdapter adapter, Produto produtoCriado) {
         repository.edita(produtoCriado, new ProdutoRepository.DadosCarregadosCallback<Produto>() {
             @Override
             public void quandoSucesso(Produto produtoEditado) {
-                adapter.edita(posicao, produtoEditado);
+                adapter.edita(produtoEditado);
             }
 
             @Override
@@ -0,0 +1,37 @@
+package br.com.alura.estoque.ui.recyclerview.adapter;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import br.com.alura.estoque.model.Produto;
+
+/*
+Antes, cada vínculo de um item na rolagem criava um formatador de moeda e novas Strings
+para o id, o preço e a quantidade, mesmo que o produto fosse o mesmo de antes.
+
+Os textos agora são calculados uma vez por instância de Produto. Como toda alteração
+(edição, sincronização) chega como uma nova instância, a chave pela própria instância já
+representa a versão do produto. O Produto não sobrescreve equals()/hashCode(), então a
+busca não aloca nada. O WeakHashMap libera os textos quando a instância deixa de ser
+usada, por exemplo quando a página é descartada da janela.
+
+Assim como o FormatadorDeMoeda, deve ser usado sempre na UI Thread.
+ */
+class CacheDeTextosDoProduto {
+
+    private final Map<Produto, TextosDoProduto> textos = new WeakHashMap<>();
+    private final FormatadorDeMoeda formatadorDeMoeda = new FormatadorDeMoeda();
+
+    TextosDoProduto textosDe(Produto produto) {
+        TextosDoProduto textosDoProduto = textos.get(produto);
+        if (textosDoProduto == null) {
+            textosDoProduto = new TextosDoProduto(
+                    String.valueOf(produto.getId()),
+                    produto.getNome(),
+                    formatadorDeMoeda.formata(produto.getPreco()),
+                    String.valueOf(produto.getQuantidade()));
+            textos.put(produto, textosDoProduto);
+        }
+        return textosDoProduto;
+    }
+}
@@ -0,0 +1,32 @@
+package br.com.alura.estoque.ui.recyclerview.adapter;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+NumberFormat.getCurrencyInstance() procura os dados do Locale e cria um formatador novo
+a cada chamada. Aqui criamos um formatador por Locale e o reaproveitamos.
+
+O NumberFormat não é thread-safe, então esta classe deve ser usada sempre na mesma
+Thread (a UI Thread, no caso do Adapter).
+ */
+class FormatadorDeMoeda {
+
+    private final Map<Locale, NumberFormat> formatadores = new HashMap<>();
+
+    String formata(BigDecimal valor) {
+        return formatadorDe(Locale.getDefault()).format(valor);
+    }
+
+    private NumberFormat formatadorDe(Locale locale) {
+        NumberFormat formatador = formatadores.get(locale);
+        if (formatador == null) {
+            formatador = NumberFormat.getCurrencyInstance(locale);
+            formatadores.put(locale, formatador);
+        }
+        return formatador;
+    }
+}
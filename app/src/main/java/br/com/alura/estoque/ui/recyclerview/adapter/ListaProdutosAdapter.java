@@ -7,15 +7,18 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-import java.math.BigDecimal;
-import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import br.com.alura.estoque.R;
+import br.com.alura.estoque.asynctask.BaseAsyncTask;
+import br.com.alura.estoque.asynctask.Pool;
+import br.com.alura.estoque.model.IntervaloDeProdutos;
 import br.com.alura.estoque.model.Produto;
 
 public class ListaProdutosAdapter extends
@@ -27,11 +30,44 @@ public class ListaProdutosAdapter extends
     };
     private final Context context;
     private final List<Produto> produtos = new ArrayList<>();
+    private final CacheDeTextosDoProduto cacheDeTextos = new CacheDeTextosDoProduto();
+
+    /*
+    A lista guarda apenas uma janela de páginas. Quando uma nova página entra por um
+    lado e a janela passa do limite, a página da outra ponta é descartada e só volta a
+    ser buscada se o usuário rolar até ela de novo.
+
+    Cada página é lembrada pelo id do seu último produto. Como a lista está sempre
+    ordenada por id, esse limite continua válido mesmo depois de inserções e remoções.
+
+    Só a rolagem do usuário desloca a janela. O que chega por outros caminhos (a
+    sincronização, um produto novo) é mesclado sem descartar páginas, e o que não cabe
+    fica para quando o usuário rolar até lá. Antes da primeira página, não se sabe se
+    o fim foi alcançado.
+     */
+    private static final int MAXIMO_PAGINAS_EM_MEMORIA = 5;
+    private final int tamanhoPagina;
+    private final LinkedList<Long> ultimosIdsDasPaginas = new LinkedList<>();
+    private boolean inicioAlcancado = true;
+    private boolean fimAlcancado = false;
+
+    /*
+    Incrementada a cada alteração da lista. Um diff calculado em background sobre uma
+    versão que já mudou não pode ser aplicado, e é calculado de novo.
+     */
+    private int versaoDaLista = 0;
 
     public ListaProdutosAdapter(Context context,
+                                int tamanhoPagina,
                                 OnItemClickListener onItemClickListener) {
         this.onItemClickListener = onItemClickListener;
         this.context = context;
+        this.tamanhoPagina = tamanhoPagina;
+        /*
+        Com ids estáveis, o RecyclerView reconhece o mesmo produto entre atualizações
+        e mantém a posição da rolagem e as animações.
+         */
+        setHasStableIds(true);
     }
 
     public void setOnItemClickRemoveContextMenuListener(OnItemClickRemoveContextMenuListener onItemClickRemoveContextMenuListener) {
@@ -56,35 +92,359 @@ public class ListaProdutosAdapter extends
         return produtos.size();
     }
 
+    @Override
+    public long getItemId(int position) {
+        return produtos.get(position).getId();
+    }
+
+    /*
+    Antes, toda atualização removia e inseria a lista inteira, o que vinculava e
+    redesenhava todos os itens visíveis e perdia a posição da rolagem.
+
+    Agora a diferença entre a lista atual e a nova é calculada com o DiffUtil fora da
+    UI Thread, e só as mudanças encontradas são notificadas.
+    A lista recebida é sempre a primeira página.
+     */
     public void atualiza(List<Produto> produtos) {
-        /*
-         Toda a notificação de dataset será limpa antes de executar notifyItemRangeInserted().
-         Isso significa que caso esse método seja chamado "simultaneamente" por outras Threads,
-         o app não quebrará ao executar notifyItemRangeInserted().
-         */
-        notifyItemRangeRemoved(0, this.produtos.size());
-        this.produtos.clear();
-        this.produtos.addAll(produtos);
-        this.notifyItemRangeInserted(0, this.produtos.size());
+        boolean fim = produtos.size() < tamanhoPagina;
+        aplicaComDiff(produtos, () -> {
+            ultimosIdsDasPaginas.clear();
+            if (!produtos.isEmpty()) {
+                ultimosIdsDasPaginas.add(produtos.get(produtos.size() - 1).getId());
+            }
+            inicioAlcancado = true;
+            fimAlcancado = fim;
+        });
+    }
+
+    /*
+    Mescla uma página vinda da sincronização com a janela atual. Produtos dentro do
+    intervalo de ids da janela são substituídos (ou inseridos na posição certa);
+    os que ficam depois do último id só entram se a janela já está no fim do catálogo,
+    caso contrário serão carregados do banco quando o usuário rolar até eles.
+
+    A página precisa estar em ordem de id, como a janela.
+     */
+    public void mescla(List<Produto> pagina) {
+        List<Produto> atuais = new ArrayList<>(produtos);
+        boolean inicio = inicioAlcancado;
+        boolean fim = fimAlcancado;
+        int versaoBase = versaoDaLista;
+        new BaseAsyncTask<>(() -> {
+            Mesclagem mesclagem = new Mesclagem(atuais, pagina, inicio, fim, tamanhoPagina,
+                    MAXIMO_PAGINAS_EM_MEMORIA * tamanhoPagina);
+            mesclagem.diferenca = DiffUtil.calculateDiff(new ProdutoDiffCallback(atuais, mesclagem.produtos));
+            return mesclagem;
+        }, mesclagem -> {
+            if (versaoBase != versaoDaLista) {
+                mescla(pagina);
+                return;
+            }
+            aplica(mesclagem.produtos, mesclagem.diferenca);
+            if (mesclagem.ultimoIdAcrescentado != null) {
+                estendeUltimaPagina(mesclagem.ultimoIdAcrescentado);
+            }
+            fimAlcancado = mesclagem.fimAlcancado;
+        }).executa(Pool.PROCESSAMENTO);
+    }
+
+    /*
+    Os produtos acrescentados por uma mesclagem entram numa página nova enquanto há
+    espaço; depois, na última página. A janela nunca passa do limite de produtos
+    (ver Mesclagem), então nenhuma página precisa ser descartada.
+     */
+    private void estendeUltimaPagina(long ultimoId) {
+        if (ultimosIdsDasPaginas.size() >= MAXIMO_PAGINAS_EM_MEMORIA) {
+            ultimosIdsDasPaginas.removeLast();
+        }
+        ultimosIdsDasPaginas.addLast(ultimoId);
+    }
+
+    /*
+    Faixa de ids que a janela ocupa agora, para ser consultada de novo quando a tabela
+    de produtos mudar. Nas pontas já alcançadas a faixa fica aberta, assim produtos
+    inseridos antes do primeiro ou depois do último id também entram.
+     */
+    public IntervaloDeProdutos getIntervalo() {
+        long primeiroId = inicioAlcancado || produtos.isEmpty() ? Long.MIN_VALUE : getPrimeiroId();
+        long ultimoId = fimAlcancado || produtos.isEmpty() ? Long.MAX_VALUE : getUltimoId();
+        return new IntervaloDeProdutos(primeiroId, ultimoId,
+                MAXIMO_PAGINAS_EM_MEMORIA * tamanhoPagina, versaoDaLista);
+    }
+
+    /*
+    Substitui a janela pelo resultado da nova consulta da faixa. Se a lista mudou
+    depois que a faixa foi tirada (uma página nova chegou, por exemplo), o resultado
+    não serve mais e quem chamou é avisado para consultar de novo.
+     */
+    public void atualizaIntervalo(IntervaloDeProdutos intervalo, List<Produto> novos,
+                                  Runnable seDesatualizado) {
+        if (intervalo.getVersao() != versaoDaLista) {
+            seDesatualizado.run();
+            return;
+        }
+        aplicaComDiff(novos, intervalo.getVersao(), seDesatualizado, () -> {
+            divideEmPaginas(novos);
+            if (intervalo.isAbertoNoFim()) {
+                fimAlcancado = novos.size() < intervalo.getLimite();
+            }
+        });
+    }
+
+    // A faixa pode trazer várias páginas de uma vez; os limites são refeitos a partir dela
+    private void divideEmPaginas(List<Produto> novos) {
+        ultimosIdsDasPaginas.clear();
+        for (int i = tamanhoPagina - 1; i < novos.size(); i += tamanhoPagina) {
+            ultimosIdsDasPaginas.addLast(novos.get(i).getId());
+        }
+        if (novos.size() % tamanhoPagina != 0) {
+            ultimosIdsDasPaginas.addLast(novos.get(novos.size() - 1).getId());
+        }
+    }
+
+    private void aplicaComDiff(List<Produto> novos, int versaoBase,
+                               Runnable seDesatualizado, Runnable depoisDeAplicar) {
+        List<Produto> atuais = new ArrayList<>(produtos);
+        new BaseAsyncTask<>(() -> DiffUtil.calculateDiff(new ProdutoDiffCallback(atuais, novos)),
+                diferenca -> {
+                    if (versaoBase != versaoDaLista) {
+                        seDesatualizado.run();
+                        return;
+                    }
+                    aplica(novos, diferenca);
+                    depoisDeAplicar.run();
+                }).executa(Pool.PROCESSAMENTO);
+    }
+
+    private void aplicaComDiff(List<Produto> novos, Runnable depoisDeAplicar) {
+        List<Produto> atuais = new ArrayList<>(produtos);
+        int versaoBase = versaoDaLista;
+        new BaseAsyncTask<>(() -> DiffUtil.calculateDiff(new ProdutoDiffCallback(atuais, novos)),
+                diferenca -> {
+                    if (versaoBase != versaoDaLista) {
+                        aplicaComDiff(novos, depoisDeAplicar);
+                        return;
+                    }
+                    aplica(novos, diferenca);
+                    depoisDeAplicar.run();
+                }).executa(Pool.PROCESSAMENTO);
+    }
+
+    private void aplica(List<Produto> novos, DiffUtil.DiffResult diferenca) {
+        produtos.clear();
+        produtos.addAll(novos);
+        versaoDaLista++;
+        diferenca.dispatchUpdatesTo(this);
+    }
+
+    /*
+    A página foi pedida a partir de uma ponta da janela (pedidaDepoisDe/pedidaAntesDe).
+    Se essa ponta mudou enquanto a página era buscada (a janela voltou para o início,
+    por exemplo), a página não emenda mais com a lista: acrescentá-la deixaria um buraco
+    ou quebraria a ordem de ids de que posicaoDoId() depende. Ela é descartada, e a
+    rolagem pede a página certa de novo.
+     */
+    public void adicionaPaginaNoFim(long pedidaDepoisDe, List<Produto> pagina) {
+        if (pedidaDepoisDe != getUltimoId()) {
+            return;
+        }
+        fimAlcancado = pagina.size() < tamanhoPagina;
+        if (pagina.isEmpty()) {
+            return;
+        }
+        int tamanhoAtual = produtos.size();
+        produtos.addAll(pagina);
+        versaoDaLista++;
+        notifyItemRangeInserted(tamanhoAtual, pagina.size());
+        adicionaLimiteDePaginaNoFim(pagina.get(pagina.size() - 1).getId());
+    }
+
+    private void adicionaLimiteDePaginaNoFim(long ultimoId) {
+        ultimosIdsDasPaginas.addLast(ultimoId);
+        if (ultimosIdsDasPaginas.size() > MAXIMO_PAGINAS_EM_MEMORIA) {
+            long limite = ultimosIdsDasPaginas.removeFirst();
+            int descartados = posicaoDepoisDoId(limite);
+            produtos.subList(0, descartados).clear();
+            versaoDaLista++;
+            notifyItemRangeRemoved(0, descartados);
+            inicioAlcancado = false;
+        }
     }
 
-    public void adiciona(Produto... produtos) {
-        int tamanhoAtual = this.produtos.size();
-        Collections.addAll(this.produtos, produtos);
-        int tamanhoNovo = this.produtos.size();
-        notifyItemRangeInserted(tamanhoAtual, tamanhoNovo);
+    public void adicionaPaginaNoInicio(long pedidaAntesDe, List<Produto> pagina) {
+        if (pedidaAntesDe != getPrimeiroId()) {
+            return;
+        }
+        inicioAlcancado = pagina.size() < tamanhoPagina;
+        if (pagina.isEmpty()) {
+            return;
+        }
+        produtos.addAll(0, pagina);
+        versaoDaLista++;
+        ultimosIdsDasPaginas.addFirst(pagina.get(pagina.size() - 1).getId());
+        notifyItemRangeInserted(0, pagina.size());
+
+        if (ultimosIdsDasPaginas.size() > MAXIMO_PAGINAS_EM_MEMORIA) {
+            ultimosIdsDasPaginas.removeLast();
+            int inicioDescartados = posicaoDepoisDoId(ultimosIdsDasPaginas.getLast());
+            int descartados = produtos.size() - inicioDescartados;
+            produtos.subList(inicioDescartados, produtos.size()).clear();
+            versaoDaLista++;
+            notifyItemRangeRemoved(inicioDescartados, descartados);
+            fimAlcancado = false;
+        }
+    }
+
+    private int posicaoDepoisDoId(long id) {
+        int posicao = posicaoDoId(produtos, id);
+        if (posicao >= 0) {
+            return posicao + 1;
+        }
+        return -(posicao + 1);
+    }
+
+    /*
+    A janela está sempre ordenada por id, então a busca binária funciona como em
+    Collections.binarySearch(): devolve a posição, ou -(ponto de inserção) - 1.
+     */
+    private static int posicaoDoId(List<Produto> produtos, long id) {
+        int inicio = 0;
+        int fim = produtos.size() - 1;
+        while (inicio <= fim) {
+            int meio = (inicio + fim) >>> 1;
+            long idDoMeio = produtos.get(meio).getId();
+            if (idDoMeio < id) {
+                inicio = meio + 1;
+            } else if (idDoMeio > id) {
+                fim = meio - 1;
+            } else {
+                return meio;
+            }
+        }
+        return -(inicio + 1);
+    }
+
+    public boolean isInicioAlcancado() {
+        return inicioAlcancado;
+    }
+
+    public boolean isFimAlcancado() {
+        return fimAlcancado;
+    }
+
+    public long getPrimeiroId() {
+        if (produtos.isEmpty()) {
+            return 0;
+        }
+        return produtos.get(0).getId();
+    }
+
+    public long getUltimoId() {
+        if (produtos.isEmpty()) {
+            return 0;
+        }
+        return produtos.get(produtos.size() - 1).getId();
     }
 
-    public void edita(int posicao, Produto produto) {
+    /*
+    Um produto novo é mesclado na posição do seu id, se esse id cabe na janela atual.
+    Se não cabe (o usuário rolou para longe de onde ele fica), devolve false: quem chamou
+    deve levar a janela até o produto, para que o usuário veja o que acabou de criar.
+     */
+    public boolean adiciona(Produto produto) {
+        if (!cabeNaJanela(produto.getId())) {
+            return false;
+        }
+        mescla(Collections.singletonList(produto));
+        return true;
+    }
+
+    private boolean cabeNaJanela(long id) {
+        if (produtos.isEmpty()) {
+            return inicioAlcancado && fimAlcancado;
+        }
+        return (inicioAlcancado || id >= getPrimeiroId())
+                && (fimAlcancado || id <= getUltimoId());
+    }
+
+    /*
+    Edição e remoção procuram o produto pelo id. A posição de quando o usuário tocou no
+    item pode já não valer: a lista pode ter mudado enquanto o diálogo estava aberto.
+    Se o produto saiu da janela nesse meio tempo, não há o que atualizar.
+     */
+    public void edita(Produto produto) {
+        int posicao = posicaoDoId(produtos, produto.getId());
+        if (posicao < 0) {
+            return;
+        }
         produtos.set(posicao, produto);
+        versaoDaLista++;
         notifyItemChanged(posicao);
     }
 
-    public void remove(int posicao) {
+    public void remove(long id) {
+        int posicao = posicaoDoId(produtos, id);
+        if (posicao < 0) {
+            return;
+        }
         produtos.remove(posicao);
+        versaoDaLista++;
         notifyItemRemoved(posicao);
     }
 
+    /*
+    Resultado da mesclagem de uma página com a janela, calculado em background
+    a partir de uma cópia da lista.
+
+    Os produtos depois do último id só são acrescentados enquanto a janela tem espaço
+    (capacidade). Quando ela enche, o fim deixa de estar alcançado e o restante é
+    buscado no banco quando o usuário rolar até lá, sem empurrar a janela para longe
+    do que está na tela.
+     */
+    private static class Mesclagem {
+
+        private final List<Produto> produtos;
+        private Long ultimoIdAcrescentado = null;
+        private boolean fimAlcancado;
+        private DiffUtil.DiffResult diferenca;
+
+        Mesclagem(List<Produto> atuais, List<Produto> pagina, boolean inicioAlcancado,
+                  boolean fimAlcancado, int tamanhoPagina, int capacidade) {
+            produtos = new ArrayList<>(atuais);
+            long primeiroId = atuais.isEmpty() ? 0 : atuais.get(0).getId();
+            long ultimoId = atuais.isEmpty() ? 0 : atuais.get(atuais.size() - 1).getId();
+            int depoisDaJanela = 0;
+            boolean janelaCheia = false;
+            for (Produto produto : pagina) {
+                long id = produto.getId();
+                if (!atuais.isEmpty() && id <= ultimoId) {
+                    if (id >= primeiroId || inicioAlcancado) {
+                        substituiOuInsere(produto);
+                    }
+                } else if (fimAlcancado) {
+                    if (produtos.size() >= capacidade) {
+                        janelaCheia = true;
+                        break;
+                    }
+                    produtos.add(produto);
+                    ultimoIdAcrescentado = id;
+                    depoisDaJanela++;
+                }
+            }
+            this.fimAlcancado = fimAlcancado && !janelaCheia
+                    && (ultimoIdAcrescentado == null || depoisDaJanela < tamanhoPagina);
+        }
+
+        private void substituiOuInsere(Produto produto) {
+            int posicao = posicaoDoId(produtos, produto.getId());
+            if (posicao >= 0) {
+                produtos.set(posicao, produto);
+            } else {
+                produtos.add(-(posicao + 1), produto);
+            }
+        }
+    }
+
     class ViewHolder extends RecyclerView.ViewHolder {
 
         private final TextView campoId;
@@ -92,6 +452,7 @@ public class ListaProdutosAdapter extends
         private final TextView campoPreco;
         private final TextView campoQuantidade;
         private Produto produto;
+        private TextosDoProduto textosVinculados;
 
         ViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -122,17 +483,21 @@ public class ListaProdutosAdapter extends
                     .onItemClick(getAdapterPosition(), produto));
         }
 
+        /*
+        Os textos vêm prontos do cache, então a rolagem em regime não aloca nada.
+        Se o ViewHolder já exibe esses mesmos textos, nem os TextViews são tocados.
+         */
         void vincula(Produto produto) {
             this.produto = produto;
-            campoId.setText(String.valueOf(produto.getId()));
-            campoNome.setText(produto.getNome());
-            campoPreco.setText(formataParaMoeda(produto.getPreco()));
-            campoQuantidade.setText(String.valueOf(produto.getQuantidade()));
-        }
-
-        private String formataParaMoeda(BigDecimal valor) {
-            NumberFormat formatador = NumberFormat.getCurrencyInstance();
-            return formatador.format(valor);
+            TextosDoProduto textos = cacheDeTextos.textosDe(produto);
+            if (textos == textosVinculados) {
+                return;
+            }
+            textosVinculados = textos;
+            campoId.setText(textos.getId());
+            campoNome.setText(textos.getNome());
+            campoPreco.setText(textos.getPreco());
+            campoQuantidade.setText(textos.getQuantidade());
         }
 
     }
@@ -0,0 +1,54 @@
+package br.com.alura.estoque.ui.recyclerview.adapter;
+
+import java.util.List;
+
+import androidx.recyclerview.widget.DiffUtil;
+import br.com.alura.estoque.model.Produto;
+
+/*
+Compara a lista que está na tela com a nova: dois itens são o mesmo produto quando
+têm o mesmo id, e só precisam ser vinculados de novo quando algum dado exibido mudou.
+ */
+class ProdutoDiffCallback extends DiffUtil.Callback {
+
+    private final List<Produto> antigos;
+    private final List<Produto> novos;
+
+    ProdutoDiffCallback(List<Produto> antigos, List<Produto> novos) {
+        this.antigos = antigos;
+        this.novos = novos;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return antigos.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return novos.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int posicaoAntiga, int posicaoNova) {
+        return antigos.get(posicaoAntiga).getId() == novos.get(posicaoNova).getId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(int posicaoAntiga, int posicaoNova) {
+        Produto antigo = antigos.get(posicaoAntiga);
+        Produto novo = novos.get(posicaoNova);
+        return antigo == novo
+                || (antigo.getVersao() == novo.getVersao()
+                && antigo.getQuantidade() == novo.getQuantidade()
+                && antigo.getPreco().compareTo(novo.getPreco()) == 0
+                && mesmoNome(antigo, novo));
+    }
+
+    private boolean mesmoNome(Produto antigo, Produto novo) {
+        if (antigo.getNome() == null) {
+            return novo.getNome() == null;
+        }
+        return antigo.getNome().equals(novo.getNome());
+    }
+}
@@ -0,0 +1,36 @@
+package br.com.alura.estoque.ui.recyclerview.adapter;
+
+/*
+Textos já prontos para exibir um produto na lista, calculados uma única vez
+para cada versão do produto (ver CacheDeTextosDoProduto).
+ */
+class TextosDoProduto {
+
+    private final String id;
+    private final String nome;
+    private final String preco;
+    private final String quantidade;
+
+    TextosDoProduto(String id, String nome, String preco, String quantidade) {
+        this.id = id;
+        this.nome = nome;
+        this.preco = preco;
+        this.quantidade = quantidade;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getNome() {
+        return nome;
+    }
+
+    String getPreco() {
+        return preco;
+    }
+
+    String getQuantidade() {
+        return quantidade;
+    }
+}
@@ -0,0 +1,45 @@
+package br.com.alura.estoque.ui.recyclerview.listener;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/*
+Pede a próxima página quando o usuário se aproxima do fim da lista, e a anterior
+quando se aproxima do início, com uma margem para que a página já tenha chegado
+antes de o usuário alcançar a ponta.
+ */
+public class PaginacaoScrollListener extends RecyclerView.OnScrollListener {
+
+    private static final int ITENS_DE_ANTECEDENCIA = 10;
+
+    private final CarregaPaginaListener listener;
+
+    public PaginacaoScrollListener(CarregaPaginaListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        if (layoutManager == null) {
+            return;
+        }
+        if (dy > 0) {
+            int ultimaVisivel = layoutManager.findLastVisibleItemPosition();
+            if (ultimaVisivel >= layoutManager.getItemCount() - ITENS_DE_ANTECEDENCIA) {
+                listener.quandoPrecisaDaSeguinte();
+            }
+        } else if (dy < 0) {
+            int primeiraVisivel = layoutManager.findFirstVisibleItemPosition();
+            if (primeiraVisivel <= ITENS_DE_ANTECEDENCIA) {
+                listener.quandoPrecisaDaAnterior();
+            }
+        }
+    }
+
+    public interface CarregaPaginaListener {
+        void quandoPrecisaDaSeguinte();
+        void quandoPrecisaDaAnterior();
+    }
+}
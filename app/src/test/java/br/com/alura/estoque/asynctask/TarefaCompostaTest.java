@@ -0,0 +1,77 @@
+package br.com.alura.estoque.asynctask;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Uma {@link TarefaComposta} que terminou normalmente precisa ser vista como encerrada,
+ * para que o {@link EscopoDeTarefas} não a guarde até a tela ser destruída.
+ */
+public class TarefaCompostaTest {
+
+    @Test
+    public void soSeEncerraQuandoAUltimaEtapaSeEncerra() {
+        TarefaComposta composta = new TarefaComposta();
+        EtapaFalsa leitura = composta.acompanha(new EtapaFalsa());
+        leitura.encerrada = true;
+
+        assertFalse(composta.isEncerrada());
+
+        EtapaFalsa sincronizacao = composta.acompanhaUltima(new EtapaFalsa());
+        assertFalse(composta.isEncerrada());
+
+        sincronizacao.encerrada = true;
+        assertTrue(composta.isEncerrada());
+        assertFalse(composta.isCancelada());
+    }
+
+    @Test
+    public void canceladaEstaEncerradaECancelaAsEtapas() {
+        TarefaComposta composta = new TarefaComposta();
+        EtapaFalsa leitura = composta.acompanha(new EtapaFalsa());
+
+        composta.cancela();
+        EtapaFalsa sincronizacao = composta.acompanhaUltima(new EtapaFalsa());
+
+        assertTrue(composta.isEncerrada());
+        assertTrue(leitura.isCancelada());
+        assertTrue(sincronizacao.isCancelada());
+    }
+
+    @Test
+    public void escopoDescartaACompostaQueTerminou() {
+        EscopoDeTarefas escopo = new EscopoDeTarefas();
+        TarefaComposta composta = escopo.acompanha(new TarefaComposta());
+        EtapaFalsa ultima = composta.acompanhaUltima(new EtapaFalsa());
+        ultima.encerrada = true;
+
+        escopo.acompanha(new EtapaFalsa());
+        escopo.encerra();
+
+        // Já tinha sido descartada, então o encerramento do escopo não chega até ela
+        assertFalse(ultima.isCancelada());
+    }
+
+    private static class EtapaFalsa implements Tarefa {
+
+        private boolean cancelada = false;
+        private boolean encerrada = false;
+
+        @Override
+        public void cancela() {
+            cancelada = true;
+        }
+
+        @Override
+        public boolean isCancelada() {
+            return cancelada;
+        }
+
+        @Override
+        public boolean isEncerrada() {
+            return encerrada || cancelada;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package br.com.alura.estoque.database;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Monta a expressão do MATCH a partir do texto digitado, como o índice com o
+ * tokenizador unicode61 espera: sem acentos, em minúsculas e com cada palavra
+ * como prefixo entre aspas.
+ */
+public class IndiceDeBuscaTest {
+
+    @Test
+    public void tiraOsAcentosComoOUnicode61() {
+        assertEquals("\"cafe*\" \"acucar*\"", IndiceDeBusca.expressaoDeBusca("Café  AÇÚCAR", true));
+    }
+
+    @Test
+    public void mantemOsAcentosQuandoOIndiceNaoIgnoraAcentos() {
+        assertEquals("\"café*\"", IndiceDeBusca.expressaoDeBusca("Café", false));
+    }
+
+    @Test
+    public void descartaOsCaracteresDaSintaxeDoMatch() {
+        assertEquals("\"cad*\" \"or*\" \"az*\"", IndiceDeBusca.expressaoDeBusca("cad* OR -\"az", true));
+    }
+
+    @Test
+    public void devolveNullSemNenhumaPalavra() {
+        assertNull(IndiceDeBusca.expressaoDeBusca(" -*\" ", true));
+        assertNull(IndiceDeBusca.expressaoDeBusca(null, true));
+    }
+}
@@ -0,0 +1,97 @@
+package br.com.alura.estoque.metrica;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Confere as faixas do {@link Histograma} e os percentis calculados a partir delas.
+ */
+public class HistogramaTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void ateTresMicrossegundosCadaValorTemSuaFaixa() {
+        for (int micros = 0; micros < 4; micros++) {
+            assertEquals(micros, Histograma.faixaDe(micros));
+            assertEquals(micros, Histograma.limiteSuperiorDa(micros));
+        }
+    }
+
+    @Test
+    public void quatroFaixasPorPotenciaDeDois() {
+        assertEquals(4, Histograma.faixaDe(4));
+        assertEquals(7, Histograma.faixaDe(7));
+        assertEquals(8, Histograma.faixaDe(8));
+        assertEquals(8, Histograma.faixaDe(9));
+        assertEquals(9, Histograma.faixaDe(10));
+        assertEquals(9, Histograma.limiteSuperiorDa(8));
+        assertEquals(11, Histograma.limiteSuperiorDa(9));
+        assertEquals(1279, Histograma.limiteSuperiorDa(Histograma.faixaDe(1024)));
+        assertEquals(Histograma.faixaDe(1024), Histograma.faixaDe(1279));
+        assertEquals(Histograma.faixaDe(1024) + 1, Histograma.faixaDe(1280));
+    }
+
+    @Test
+    public void cadaValorCaiNaFaixaCujoLimiteOCobre() {
+        for (long micros = 1; micros < 1_000_000; micros = micros * 3 / 2 + 1) {
+            int faixa = Histograma.faixaDe(micros);
+            assertTrue(micros <= Histograma.limiteSuperiorDa(faixa));
+            if (faixa > 0) {
+                assertTrue(micros > Histograma.limiteSuperiorDa(faixa - 1));
+            }
+            // O erro prometido: o limite da faixa fica a menos de 25% do valor
+            assertTrue(Histograma.limiteSuperiorDa(faixa) < micros * 1.25);
+        }
+    }
+
+    @Test
+    public void valoresEnormesFicamNaUltimaFaixa() {
+        int ultima = Histograma.faixaDe(Long.MAX_VALUE);
+
+        assertEquals(ultima, Histograma.faixaDe(Long.MAX_VALUE / 2));
+        assertEquals(Long.MAX_VALUE, Histograma.limiteSuperiorDa(ultima));
+    }
+
+    @Test
+    public void percentisDeUmaDistribuicaoConhecida() {
+        Histograma histograma = new Histograma();
+        // 1, 2, 3, ..., 100 ms
+        for (int millis = 1; millis <= 100; millis++) {
+            histograma.registraNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertEquals(100, histograma.getContagem());
+        assertEquals(50.5, histograma.getMediaEmMillis(), DELTA);
+        assertEquals(100, histograma.getMaximoEmMillis(), DELTA);
+        /*
+        Cada percentil é o limite superior da faixa do valor exato:
+        50 ms cai em 49152-57343 µs, 95 ms em 81920-98303 µs e 99 ms em 98304-114687 µs,
+        limitado ao máximo registrado.
+         */
+        assertEquals(57.343, histograma.percentilEmMillis(50), DELTA);
+        assertEquals(98.303, histograma.percentilEmMillis(95), DELTA);
+        assertEquals(100, histograma.percentilEmMillis(99), DELTA);
+    }
+
+    @Test
+    public void percentilNaoPassaDoMaximo() {
+        Histograma histograma = new Histograma();
+        histograma.registraNanos(TimeUnit.MICROSECONDS.toNanos(1024));
+
+        assertEquals(1.024, histograma.percentilEmMillis(99), DELTA);
+    }
+
+    @Test
+    public void semAmostrasTudoEZero() {
+        Histograma histograma = new Histograma();
+
+        assertEquals(0, histograma.getContagem());
+        assertEquals(0, histograma.percentilEmMillis(50), DELTA);
+        assertEquals(0, histograma.getMediaEmMillis(), DELTA);
+    }
+}
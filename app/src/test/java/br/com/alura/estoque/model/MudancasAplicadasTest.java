@@ -0,0 +1,35 @@
+package br.com.alura.estoque.model;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A tela mescla {@link MudancasAplicadas#getAlterados()} com uma janela ordenada por id,
+ * então inseridos e atualizados precisam sair juntos e na mesma ordem.
+ */
+public class MudancasAplicadasTest {
+
+    @Test
+    public void alteradosSaemEmOrdemDeIdMesmoComInseridosDepoisDosAtualizados() {
+        MudancasAplicadas mudancas = new MudancasAplicadas(
+                Arrays.asList(produto(40), produto(10)),
+                Arrays.asList(produto(30), produto(5), produto(20)));
+
+        List<Produto> alterados = mudancas.getAlterados();
+
+        assertEquals(5, alterados.size());
+        long[] esperados = {5, 10, 20, 30, 40};
+        for (int i = 0; i < esperados.length; i++) {
+            assertEquals(esperados[i], alterados.get(i).getId());
+        }
+    }
+
+    private static Produto produto(long id) {
+        return new Produto(id, "Produto " + id, BigDecimal.ONE, 1);
+    }
+}
@@ -0,0 +1,103 @@
+package br.com.alura.estoque.retrofit;
+
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import br.com.alura.estoque.retrofit.service.ProdutoService;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lê um catálogo grande servido pelo MockWebServer através de
+ * {@link ProdutoService#buscaTodosEmFluxo()} e verifica que os lotes respeitam
+ * o tamanho configurado e que o heap não cresce com o tamanho da resposta.
+ */
+public class LeitorDeProdutosEmFluxoTest {
+
+    private static final int QUANTIDADE_DE_PRODUTOS = 200_000;
+    private static final int TAMANHO_DO_LOTE = 500;
+
+    private MockWebServer servidor;
+    private ProdutoService service;
+    private final Gson gson = new Gson();
+
+    @Before
+    public void configura() throws IOException {
+        servidor = new MockWebServer();
+        servidor.start();
+        service = new Retrofit.Builder()
+                .baseUrl(servidor.url("/"))
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build()
+                .create(ProdutoService.class);
+    }
+
+    @After
+    public void encerra() throws IOException {
+        servidor.shutdown();
+    }
+
+    @Test
+    public void leCatalogoGrandeEmLotesSemGuardarARespostaInteira() throws Exception {
+        Buffer catalogo = catalogo(QUANTIDADE_DE_PRODUTOS);
+        long tamanhoDaResposta = catalogo.size();
+        servidor.enqueue(new MockResponse().setBody(catalogo));
+
+        Runtime runtime = Runtime.getRuntime();
+        long heapInicial = heapUsado(runtime);
+        long[] heapMaximo = {heapInicial};
+        int[] lotes = {0};
+        int[] maiorLote = {0};
+
+        LeitorDeProdutosEmFluxo leitor = new LeitorDeProdutosEmFluxo(gson, TAMANHO_DO_LOTE);
+        ResponseBody corpo = service.buscaTodosEmFluxo().execute().body();
+        int total = leitor.le(corpo, lote -> {
+            lotes[0]++;
+            maiorLote[0] = Math.max(maiorLote[0], lote.size());
+            // Mede de tempos em tempos para não deixar o teste lento com gc() a cada lote
+            if (lotes[0] % 50 == 0) {
+                heapMaximo[0] = Math.max(heapMaximo[0], heapUsado(runtime));
+            }
+        });
+
+        assertEquals(QUANTIDADE_DE_PRODUTOS, total);
+        assertEquals(QUANTIDADE_DE_PRODUTOS / TAMANHO_DO_LOTE, lotes[0]);
+        assertEquals(TAMANHO_DO_LOTE, maiorLote[0]);
+        long crescimento = heapMaximo[0] - heapInicial;
+        assertTrue("heap cresceu " + crescimento + " bytes para uma resposta de "
+                        + tamanhoDaResposta + " bytes",
+                crescimento < tamanhoDaResposta / 4);
+    }
+
+    private static long heapUsado(Runtime runtime) {
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Buffer catalogo(int quantidade) {
+        Buffer corpo = new Buffer().writeUtf8("[");
+        for (long id = 1; id <= quantidade; id++) {
+            if (id > 1) {
+                corpo.writeUtf8(",");
+            }
+            corpo.writeUtf8("{\"id\":" + id
+                    + ",\"nome\":\"Produto " + id
+                    + "\",\"preco\":" + (id % 1000) + ".90"
+                    + ",\"quantidade\":" + (id % 50)
+                    + ",\"versao\":" + id + "}");
+        }
+        return corpo.writeUtf8("]");
+    }
+}
@@ -0,0 +1,76 @@
+package br.com.alura.estoque.retrofit.metrica;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import br.com.alura.estoque.model.Produto;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * A conversão é registrada no endpoint do método chamado, mesmo quando dois métodos
+ * do serviço têm exatamente as mesmas anotações.
+ */
+public class MedicaoDeConversaoTest {
+
+    interface ServicoComAnotacoesIguais {
+        @GET("produto")
+        Call<List<Produto>> buscaTodos();
+
+        @GET("produto")
+        Call<List<Produto>> buscaDeNovo();
+    }
+
+    private final MetricasDeRequisicoes metricas = new MetricasDeRequisicoes();
+    private MockWebServer servidor;
+    private ServicoComAnotacoesIguais servico;
+
+    @Before
+    public void configura() throws IOException {
+        servidor = new MockWebServer();
+        servidor.start();
+        MedicaoDeConversao medicao = new MedicaoDeConversao(GsonConverterFactory.create(), metricas);
+        servico = new Retrofit.Builder()
+                .baseUrl(servidor.url("/"))
+                .client(new OkHttpClient.Builder().addInterceptor(medicao.interceptor()).build())
+                .addConverterFactory(medicao)
+                .build()
+                .create(ServicoComAnotacoesIguais.class);
+    }
+
+    @After
+    public void encerra() throws IOException {
+        servidor.shutdown();
+    }
+
+    @Test
+    public void registraCadaConversaoNoMetodoChamado() throws Exception {
+        servidor.enqueue(new MockResponse().setBody("[]"));
+        servidor.enqueue(new MockResponse().setBody("[]"));
+        servidor.enqueue(new MockResponse().setBody("[]"));
+
+        servico.buscaDeNovo().execute();
+        servico.buscaTodos().execute();
+        servico.buscaDeNovo().execute();
+
+        assertEquals(1, conversoesDe("buscaTodos"));
+        assertEquals(2, conversoesDe("buscaDeNovo"));
+        assertNull(metricas.getHistograma("desconhecido", MetricasDeRequisicoes.Etapa.CONVERSAO));
+    }
+
+    private long conversoesDe(String endpoint) {
+        return metricas.getHistograma(endpoint, MetricasDeRequisicoes.Etapa.CONVERSAO).getContagem();
+    }
+}
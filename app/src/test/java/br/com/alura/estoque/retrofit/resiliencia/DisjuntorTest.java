@@ -0,0 +1,123 @@
+package br.com.alura.estoque.retrofit.resiliencia;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import br.com.alura.estoque.retrofit.metrica.MetricasDeResiliencia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Percorre os estados do {@link Disjuntor} com um relógio controlado pelo teste.
+ */
+public class DisjuntorTest {
+
+    private static final int LIMITE_DE_FALHAS = 3;
+    private static final long ABERTURA_MILLIS = 1_000;
+
+    private final MetricasDeResiliencia metricas = new MetricasDeResiliencia();
+    private long agora;
+    private Disjuntor disjuntor;
+
+    @Before
+    public void criaDisjuntor() {
+        agora = 10_000;
+        disjuntor = new Disjuntor("produto", LIMITE_DE_FALHAS, ABERTURA_MILLIS, metricas, () -> agora);
+    }
+
+    @Test
+    public void abreSoDepoisDoLimiteDeFalhasSeguidas() {
+        for (int i = 1; i < LIMITE_DE_FALHAS; i++) {
+            disjuntor.registraFalha();
+            assertEquals(Disjuntor.Estado.FECHADO, disjuntor.getEstado());
+            assertTrue(disjuntor.permite());
+        }
+
+        disjuntor.registraFalha();
+
+        assertEquals(Disjuntor.Estado.ABERTO, disjuntor.getEstado());
+        assertEquals(1, metricas.getAberturas());
+    }
+
+    @Test
+    public void sucessoZeraAsFalhasSeguidas() {
+        disjuntor.registraFalha();
+        disjuntor.registraFalha();
+        disjuntor.registraSucesso();
+        disjuntor.registraFalha();
+        disjuntor.registraFalha();
+
+        assertEquals(Disjuntor.Estado.FECHADO, disjuntor.getEstado());
+    }
+
+    @Test
+    public void abertoRecusaAteOFimDaAbertura() {
+        abre();
+
+        assertFalse(disjuntor.permite());
+        agora += ABERTURA_MILLIS - 1;
+        assertFalse(disjuntor.permite());
+        assertEquals(Disjuntor.Estado.ABERTO, disjuntor.getEstado());
+    }
+
+    @Test
+    public void meioAbertoLiberaUmaUnicaRequisicaoDeTeste() {
+        abre();
+        agora += ABERTURA_MILLIS;
+
+        assertTrue(disjuntor.permite());
+        assertEquals(Disjuntor.Estado.MEIO_ABERTO, disjuntor.getEstado());
+        assertFalse(disjuntor.permite());
+        assertFalse(disjuntor.permite());
+    }
+
+    @Test
+    public void testeBemSucedidoFecha() {
+        abre();
+        agora += ABERTURA_MILLIS;
+        disjuntor.permite();
+
+        disjuntor.registraSucesso();
+
+        assertEquals(Disjuntor.Estado.FECHADO, disjuntor.getEstado());
+        assertTrue(disjuntor.permite());
+        assertTrue(disjuntor.permite());
+    }
+
+    @Test
+    public void testeQueFalhaAbreDeNovo() {
+        abre();
+        agora += ABERTURA_MILLIS;
+        disjuntor.permite();
+
+        disjuntor.registraFalha();
+
+        assertEquals(Disjuntor.Estado.ABERTO, disjuntor.getEstado());
+        assertFalse(disjuntor.permite());
+        agora += ABERTURA_MILLIS;
+        assertTrue(disjuntor.permite());
+        assertEquals(2, metricas.getAberturas());
+    }
+
+    @Test
+    public void testeInconclusivoLiberaOutroSemMudarOEstado() {
+        abre();
+        agora += ABERTURA_MILLIS;
+        disjuntor.permite();
+
+        disjuntor.registraInconclusiva();
+
+        assertEquals(Disjuntor.Estado.MEIO_ABERTO, disjuntor.getEstado());
+        assertTrue(disjuntor.permite());
+        assertFalse(disjuntor.permite());
+    }
+
+    private void abre() {
+        for (int i = 0; i < LIMITE_DE_FALHAS; i++) {
+            disjuntor.registraFalha();
+        }
+        assertEquals(Disjuntor.Estado.ABERTO, disjuntor.getEstado());
+    }
+}
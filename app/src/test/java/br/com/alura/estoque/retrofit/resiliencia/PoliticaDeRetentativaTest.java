@@ -0,0 +1,93 @@
+package br.com.alura.estoque.retrofit.resiliencia;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A espera sorteada precisa ficar sempre abaixo do limite exponencial e do teto, e só
+ * o que é idempotente e transitório pode ser repetido.
+ */
+public class PoliticaDeRetentativaTest {
+
+    private static final int SORTEIOS = 1_000;
+
+    private final PoliticaDeRetentativa politica = new PoliticaDeRetentativa(3, 100, 1_000);
+
+    @Test
+    public void esperaFicaAbaixoDoLimiteExponencial() {
+        long[] limites = {100, 200, 400, 800};
+        for (int falhas = 1; falhas <= limites.length; falhas++) {
+            for (int i = 0; i < SORTEIOS; i++) {
+                long espera = politica.esperaDepoisDe(falhas);
+                assertTrue(espera >= 0);
+                assertTrue(espera < limites[falhas - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void esperaNaoPassaDoTeto() {
+        for (int falhas : new int[]{5, 31, 64, Integer.MAX_VALUE}) {
+            for (int i = 0; i < SORTEIOS; i++) {
+                long espera = politica.esperaDepoisDe(falhas);
+                assertTrue(espera >= 0);
+                assertTrue(espera < 1_000);
+            }
+        }
+    }
+
+    @Test
+    public void esperaESorteadaENaoSempreOLimite() {
+        boolean abaixoDaMetade = false;
+        for (int i = 0; i < SORTEIOS && !abaixoDaMetade; i++) {
+            abaixoDaMetade = politica.esperaDepoisDe(4) < 400;
+        }
+        assertTrue(abaixoDaMetade);
+    }
+
+    @Test
+    public void soRepeteMetodosIdempotentes() {
+        RequestBody corpo = RequestBody.create("{}", MediaType.get("application/json"));
+
+        assertTrue(PoliticaDeRetentativa.isIdempotente(requisicao("GET", null)));
+        assertTrue(PoliticaDeRetentativa.isIdempotente(requisicao("PUT", corpo)));
+        assertTrue(PoliticaDeRetentativa.isIdempotente(requisicao("DELETE", null)));
+        assertFalse(PoliticaDeRetentativa.isIdempotente(requisicao("POST", corpo)));
+        assertFalse(PoliticaDeRetentativa.isIdempotente(requisicao("PATCH", corpo)));
+    }
+
+    @Test
+    public void codigosTransitorios() {
+        assertTrue(PoliticaDeRetentativa.isTransitoria(408));
+        assertTrue(PoliticaDeRetentativa.isTransitoria(429));
+        assertTrue(PoliticaDeRetentativa.isTransitoria(500));
+        assertTrue(PoliticaDeRetentativa.isTransitoria(503));
+        assertFalse(PoliticaDeRetentativa.isTransitoria(400));
+        assertFalse(PoliticaDeRetentativa.isTransitoria(404));
+        assertFalse(PoliticaDeRetentativa.isTransitoria(409));
+    }
+
+    @Test
+    public void errosTransitorios() {
+        assertTrue(PoliticaDeRetentativa.isTransitoria(new IOException()));
+        assertTrue(PoliticaDeRetentativa.isTransitoria(new SocketTimeoutException()));
+        assertFalse(PoliticaDeRetentativa.isTransitoria(new CircuitoAbertoException("produto")));
+        assertFalse(PoliticaDeRetentativa.isTransitoria(new IllegalStateException()));
+    }
+
+    private static Request requisicao(String metodo, RequestBody corpo) {
+        return new Request.Builder()
+                .url("http://localhost/produto")
+                .method(metodo, corpo)
+                .build();
+    }
+}
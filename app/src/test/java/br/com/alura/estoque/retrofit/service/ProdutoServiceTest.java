@@ -0,0 +1,86 @@
+package br.com.alura.estoque.retrofit.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import br.com.alura.estoque.model.PaginaDeProdutos;
+import br.com.alura.estoque.model.Produto;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Usa o MockWebServer no lugar da API para verificar a requisição e a resposta de
+ * {@link ProdutoService#buscaPagina(long, int)}. O percurso do catálogo página por
+ * página é testado na própria SincronizacaoPaginada (SincronizacaoPaginadaTest, em androidTest).
+ */
+public class ProdutoServiceTest {
+
+    private static final int TAMANHO_PAGINA = 3;
+
+    private MockWebServer servidor;
+    private ProdutoService service;
+
+    @Before
+    public void configura() throws IOException {
+        servidor = new MockWebServer();
+        servidor.start();
+        service = new Retrofit.Builder()
+                .baseUrl(servidor.url("/"))
+                .addConverterFactory(GsonConverterFactory.create())
+                .build()
+                .create(ProdutoService.class);
+    }
+
+    @After
+    public void encerra() throws IOException {
+        servidor.shutdown();
+    }
+
+    @Test
+    public void pedeAPaginaComOCursorEOLimiteNaUrl() throws Exception {
+        servidor.enqueue(pagina(4, 3, 42));
+
+        PaginaDeProdutos pagina = service.buscaPagina(3, TAMANHO_PAGINA).execute().body();
+
+        assertEquals("/produto?aPartirDe=3&limite=3", servidor.takeRequest().getPath());
+        List<Produto> produtos = pagina.getProdutos();
+        assertEquals(3, produtos.size());
+        assertEquals(4, produtos.get(0).getId());
+        assertEquals(6, produtos.get(2).getId());
+        assertEquals(42, pagina.getVersao());
+    }
+
+    @Test
+    public void paginaVaziaEncerraOCatalogo() throws Exception {
+        servidor.enqueue(new MockResponse().setBody("{\"produtos\":[],\"versao\":7}"));
+
+        PaginaDeProdutos pagina = service.buscaPagina(0, TAMANHO_PAGINA).execute().body();
+
+        assertEquals(0, pagina.getProdutos().size());
+        assertEquals(7, pagina.getVersao());
+    }
+
+    private MockResponse pagina(long primeiroId, int quantidade, long versao) {
+        StringBuilder json = new StringBuilder("{\"produtos\":[");
+        for (int i = 0; i < quantidade; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            long id = primeiroId + i;
+            json.append("{\"id\":").append(id)
+                    .append(",\"nome\":\"Produto ").append(id)
+                    .append("\",\"preco\":10.50,\"quantidade\":").append(id)
+                    .append('}');
+        }
+        json.append("],\"versao\":").append(versao).append('}');
+        return new MockResponse().setBody(json.toString());
+    }
+}
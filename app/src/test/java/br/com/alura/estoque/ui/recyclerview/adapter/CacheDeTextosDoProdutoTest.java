@@ -0,0 +1,73 @@
+package br.com.alura.estoque.ui.recyclerview.adapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+import br.com.alura.estoque.model.Produto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Verifica que o {@link CacheDeTextosDoProduto} formata cada instância de Produto uma
+ * única vez: vincular de novo o mesmo produto devolve os mesmos textos, sem alocar,
+ * e uma nova versão do produto recebe textos novos.
+ */
+public class CacheDeTextosDoProdutoTest {
+
+    private Locale localeOriginal;
+
+    @Before
+    public void fixaLocale() {
+        localeOriginal = Locale.getDefault();
+        Locale.setDefault(new Locale("pt", "BR"));
+    }
+
+    @After
+    public void restauraLocale() {
+        Locale.setDefault(localeOriginal);
+    }
+
+    @Test
+    public void mesmoProdutoReaproveitaOsTextos() {
+        CacheDeTextosDoProduto cache = new CacheDeTextosDoProduto();
+        Produto produto = new Produto(1000, "Cadeira", new BigDecimal("1234.50"), 7, 1);
+
+        TextosDoProduto primeiroVinculo = cache.textosDe(produto);
+        for (int i = 0; i < 100; i++) {
+            assertSame(primeiroVinculo, cache.textosDe(produto));
+        }
+    }
+
+    @Test
+    public void novaVersaoDoProdutoRecebeTextosNovos() {
+        CacheDeTextosDoProduto cache = new CacheDeTextosDoProduto();
+        Produto produto = new Produto(1000, "Cadeira", new BigDecimal("1234.50"), 7, 1);
+        Produto editado = new Produto(1000, "Cadeira", new BigDecimal("1234.50"), 8, 2);
+
+        TextosDoProduto antes = cache.textosDe(produto);
+        TextosDoProduto depois = cache.textosDe(editado);
+
+        assertNotSame(antes, depois);
+        assertEquals("7", antes.getQuantidade());
+        assertEquals("8", depois.getQuantidade());
+    }
+
+    @Test
+    public void textosSaoOsMesmosDaFormatacaoDireta() {
+        Produto produto = new Produto(1000, "Cadeira", new BigDecimal("1234.50"), 7, 1);
+
+        TextosDoProduto textos = new CacheDeTextosDoProduto().textosDe(produto);
+
+        assertEquals("1000", textos.getId());
+        assertEquals("Cadeira", textos.getNome());
+        assertEquals(NumberFormat.getCurrencyInstance().format(produto.getPreco()), textos.getPreco());
+        assertEquals("7", textos.getQuantidade());
+    }
+}
@@ -0,0 +1,66 @@
+package br.com.alura.estoque.ui.recyclerview.adapter;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import br.com.alura.estoque.model.Produto;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifica quando o {@link ProdutoDiffCallback} considera dois itens o mesmo produto
+ * e quando um item precisa ser vinculado de novo.
+ */
+public class ProdutoDiffCallbackTest {
+
+    private static final Produto CADEIRA = new Produto(1, "Cadeira", new BigDecimal("10.50"), 5, 1);
+
+    @Test
+    public void mesmoIdEOMesmoProduto() {
+        Produto renomeada = new Produto(1, "Cadeira azul", new BigDecimal("10.50"), 5, 2);
+        Produto mesa = new Produto(2, "Cadeira", new BigDecimal("10.50"), 5, 1);
+
+        assertTrue(callback(CADEIRA, renomeada).areItemsTheSame(0, 0));
+        assertFalse(callback(CADEIRA, mesa).areItemsTheSame(0, 0));
+    }
+
+    @Test
+    public void conteudoIgualNaoPrecisaSerVinculadoDeNovo() {
+        Produto copia = new Produto(1, "Cadeira", new BigDecimal("10.5"), 5, 1);
+
+        assertTrue(callback(CADEIRA, CADEIRA).areContentsTheSame(0, 0));
+        // 10.50 e 10.5 são o mesmo preço, embora BigDecimal.equals() diga que não
+        assertTrue(callback(CADEIRA, copia).areContentsTheSame(0, 0));
+    }
+
+    @Test
+    public void qualquerDadoExibidoAlteradoPrecisaSerVinculadoDeNovo() {
+        List<Produto> alterados = Arrays.asList(
+                new Produto(1, "Cadeira azul", new BigDecimal("10.50"), 5, 1),
+                new Produto(1, "Cadeira", new BigDecimal("11.00"), 5, 1),
+                new Produto(1, "Cadeira", new BigDecimal("10.50"), 6, 1),
+                new Produto(1, "Cadeira", new BigDecimal("10.50"), 5, 2),
+                new Produto(1, null, new BigDecimal("10.50"), 5, 1));
+
+        for (Produto alterado : alterados) {
+            assertFalse(callback(CADEIRA, alterado).areContentsTheSame(0, 0));
+        }
+    }
+
+    @Test
+    public void nomesNulosSaoIguais() {
+        Produto semNome = new Produto(1, null, BigDecimal.ONE, 1, 1);
+        Produto tambemSemNome = new Produto(1, null, BigDecimal.ONE, 1, 1);
+
+        assertTrue(callback(semNome, tambemSemNome).areContentsTheSame(0, 0));
+    }
+
+    private static ProdutoDiffCallback callback(Produto antigo, Produto novo) {
+        return new ProdutoDiffCallback(Collections.singletonList(antigo), Collections.singletonList(novo));
+    }
+}